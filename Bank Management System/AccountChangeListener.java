@@ -0,0 +1,42 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener that is told when the balance or the history of an account changes.
+ * TransferService calls it after every accepted transfer, for the sender and the receiver,
+ * while it still holds the locks of both accounts. So the listener sees a consistent account,
+ * and it is never called for the same account by two threads at the same time.
+ */
+public interface AccountChangeListener {
+    /**
+     * Called after the account has changed.
+     * @param account The changed account.
+     */
+    void accountChanged(BankAccountTypeInterface account);
+
+    /**
+     * Combines listeners into one, which calls them in the given order. null listeners are skipped.
+     * @param listeners The listeners.
+     * @return The combined listener, or null if all of them are null.
+     */
+    static AccountChangeListener of(AccountChangeListener... listeners) {
+        List<AccountChangeListener> present = new ArrayList<>();
+        for (AccountChangeListener listener : listeners) {
+            if (listener != null) {
+                present.add(listener);
+            }
+        }
+        if (present.isEmpty()) {
+            return null;
+        }
+        if (present.size() == 1) {
+            return present.get(0);
+        }
+        AccountChangeListener[] all = present.toArray(new AccountChangeListener[0]);
+        return account -> {
+            for (AccountChangeListener listener : all) {
+                listener.accountChanged(account);
+            }
+        };
+    }
+}
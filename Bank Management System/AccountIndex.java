@@ -0,0 +1,59 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every account ID a small dense integer, so the transaction logs can store account references as ints instead of Strings.
+ * The index only grows, an ID keeps its number until the program ends.
+ */
+public final class AccountIndex {
+    private static final ConcurrentHashMap<String, Integer> indices = new ConcurrentHashMap<>(); // Account ID to index.
+    private static volatile String[] account_ids = new String[1024]; // Index to account ID. A grown copy is published after it is filled.
+    private static int size;
+
+    private AccountIndex() {
+    }
+
+    /**
+     * Returns the index of an account ID, adding it to the index if it is seen for the first time.
+     * After the first call the lookup does not allocate anything.
+     * @param accountID The account ID.
+     * @return The dense index of the ID.
+     */
+    public static int indexOf(String accountID) {
+        Integer index = indices.get(accountID);
+        if (index != null) {
+            return index;
+        }
+        synchronized (AccountIndex.class) {
+            index = indices.get(accountID);
+            if (index == null) {
+                String[] ids = account_ids;
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size] = accountID;
+                account_ids = ids;
+                index = size++;
+                indices.put(accountID, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns how many account IDs have an index. The indices are 0 to size()-1.
+     * @return Number of indexed IDs.
+     */
+    public static synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the account ID of an index. It does not lock, so many report threads can call it together.
+     * @param index An index that is returned by indexOf().
+     * @return The account ID.
+     */
+    public static String idOf(int index) {
+        return account_ids[index];
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks (stripes) that protect the accounts during concurrent transfers.
+ * Every account ID is mapped to one stripe, so the number of locks does not depend on the number of accounts.
+ * Two stripes are always locked in the order of their indices, which makes the two-account transfers deadlock-free.
+ */
+public class AccountLockStripes {
+    private final ReentrantLock[] stripes; // The locks. The length is always a power of two.
+    private final int mask; // stripes.length - 1, used instead of modulo.
+
+    /**
+     * Constructs the stripes.
+     * @param stripeCount Minimum number of stripes, it is rounded up to a power of two.
+     */
+    public AccountLockStripes(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Finds the stripe of an account.
+     * @param accountID ID of the account.
+     * @return Index of the stripe that protects the account.
+     */
+    public int stripeOf(String accountID) {
+        int h = accountID.hashCode();
+        h ^= (h >>> 16); // spreads the higher bits like HashMap does
+        return h & mask;
+    }
+
+    /**
+     * Returns the number of stripes.
+     * @return Number of stripes.
+     */
+    public int size() {
+        return stripes.length;
+    }
+
+    /**
+     * Locks the stripes of two accounts in index order. If both accounts are on the same stripe it is locked once.
+     * @param first  ID of the first account.
+     * @param second ID of the second account.
+     */
+    public void lockBoth(String first, String second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        if (a == b) {
+            stripes[a].lock();
+        } else {
+            stripes[Math.min(a, b)].lock();
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    /**
+     * Unlocks the stripes that are locked by lockBoth, in reverse order.
+     * @param first  ID of the first account.
+     * @param second ID of the second account.
+     */
+    public void unlockBoth(String first, String second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        if (a == b) {
+            stripes[a].unlock();
+        } else {
+            stripes[Math.max(a, b)].unlock();
+            stripes[Math.min(a, b)].unlock();
+        }
+    }
+
+    /**
+     * Locks the stripe of a single account.
+     * @param accountID ID of the account.
+     */
+    public void lock(String accountID) {
+        stripes[stripeOf(accountID)].lock();
+    }
+
+    /**
+     * Locks the stripe of a single account if it is free (or already held by this thread), without waiting.
+     * It can be called while other stripes are held, because it never waits and so can not deadlock.
+     * @param accountID ID of the account.
+     * @return true if the stripe is locked and must be unlocked later.
+     */
+    public boolean tryLock(String accountID) {
+        return stripes[stripeOf(accountID)].tryLock();
+    }
+
+    /**
+     * Unlocks the stripe of a single account.
+     * @param accountID ID of the account.
+     */
+    public void unlock(String accountID) {
+        stripes[stripeOf(accountID)].unlock();
+    }
+
+    /**
+     * Locks every stripe in index order. Used by readers that need a consistent view of all accounts.
+     */
+    public void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    /**
+     * Unlocks every stripe that is locked by lockAll, in reverse order.
+     */
+    public void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over the accounts, so the common queries do not call a method on every account of the map:
+ * a balance index sorted by balance (range and top-N queries), the set of high value accounts,
+ * the set of Current accounts in overdraft and the Fixed Deposit accounts sorted by maturity date.
+ * <p>
+ * The indexes are updated from AccountChangeListener after every accepted transfer, so they stay consistent with the balances.
+ * The changes of one account come in order (TransferService calls the listener under the account's lock),
+ * but a query that runs during transfers can miss an account that is just moving in the balance index.
+ * The results are exact when no transfer is running.
+ */
+public class AccountSecondaryIndexes implements AccountChangeListener {
+    private final Map<String, BankAccountTypeInterface> accounts = new ConcurrentHashMap<>(); // Registered accounts.
+    private final Map<String, Long> indexed_balances = new ConcurrentHashMap<>(); // Balance of every account in the balance index, in cents.
+    private final ConcurrentSkipListSet<BalanceKey> balance_index = new ConcurrentSkipListSet<>(); // Sorted by balance, then ID.
+    private final Set<String> high_value_accounts = ConcurrentHashMap.newKeySet();
+    private final Set<String> overdraft_accounts = ConcurrentHashMap.newKeySet(); // Current accounts with a negative balance.
+    private final ConcurrentSkipListMap<LocalDate, Set<String>> maturity_index = new ConcurrentSkipListMap<>(); // Maturity date to Fixed Deposit IDs.
+
+    /**
+     * Adds accounts to the indexes.
+     * @param newAccounts The accounts.
+     */
+    public void registerAll(Collection<? extends BankAccountTypeInterface> newAccounts) {
+        for (BankAccountTypeInterface account : newAccounts) {
+            accounts.put(account.getAccountID(), account);
+            if (account instanceof FixedDepositAccount) {
+                // the maturity date never changes, so this index is only built once
+                LocalDate maturityDate = ((FixedDepositAccount) account).getMaturityDate();
+                maturity_index.computeIfAbsent(maturityDate, date -> ConcurrentHashMap.newKeySet()).add(account.getAccountID());
+            }
+            accountChanged(account);
+        }
+    }
+
+    /**
+     * Moves a changed account to its new place in the indexes. Accounts that are not registered are ignored.
+     * @param account The changed account.
+     */
+    @Override
+    public void accountChanged(BankAccountTypeInterface account) {
+        String accountID = account.getAccountID();
+        if (!accounts.containsKey(accountID)) {
+            return;
+        }
+        long balance = account.getBalance().getMinorUnits();
+        Long oldBalance = indexed_balances.put(accountID, balance);
+        if (oldBalance == null || oldBalance != balance) {
+            if (oldBalance != null) {
+                balance_index.remove(new BalanceKey(oldBalance, accountID));
+            }
+            balance_index.add(new BalanceKey(balance, accountID));
+        }
+
+        if (account.isHighValueAccount()) {
+            high_value_accounts.add(accountID);
+        } else {
+            high_value_accounts.remove(accountID);
+        }
+        if (account instanceof CurrentAccount && balance < 0) {
+            overdraft_accounts.add(accountID);
+        } else {
+            overdraft_accounts.remove(accountID);
+        }
+    }
+
+    /**
+     * Returns the accounts whose balance is between min and max (both included), from the lowest balance.
+     * @param min The lowest balance.
+     * @param max The highest balance.
+     * @return The accounts in the range.
+     */
+    public List<BankAccountTypeInterface> balanceRange(Money min, Money max) {
+        List<BankAccountTypeInterface> result = new ArrayList<>();
+        if (min.compareTo(max) > 0) {
+            return result;
+        }
+        // "" is the smallest ID and null sorts after all IDs, so both ends include every account with that balance
+        for (BalanceKey key : balance_index.subSet(new BalanceKey(min.getMinorUnits(), ""), true, new BalanceKey(max.getMinorUnits(), null), true)) {
+            result.add(accounts.get(key.accountID));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the n accounts with the highest balances, from the highest one.
+     * @param n Number of accounts.
+     * @return At most n accounts.
+     */
+    public List<BankAccountTypeInterface> topByBalance(int n) {
+        List<BankAccountTypeInterface> result = new ArrayList<>(Math.max(0, Math.min(n, accounts.size())));
+        Iterator<BalanceKey> keys = balance_index.descendingIterator();
+        while (result.size() < n && keys.hasNext()) {
+            result.add(accounts.get(keys.next().accountID));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of the high value accounts (isHighValueAccount() is true). The set is a live read-only view.
+     * @return IDs of the high value accounts.
+     */
+    public Set<String> highValueAccounts() {
+        return Collections.unmodifiableSet(high_value_accounts);
+    }
+
+    /**
+     * Returns the IDs of the Current accounts that are in overdraft. The set is a live read-only view.
+     * @return IDs of the accounts with a negative balance.
+     */
+    public Set<String> overdraftAccounts() {
+        return Collections.unmodifiableSet(overdraft_accounts);
+    }
+
+    /**
+     * Returns the Fixed Deposit accounts that mature between two dates (both included), from the earliest date.
+     * @param from The first date.
+     * @param to   The last date.
+     * @return The accounts in the range.
+     */
+    public List<FixedDepositAccount> maturingBetween(LocalDate from, LocalDate to) {
+        List<FixedDepositAccount> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        NavigableMap<LocalDate, Set<String>> range = maturity_index.subMap(from, true, to, true);
+        for (Set<String> accountIDs : range.values()) {
+            for (String accountID : accountIDs) {
+                result.add((FixedDepositAccount) accounts.get(accountID));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Key of the balance index. Equal balances are sorted by account ID, so every account has its own key.
+     * A null ID is bigger than every ID, it is only used as the upper end of a range.
+     */
+    private static final class BalanceKey implements Comparable<BalanceKey> {
+        private final long balance;
+        private final String accountID;
+
+        BalanceKey(long balance, String accountID) {
+            this.balance = balance;
+            this.accountID = accountID;
+        }
+
+        @Override
+        public int compareTo(BalanceKey other) {
+            int result = Long.compare(balance, other.balance);
+            if (result != 0 || accountID == other.accountID) {
+                return result;
+            }
+            if (accountID == null) {
+                return 1;
+            }
+            if (other.accountID == null) {
+                return -1;
+            }
+            return accountID.compareTo(other.accountID);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BalanceKey && compareTo((BalanceKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(balance) * 31 + (accountID == null ? 0 : accountID.hashCode());
+        }
+    }
+}
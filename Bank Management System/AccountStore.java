@@ -0,0 +1,734 @@
+import java.time.LocalDate;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact registry of the accounts, for systems with millions of accounts.
+ * Every account ID gets a dense number (0, 1, 2 ...) in the store and the state of the accounts is kept in primitive arrays,
+ * one group of columns per account type (balances, limits, rates, terms and dates). No object is kept per account:
+ * the ID Strings are the only objects, and a TransactionHistory is created when an account is given its first transaction.
+ * <p>
+ * The accounts are reached through thin views. A view is a CurrentAccount, SavingAccount or FixedDepositAccount whose
+ * state accessors read and write the columns, so the code that works on BankAccountTypeInterface works on the views too.
+ * Views are created when they are asked for, two views of the same account are equal.
+ * asMap() shows the store as a Map keyed by account ID, in the order the accounts were added.
+ * <p>
+ * The bulk scans (tierCounts, accountsIn, highValueAccounts, totalBalance) run over the columns of each type without creating views.
+ * Like the account objects, the store does not lock anything itself: the columns of an account are changed under the
+ * locks of TransferService, and the accounts are added by one thread before the transfers start.
+ */
+public class AccountStore {
+    private static final byte CURRENT = 1; // Type tags of the accounts, the same as in BankSnapshot.
+    private static final byte SAVING = 2;
+    private static final byte DEPOSIT = 3;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] account_ids = new String[INITIAL_CAPACITY]; // Account number to ID.
+    private byte[] types = new byte[INITIAL_CAPACITY]; // Account number to type tag.
+    private int[] rows = new int[INITIAL_CAPACITY]; // Account number to its row in the columns of its type.
+    private TransactionHistory[] histories = new TransactionHistory[INITIAL_CAPACITY]; // null until the account has a transaction.
+    private int[] slots = new int[INITIAL_CAPACITY * 2]; // Open addressing table of the IDs, account number + 1 (0 is an empty slot).
+    private int size;
+
+    private final CurrentColumns currents = new CurrentColumns();
+    private final SavingColumns savings = new SavingColumns();
+    private final DepositColumns deposits = new DepositColumns();
+    private final Map<String, BankAccountTypeInterface> map_view = new MapView();
+
+    /**
+     * Adds a Current account, or replaces the account that has the same ID.
+     * @param accountID      Unique identifier for the account.
+     * @param balance        Balance in cents.
+     * @param overdraftLimit Overdraft limit in cents.
+     * @return The number of the account.
+     */
+    public int addCurrent(String accountID, long balance, long overdraftLimit) {
+        int account = place(accountID, CURRENT, currents, balance);
+        currents.overdraft_limits[rows[account]] = overdraftLimit;
+        return account;
+    }
+
+    /**
+     * Adds a Saving account, or replaces the account that has the same ID.
+     * @param accountID    Unique identifier for the account.
+     * @param balance      Balance in cents.
+     * @param interestRate Interest rate for the account.
+     * @param minBalance   Minimum balance in cents.
+     * @return The number of the account.
+     */
+    public int addSaving(String accountID, long balance, double interestRate, long minBalance) {
+        int account = place(accountID, SAVING, savings, balance);
+        int row = rows[account];
+        savings.interest_rates[row] = interestRate;
+        savings.min_balances[row] = minBalance;
+        return account;
+    }
+
+    /**
+     * Adds a Fixed Deposit account, or replaces the account that has the same ID.
+     * The maturity status is set from the date of BankClock, like the FixedDepositAccount constructor does.
+     * @param accountID    Unique identifier for the account.
+     * @param balance      Balance in cents.
+     * @param interestRate Interest rate for the account.
+     * @param termInMonths Term of the account in months.
+     * @param penaltyRate  Penalty rate for early withdrawals.
+     * @param startDate    Start date in "yyyy-MM-dd" format.
+     * @return The number of the account.
+     */
+    public int addDeposit(String accountID, long balance, double interestRate, int termInMonths, double penaltyRate, String startDate) {
+        LocalDate start = LocalDate.parse(startDate.trim());
+        LocalDate maturityDate = start.plusMonths(termInMonths);
+        return addDeposit(accountID, balance, interestRate, termInMonths, penaltyRate, start, maturityDate, !BankClock.today().isBefore(maturityDate));
+    }
+
+    /**
+     * Copies an account object into the store, or replaces the account that has the same ID.
+     * The history of the account is kept if it has any transaction.
+     * @param account A CurrentAccount, SavingAccount or FixedDepositAccount.
+     * @return The number of the account.
+     */
+    public int add(BankAccountTypeInterface account) {
+        String accountID = account.getAccountID();
+        long balance = account.getBalance().getMinorUnits();
+        int number;
+        if (account instanceof CurrentAccount) {
+            number = addCurrent(accountID, balance, ((CurrentAccount) account).getOverdraftLimit().getMinorUnits());
+        } else if (account instanceof SavingAccount) {
+            SavingAccount saving = (SavingAccount) account;
+            number = addSaving(accountID, balance, saving.getInterestRate(), saving.getMinBalance().getMinorUnits());
+        } else if (account instanceof FixedDepositAccount) {
+            FixedDepositAccount deposit = (FixedDepositAccount) account;
+            number = addDeposit(accountID, balance, deposit.getInterestRate(), deposit.getTermInMonths(), deposit.getPenaltyRate(),
+                    LocalDate.parse(deposit.getStartDate()), deposit.getMaturityDate(), deposit.isMatured());
+        } else {
+            throw new IllegalArgumentException("Unknown account class: " + account.getClass().getName());
+        }
+        TransactionHistory history = account.getTransactionHistory();
+        histories[number] = history.size() > 0 ? history : null;
+        return number;
+    }
+
+    /**
+     * Returns the number of an account.
+     * @param accountID The account ID.
+     * @return The number of the account, -1 if there is no such account.
+     */
+    public int indexOf(String accountID) {
+        int mask = slots.length - 1;
+        for (int slot = hash(accountID) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int account = slots[slot] - 1;
+            if (account_ids[account].equals(accountID)) {
+                return account;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a view of an account.
+     * @param accountID The account ID.
+     * @return The view, null if there is no such account.
+     */
+    public BankAccountTypeInterface get(String accountID) {
+        int account = indexOf(accountID);
+        return account < 0 ? null : view(account);
+    }
+
+    /**
+     * Returns a view of an account by its number.
+     * @param account A number from 0 to size()-1.
+     * @return The view.
+     */
+    public BankAccountTypeInterface view(int account) {
+        if (account < 0 || account >= size) {
+            throw new IndexOutOfBoundsException("No account number " + account);
+        }
+        switch (types[account]) {
+            case CURRENT:
+                return new CurrentView(account);
+            case SAVING:
+                return new SavingView(account);
+            default:
+                return new DepositView(account);
+        }
+    }
+
+    /**
+     * Returns the number of accounts in the store.
+     * @return Number of accounts.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the store as a Map from account ID to the views. The map is backed by the store:
+     * put() copies the account into the columns with add() and returns the view that the ID had before (it is not
+     * kept up to date after the replacement). Removing accounts is not supported.
+     * @return The map view.
+     */
+    public Map<String, BankAccountTypeInterface> asMap() {
+        return map_view;
+    }
+
+    /**
+     * Counts the accounts in every risk tier with one pass over the columns of each type.
+     * @return Number of accounts, indexed by RiskTier.ordinal().
+     */
+    public int[] tierCounts() {
+        int[] counts = new int[RiskTier.values().length];
+        for (int row = 0; row < currents.count; row++) {
+            if (currents.accounts[row] >= 0) {
+                counts[CurrentAccount.riskTierOf(currents.balances[row], currents.overdraft_limits[row]).ordinal()]++;
+            }
+        }
+        for (int row = 0; row < savings.count; row++) {
+            if (savings.accounts[row] >= 0) {
+                counts[savingTier(row).ordinal()]++;
+            }
+        }
+        long today = BankClock.today().toEpochDay();
+        for (int row = 0; row < deposits.count; row++) {
+            if (deposits.accounts[row] >= 0) {
+                counts[FixedDepositAccount.riskTierOf(deposits.matured[row], deposits.maturity_days[row] - today).ordinal()]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the IDs of the accounts in a risk tier, found with a pass over the columns.
+     * @param tier The risk tier.
+     * @return The account IDs, Current accounts first, then Saving and Fixed Deposit accounts.
+     */
+    public List<String> accountsIn(RiskTier tier) {
+        List<String> result = new ArrayList<>();
+        for (int row = 0; row < currents.count; row++) {
+            if (currents.accounts[row] >= 0 && CurrentAccount.riskTierOf(currents.balances[row], currents.overdraft_limits[row]) == tier) {
+                result.add(account_ids[currents.accounts[row]]);
+            }
+        }
+        for (int row = 0; row < savings.count; row++) {
+            if (savings.accounts[row] >= 0 && savingTier(row) == tier) {
+                result.add(account_ids[savings.accounts[row]]);
+            }
+        }
+        long today = BankClock.today().toEpochDay();
+        for (int row = 0; row < deposits.count; row++) {
+            if (deposits.accounts[row] >= 0 && FixedDepositAccount.riskTierOf(deposits.matured[row], deposits.maturity_days[row] - today) == tier) {
+                result.add(account_ids[deposits.accounts[row]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of the high value accounts, found with a pass over the columns.
+     * @return The account IDs, Current accounts first, then Saving and Fixed Deposit accounts.
+     */
+    public List<String> highValueAccounts() {
+        List<String> result = new ArrayList<>();
+        for (int row = 0; row < currents.count; row++) {
+            if (currents.accounts[row] >= 0 && CurrentAccount.isHighValue(currents.balances[row], currents.overdraft_limits[row])) {
+                result.add(account_ids[currents.accounts[row]]);
+            }
+        }
+        for (int row = 0; row < savings.count; row++) {
+            if (savings.accounts[row] >= 0 && SavingAccount.isHighValue(savings.balances[row])) {
+                result.add(account_ids[savings.accounts[row]]);
+            }
+        }
+        for (int row = 0; row < deposits.count; row++) {
+            if (deposits.accounts[row] >= 0 && FixedDepositAccount.isHighValue(deposits.balances[row])) {
+                result.add(account_ids[deposits.accounts[row]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds up the balances of all accounts.
+     * @return The total balance.
+     */
+    public Money totalBalance() {
+        return Money.ofMinorUnits(currents.total() + savings.total() + deposits.total());
+    }
+
+    private int addDeposit(String accountID, long balance, double interestRate, int termInMonths, double penaltyRate,
+                           LocalDate startDate, LocalDate maturityDate, boolean matured) {
+        int account = place(accountID, DEPOSIT, deposits, balance);
+        int row = rows[account];
+        deposits.interest_rates[row] = interestRate;
+        deposits.terms[row] = termInMonths;
+        deposits.penalty_rates[row] = penaltyRate;
+        deposits.start_days[row] = (int) startDate.toEpochDay();
+        deposits.maturity_days[row] = (int) maturityDate.toEpochDay();
+        deposits.matured[row] = matured;
+        return account;
+    }
+
+    /**
+     * Finds or creates the number of an ID and gives it a row in the columns of its type with the balance filled in.
+     * A replaced account of the same type keeps its row, the row of a replaced account of another type is left unused.
+     */
+    private int place(String accountID, byte type, Columns columns, long balance) {
+        int account = indexOf(accountID);
+        if (account < 0) {
+            account = newAccount(accountID);
+        } else if (types[account] == type) {
+            columns.balances[rows[account]] = balance;
+            histories[account] = null;
+            return account;
+        } else {
+            columnsOf(types[account]).accounts[rows[account]] = -1;
+            histories[account] = null;
+        }
+        types[account] = type;
+        rows[account] = columns.addRow(account, balance);
+        return account;
+    }
+
+    private int newAccount(String accountID) {
+        if (size == account_ids.length) {
+            int capacity = size * 2;
+            account_ids = Arrays.copyOf(account_ids, capacity);
+            types = Arrays.copyOf(types, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            histories = Arrays.copyOf(histories, capacity);
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        int account = size++;
+        account_ids[account] = accountID;
+        insertSlot(account);
+        return account;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int account = 0; account < size; account++) {
+            insertSlot(account);
+        }
+    }
+
+    private void insertSlot(int account) {
+        int mask = slots.length - 1;
+        int slot = hash(account_ids[account]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = account + 1;
+    }
+
+    private static int hash(String accountID) {
+        int h = accountID.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Columns columnsOf(byte type) {
+        switch (type) {
+            case CURRENT:
+                return currents;
+            case SAVING:
+                return savings;
+            default:
+                return deposits;
+        }
+    }
+
+    private RiskTier savingTier(int row) {
+        TransactionHistory history = histories[savings.accounts[row]];
+        return SavingAccount.riskTierOf(savings.balances[row], savings.min_balances[row], history == null ? 0 : history.size());
+    }
+
+    /**
+     * Returns the history of an account, creating it on the first use.
+     */
+    private TransactionHistory history(int account) {
+        TransactionHistory history = histories[account];
+        if (history == null) {
+            history = new TransactionHistory(account_ids[account]);
+            histories[account] = history;
+        }
+        return history;
+    }
+
+    /**
+     * The columns that every account type has. A row whose account is -1 belongs to a replaced account.
+     */
+    private abstract static class Columns {
+        int count; // Number of used rows.
+        int[] accounts = new int[INITIAL_CAPACITY]; // Row to account number.
+        long[] balances = new long[INITIAL_CAPACITY]; // Balances in cents.
+
+        int addRow(int account, long balance) {
+            if (count == accounts.length) {
+                int capacity = count * 2;
+                accounts = Arrays.copyOf(accounts, capacity);
+                balances = Arrays.copyOf(balances, capacity);
+                grow(capacity);
+            }
+            accounts[count] = account;
+            balances[count] = balance;
+            return count++;
+        }
+
+        long total() {
+            long total = 0;
+            for (int row = 0; row < count; row++) {
+                if (accounts[row] >= 0) {
+                    total += balances[row];
+                }
+            }
+            return total;
+        }
+
+        abstract void grow(int capacity);
+    }
+
+    private static final class CurrentColumns extends Columns {
+        long[] overdraft_limits = new long[INITIAL_CAPACITY]; // In cents.
+
+        @Override
+        void grow(int capacity) {
+            overdraft_limits = Arrays.copyOf(overdraft_limits, capacity);
+        }
+    }
+
+    private static final class SavingColumns extends Columns {
+        double[] interest_rates = new double[INITIAL_CAPACITY];
+        long[] min_balances = new long[INITIAL_CAPACITY]; // In cents.
+
+        @Override
+        void grow(int capacity) {
+            interest_rates = Arrays.copyOf(interest_rates, capacity);
+            min_balances = Arrays.copyOf(min_balances, capacity);
+        }
+    }
+
+    private static final class DepositColumns extends Columns {
+        double[] interest_rates = new double[INITIAL_CAPACITY];
+        int[] terms = new int[INITIAL_CAPACITY]; // Terms in months.
+        double[] penalty_rates = new double[INITIAL_CAPACITY];
+        int[] start_days = new int[INITIAL_CAPACITY]; // Start dates as epoch days.
+        int[] maturity_days = new int[INITIAL_CAPACITY]; // Maturity dates as epoch days.
+        boolean[] matured = new boolean[INITIAL_CAPACITY]; // true if the status is "Matured".
+
+        @Override
+        void grow(int capacity) {
+            interest_rates = Arrays.copyOf(interest_rates, capacity);
+            terms = Arrays.copyOf(terms, capacity);
+            penalty_rates = Arrays.copyOf(penalty_rates, capacity);
+            start_days = Arrays.copyOf(start_days, capacity);
+            maturity_days = Arrays.copyOf(maturity_days, capacity);
+            matured = Arrays.copyOf(matured, capacity);
+        }
+    }
+
+    /**
+     * Implemented by the views, so views of the same account are equal.
+     */
+    private interface View {
+        AccountStore store();
+
+        int account();
+    }
+
+    private boolean sameAccount(Object other, int account) {
+        return other instanceof View && ((View) other).store() == this && ((View) other).account() == account;
+    }
+
+    private final class CurrentView extends CurrentAccount implements View {
+        private final int account; // Number of the account.
+        private final int row; // Row in the Current columns.
+
+        CurrentView(int account) {
+            super(account_ids[account]);
+            this.account = account;
+            this.row = rows[account];
+        }
+
+        @Override
+        long balanceCents() {
+            return currents.balances[row];
+        }
+
+        @Override
+        void setBalanceCents(long cents) {
+            currents.balances[row] = cents;
+        }
+
+        @Override
+        long overdraftCents() {
+            return currents.overdraft_limits[row];
+        }
+
+        @Override
+        public TransactionHistory getTransactionHistory() {
+            return history(account);
+        }
+
+        @Override
+        public AccountStore store() {
+            return AccountStore.this;
+        }
+
+        @Override
+        public int account() {
+            return account;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return sameAccount(o, account);
+        }
+
+        @Override
+        public int hashCode() {
+            return account;
+        }
+    }
+
+    private final class SavingView extends SavingAccount implements View {
+        private final int account; // Number of the account.
+        private final int row; // Row in the Saving columns.
+
+        SavingView(int account) {
+            super(account_ids[account]);
+            this.account = account;
+            this.row = rows[account];
+        }
+
+        @Override
+        long balanceCents() {
+            return savings.balances[row];
+        }
+
+        @Override
+        void setBalanceCents(long cents) {
+            savings.balances[row] = cents;
+        }
+
+        @Override
+        long minBalanceCents() {
+            return savings.min_balances[row];
+        }
+
+        @Override
+        public double getInterestRate() {
+            return savings.interest_rates[row];
+        }
+
+        @Override
+        public TransactionHistory getTransactionHistory() {
+            return history(account);
+        }
+
+        @Override
+        public AccountStore store() {
+            return AccountStore.this;
+        }
+
+        @Override
+        public int account() {
+            return account;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return sameAccount(o, account);
+        }
+
+        @Override
+        public int hashCode() {
+            return account;
+        }
+    }
+
+    private final class DepositView extends FixedDepositAccount implements View {
+        private final int account; // Number of the account.
+        private final int row; // Row in the Fixed Deposit columns.
+
+        DepositView(int account) {
+            super(account_ids[account]);
+            this.account = account;
+            this.row = rows[account];
+        }
+
+        @Override
+        long balanceCents() {
+            return deposits.balances[row];
+        }
+
+        @Override
+        void setBalanceCents(long cents) {
+            deposits.balances[row] = cents;
+        }
+
+        @Override
+        public void setMaturity_status() {
+            deposits.matured[row] = BankClock.today().toEpochDay() >= deposits.maturity_days[row];
+        }
+
+        @Override
+        public boolean isMatured() {
+            return deposits.matured[row];
+        }
+
+        @Override
+        public LocalDate getMaturityDate() {
+            return LocalDate.ofEpochDay(deposits.maturity_days[row]);
+        }
+
+        @Override
+        public double getInterestRate() {
+            return deposits.interest_rates[row];
+        }
+
+        @Override
+        public int getTermInMonths() {
+            return deposits.terms[row];
+        }
+
+        @Override
+        public double getPenaltyRate() {
+            return deposits.penalty_rates[row];
+        }
+
+        @Override
+        public String getStartDate() {
+            return LocalDate.ofEpochDay(deposits.start_days[row]).toString();
+        }
+
+        @Override
+        public TransactionHistory getTransactionHistory() {
+            return history(account);
+        }
+
+        @Override
+        public AccountStore store() {
+            return AccountStore.this;
+        }
+
+        @Override
+        public int account() {
+            return account;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return sameAccount(o, account);
+        }
+
+        @Override
+        public int hashCode() {
+            return account;
+        }
+    }
+
+    /**
+     * The Map returned by asMap().
+     */
+    private final class MapView extends AbstractMap<String, BankAccountTypeInterface> {
+        private final Set<Map.Entry<String, BankAccountTypeInterface>> entries = new AbstractSet<Map.Entry<String, BankAccountTypeInterface>>() {
+            @Override
+            public Iterator<Map.Entry<String, BankAccountTypeInterface>> iterator() {
+                Iterator<BankAccountTypeInterface> views = new ViewIterator();
+                return new Iterator<Map.Entry<String, BankAccountTypeInterface>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return views.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, BankAccountTypeInterface> next() {
+                        BankAccountTypeInterface view = views.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(view.getAccountID(), view);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+        private final Collection<BankAccountTypeInterface> values = new AbstractCollection<BankAccountTypeInterface>() {
+            @Override
+            public Iterator<BankAccountTypeInterface> iterator() {
+                return new ViewIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+
+        @Override
+        public BankAccountTypeInterface get(Object key) {
+            return key instanceof String ? AccountStore.this.get((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && indexOf((String) key) >= 0;
+        }
+
+        @Override
+        public BankAccountTypeInterface put(String key, BankAccountTypeInterface value) {
+            if (!key.equals(value.getAccountID())) {
+                throw new IllegalArgumentException("Key " + key + " is not the ID of account " + value.getAccountID());
+            }
+            int account = indexOf(key);
+            BankAccountTypeInterface previous = account < 0 ? null : view(account);
+            add(value);
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<String, BankAccountTypeInterface>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public Collection<BankAccountTypeInterface> values() {
+            return values;
+        }
+    }
+
+    /**
+     * Creates the views of the accounts in the order of their numbers.
+     */
+    private final class ViewIterator implements Iterator<BankAccountTypeInterface> {
+        private int next; // Number of the next account.
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public BankAccountTypeInterface next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            return view(next++);
+        }
+    }
+}
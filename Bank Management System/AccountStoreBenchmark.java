@@ -0,0 +1,135 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the memory and the scan speed of the accounts as objects in a HashMap with the columns of an AccountStore.
+ * The same mix of Current, Saving and Fixed Deposit accounts is built both ways. The memory is the used heap after a
+ * garbage collection, so it is an estimate. The scan counts the accounts of every risk tier.
+ * Usage: java AccountStoreBenchmark [accounts] [scans]
+ */
+public class AccountStoreBenchmark {
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of accounts and number of timed scans.
+     */
+    public static void main(String[] args) {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int scans = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        long before = usedMemory();
+        Map<String, BankAccountTypeInterface> objects = new HashMap<>();
+        for (int i = 0; i < accountCount; i++) {
+            BankAccountTypeInterface account = createAccount(i);
+            objects.put(account.getAccountID(), account);
+        }
+        long objectBytes = usedMemory() - before;
+        System.out.printf("HashMap of objects: %,d bytes per account%n", objectBytes / accountCount);
+        double objectSeconds = timeObjectScans(objects, scans);
+        objects = null;
+
+        before = usedMemory();
+        AccountStore store = new AccountStore();
+        for (int i = 0; i < accountCount; i++) {
+            addAccount(store, i);
+        }
+        long storeBytes = usedMemory() - before;
+        System.out.printf("AccountStore:       %,d bytes per account (%.1fx smaller)%n", storeBytes / accountCount, (double) objectBytes / storeBytes);
+        double storeSeconds = timeStoreScans(store, scans);
+
+        System.out.printf("risk scan objects:  %,.0f accounts/s%n", (double) accountCount * scans / objectSeconds);
+        System.out.printf("risk scan columns:  %,.0f accounts/s%n", (double) accountCount * scans / storeSeconds);
+    }
+
+    /**
+     * Creates account i of the mix as an object.
+     */
+    private static BankAccountTypeInterface createAccount(int i) {
+        Money balance = Money.ofMinorUnits(100_000 + (i % 1000) * 1_000L);
+        switch (i % 3) {
+            case 0:
+                return new CurrentAccount("CUR" + i, balance, Money.ofMinorUnits(50_000));
+            case 1:
+                return new SavingAccount("SAV" + i, balance, 0.05, Money.ofMinorUnits(20_000));
+            default:
+                return new FixedDepositAccount("DEP" + i, balance, 0.04, 1 + i % 60, 0.1, "2024-01-01");
+        }
+    }
+
+    /**
+     * Adds account i of the same mix to the store, without creating an object.
+     */
+    private static void addAccount(AccountStore store, int i) {
+        long balance = 100_000 + (i % 1000) * 1_000L;
+        switch (i % 3) {
+            case 0:
+                store.addCurrent("CUR" + i, balance, 50_000);
+                break;
+            case 1:
+                store.addSaving("SAV" + i, balance, 0.05, 20_000);
+                break;
+            default:
+                store.addDeposit("DEP" + i, balance, 0.04, 1 + i % 60, 0.1, "2024-01-01");
+        }
+    }
+
+    /**
+     * Counts the risk tiers by calling riskTier() on every object, once to warm up and then scans times.
+     * @return Elapsed time of the timed scans in seconds.
+     */
+    private static double timeObjectScans(Map<String, BankAccountTypeInterface> accounts, int scans) {
+        long start = 0;
+        int[] counts = new int[RiskTier.values().length];
+        for (int scan = 0; scan <= scans; scan++) {
+            if (scan == 1) {
+                start = System.nanoTime();
+            }
+            for (BankAccountTypeInterface account : accounts.values()) {
+                counts[account.riskTier().ordinal()]++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("objects: " + tierText(counts, scans + 1));
+        return seconds;
+    }
+
+    /**
+     * Counts the risk tiers with AccountStore.tierCounts(), once to warm up and then scans times.
+     * @return Elapsed time of the timed scans in seconds.
+     */
+    private static double timeStoreScans(AccountStore store, int scans) {
+        long start = 0;
+        int[] counts = new int[RiskTier.values().length];
+        for (int scan = 0; scan <= scans; scan++) {
+            if (scan == 1) {
+                start = System.nanoTime();
+            }
+            int[] scanCounts = store.tierCounts();
+            for (int tier = 0; tier < counts.length; tier++) {
+                counts[tier] += scanCounts[tier];
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("columns: " + tierText(counts, scans + 1));
+        return seconds;
+    }
+
+    /**
+     * Formats the tier counts of one scan, so both ways can be checked to give the same counts.
+     */
+    private static String tierText(int[] counts, int scans) {
+        StringBuilder text = new StringBuilder();
+        for (RiskTier tier : RiskTier.values()) {
+            text.append(tier).append('=').append(counts[tier.ordinal()] / scans).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
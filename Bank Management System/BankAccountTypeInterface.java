@@ -1,7 +1,10 @@
+import java.math.RoundingMode;
+
 /**
  * The BankAccountTypeInterface represents a generic bank account type.
  * It provides methods for common operations such as deposit, withdraw, and risk evaluation or displaying the details about the account.
  * Also it allows setting and getting account details like balance and interest calculation.
+ * All amounts are Money (whole cents). The double versions of the methods are kept for compatibility and round to the nearest cent.
  */
 public interface BankAccountTypeInterface {
 
@@ -10,27 +13,105 @@ public interface BankAccountTypeInterface {
          * @param receiver The account where the amount will be deposited.
          * @param amount   The amount that deposited.
          */
-        void deposit(BankAccountTypeInterface receiver, double amount) ;
+        void deposit(BankAccountTypeInterface receiver, Money amount) ;
+
+        /**
+         * Deposits a specified amount into the receiver's account.
+         * @param receiver The account where the amount will be deposited.
+         * @param amount   The amount that deposited, rounded to the nearest cent.
+         */
+        default void deposit(BankAccountTypeInterface receiver, double amount) {
+                deposit(receiver, Money.of(amount));
+        }
+
+        /**
+         * Withdraws a specified amount without throwing or printing anything.
+         * A rejection is returned as a code and its details are written into result, so it does not create an exception.
+         * @param receiver The account from which the amount will be withdrawn.
+         * @param amount   The amount that withdrawn.
+         * @param result   Filled with the outcome and the details of a rejection.
+         * @return ACCEPTED if the withdrawal is successful, otherwise the reason of the rejection.
+         */
+        WithdrawOutcome tryWithdraw(BankAccountTypeInterface receiver, Money amount, WithdrawResult result);
 
         /**
          * Withdraws a specified amount from the receiver's account.
+         * A rejection is printed to the console with the same details as the old exceptions.
+         * @param receiver The account from which the amount will be withdrawn.
+         * @param amount   The amount that withdrawn.
+         * @return true if the withdrawal is successful, otherwise return false.
+         */
+        default boolean withdraw(BankAccountTypeInterface receiver, Money amount) {
+                WithdrawResult result = WithdrawResult.forCurrentThread();
+                if (tryWithdraw(receiver, amount, result).isAccepted()) {
+                        return true;
+                }
+                System.out.println(result.getErrorDetails());
+                return false;
+        }
+
+        /**
+         * Withdraws a specified amount and throws an exception if it is rejected, for the code that uses the exceptions.
          * @param receiver The account from which the amount will be withdrawn.
          * @param amount   The amount that withdrawn.
+         * @throws InvalidAmountException      If the amount is negative.
+         * @throws InsufficientFundsException If the amount is over the balance or the limit.
+         * @throws PenaltyException           If the amount and the penalty are over the balance.
+         */
+        default void withdrawOrThrow(BankAccountTypeInterface receiver, Money amount) throws InvalidAmountException, InsufficientFundsException, PenaltyException {
+                WithdrawResult result = WithdrawResult.forCurrentThread();
+                if (!tryWithdraw(receiver, amount, result).isAccepted()) {
+                        result.throwIfRejected();
+                }
+        }
+
+        /**
+         * Withdraws a specified amount from the receiver's account.
+         * @param receiver The account from which the amount will be withdrawn.
+         * @param amount   The amount that withdrawn, rounded to the nearest cent.
          * @return true if the withdrawal is successful, otherwise return false.
          */
-        boolean withdraw(BankAccountTypeInterface receiver,double amount) ;
+        default boolean withdraw(BankAccountTypeInterface receiver, double amount) {
+                return withdraw(receiver, Money.of(amount));
+        }
 
         /**
          * Evaluates the risk level of the account based on some criterias.
          * The implementation take into account  factors such as account balance and transaction history etc.
+         * @return The risk evaluation message.
          */
-        void evaluateRisk();
+        String riskEvaluation();
 
         /**
-         * Displays the details of the account.
+         * Returns the risk level of the account, the same level as riskEvaluation() without creating the message.
+         * It only uses the fields of the account, so RiskEngine can call it after every change.
+         * @return The risk tier.
+         */
+        RiskTier riskTier();
+
+        /**
+         * Prints the risk evaluation of the account to the console.
+         */
+        default void evaluateRisk() {
+                System.out.println(riskEvaluation());
+        }
+
+        /**
+         * Appends the details of the account to a text, exactly as displayAccountDetails prints them.
          * This may include information like account ID, current balance, account type and other attributes.
+         * @param out The text that the details are appended to.
+         */
+        void appendAccountDetails(StringBuilder out);
+
+        /**
+         * Displays the details of the account.
+         * The details are rendered with appendAccountDetails and printed with one call, ReportWriter prints many accounts faster.
          */
-        void displayAccountDetails();
+        default void displayAccountDetails() {
+                StringBuilder details = new StringBuilder();
+                appendAccountDetails(details);
+                System.out.print(details);
+        }
 
         /**
          * Checks if the account is considered as a high-value account.
@@ -44,23 +125,54 @@ public interface BankAccountTypeInterface {
          */
         String getAccountID();
 
+        /**
+         * Retrieves the transaction history of the account.
+         * @return The transaction history.
+         */
+        TransactionHistory getTransactionHistory();
+
         /**
          * Calculates the interest for the account based on the current balance and interest rate if the account have any.
-         * @return The calculated interest amount as a double value.
+         * @param rounding How the interest is rounded to cents.
+         * @return The calculated interest amount.
+         */
+        Money calculateInterest(RoundingMode rounding);
+
+        /**
+         * Calculates the interest for the account based on the current balance and interest rate if the account have any.
+         * @return The calculated interest amount as a double value, rounded with Money.INTEREST_ROUNDING.
+         */
+        default double Interest_calculation() {
+                return calculateInterest(Money.INTEREST_ROUNDING).toDouble();
+        }
+
+        /**
+         * Updates the current balance of the account.
+         * @param balance The new balance to set for the account.
+         */
+        void setBalance(Money balance);
+
+        /**
+         * Retrieves the current balance of the account.
+         * @return The current balance.
          */
-        double Interest_calculation();
+        Money getBalance();
 
         /**
          * Updates the current balance of the account.
-         * @param currentBalance The new balance to set for the account.
+         * @param currentBalance The new balance to set for the account, rounded to the nearest cent.
          */
-        void setCurrentBalance(double currentBalance);
+        default void setCurrentBalance(double currentBalance) {
+                setBalance(Money.of(currentBalance));
+        }
 
         /**
          * Retrieves the current balance of the account.
          * @return The current balance as a double.
          */
-        double getCurrentBalance();
+        default double getCurrentBalance() {
+                return getBalance().toDouble();
+        }
     }
 
 
@@ -0,0 +1,95 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The clock of the banking system. Every date check (maturity of Fixed Deposit accounts, days to maturity)
+ * reads the date from here instead of LocalDate.now(), so a run can use a fixed date or a simulated clock.
+ * The default is the system clock.
+ */
+public final class BankClock {
+    private static volatile Clock clock = Clock.systemDefaultZone(); // Clock used by the system.
+
+    private BankClock() {
+    }
+
+    /**
+     * Changes the clock. It should be set before the accounts are created, because they read the date in their constructors.
+     * @param newClock The new clock.
+     */
+    public static void set(Clock newClock) {
+        clock = newClock;
+    }
+
+    /**
+     * Returns the current clock.
+     * @return The clock.
+     */
+    public static Clock get() {
+        return clock;
+    }
+
+    /**
+     * Returns today's date of the clock.
+     * @return The current date.
+     */
+    public static LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * A clock that only moves when it is told to, for simulations that replay months in a few seconds.
+     */
+    public static final class Adjustable extends Clock {
+        private final ZoneId zone;
+        private volatile Instant instant;
+
+        /**
+         * Constructs a clock that shows the start of the given date.
+         * @param date The start date.
+         * @param zone The time zone.
+         */
+        public Adjustable(LocalDate date, ZoneId zone) {
+            this.zone = zone;
+            this.instant = date.atStartOfDay(zone).toInstant();
+        }
+
+        private Adjustable(Instant instant, ZoneId zone) {
+            this.zone = zone;
+            this.instant = instant;
+        }
+
+        /**
+         * Moves the clock forward.
+         * @param duration How much the clock moves.
+         */
+        public void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        /**
+         * Moves the clock to the start of a date.
+         * @param date The new date.
+         */
+        public void setDate(LocalDate date) {
+            instant = date.atStartOfDay(zone).toInstant();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId newZone) {
+            return new Adjustable(instant, newZone);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
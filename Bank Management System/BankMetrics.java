@@ -0,0 +1,249 @@
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Metrics of a run: the number of transfers, the rejections by their exception type and the latency of every stage.
+ * Everything is off until enable() is called, then the counters are LongAdders and the latencies are LatencyHistograms,
+ * so the threads of the parallel modes can record at the same time without waiting for each other.
+ * dump() prints the metrics at the end of the run.
+ * <p>
+ * While the metrics are on, the withdrawals and deposits of TransferService are also JFR events (bank.Withdraw and
+ * bank.Deposit), which are recorded when the program runs with -XX:StartFlightRecording. They are not created while the
+ * metrics are off, because loading the JFR classes alone adds about a third of a second to the start of a run.
+ */
+public final class BankMetrics {
+
+    /**
+     * A measured step of the transactions.
+     */
+    public enum Stage {
+        PARSE,    // Splitting one line into sender, amount and receiver.
+        VALIDATE, // Finding the accounts of one line (TransactionPipeline).
+        JOURNAL,  // Appending one transfer to the journal.
+        TRANSFER  // Locking, withdrawing and depositing one transfer, in every mode.
+    }
+
+    private static volatile boolean enabled; // Nothing is recorded while false.
+    private static volatile long start_nanos; // When enable() was called.
+
+    private static final LongAdder accepted = new LongAdder(); // Transfers that moved money.
+    private static final LongAdder unknown_accounts = new LongAdder(); // Lines with a sender or receiver that does not exist.
+    private static final Map<WithdrawOutcome, LongAdder> rejections = new EnumMap<>(WithdrawOutcome.class);
+    private static final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+
+    static {
+        for (WithdrawOutcome outcome : WithdrawOutcome.values()) {
+            if (!outcome.isAccepted()) {
+                rejections.put(outcome, new LongAdder());
+            }
+        }
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+        }
+    }
+
+    private BankMetrics() {
+    }
+
+    /**
+     * Starts recording. The transfers per second are counted from this moment.
+     */
+    public static void enable() {
+        start_nanos = System.nanoTime();
+        enabled = true;
+    }
+
+    /**
+     * Checks if the metrics are recorded.
+     * @return true after enable().
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the start time of a measured step, to be passed to recordLatency() at its end.
+     * @return System.nanoTime(), or 0 when the metrics are off (so the clock is not read).
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a step that started at startTimer().
+     * @param stage      The step.
+     * @param startNanos The value returned by startTimer().
+     */
+    public static void recordLatency(Stage stage, long startNanos) {
+        if (enabled && startNanos != 0) {
+            latencies.get(stage).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Counts the outcome of one withdrawal of a transfer.
+     * @param outcome ACCEPTED or the reason of the rejection.
+     */
+    public static void recordOutcome(WithdrawOutcome outcome) {
+        if (enabled) {
+            (outcome.isAccepted() ? accepted : rejections.get(outcome)).increment();
+        }
+    }
+
+    /**
+     * Starts the JFR event of a withdrawal.
+     * @return The started event, or null when the metrics are off.
+     */
+    public static WithdrawEvent beginWithdraw() {
+        if (!enabled) {
+            return null;
+        }
+        WithdrawEvent event = new WithdrawEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Counts the outcome of a withdrawal and commits its JFR event.
+     * @param event   The event returned by beginWithdraw(), can be null.
+     * @param sender  The account that withdrew.
+     * @param amount  The amount of the withdrawal.
+     * @param outcome ACCEPTED or the reason of the rejection.
+     */
+    public static void endWithdraw(WithdrawEvent event, BankAccountTypeInterface sender, Money amount, WithdrawOutcome outcome) {
+        if (event == null) {
+            return;
+        }
+        recordOutcome(outcome);
+        event.end();
+        if (event.shouldCommit()) {
+            event.accountID = sender.getAccountID();
+            event.amount = amount.getMinorUnits();
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts the JFR event of a deposit.
+     * @return The started event, or null when the metrics are off.
+     */
+    public static DepositEvent beginDeposit() {
+        if (!enabled) {
+            return null;
+        }
+        DepositEvent event = new DepositEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the JFR event of a deposit.
+     * @param event    The event returned by beginDeposit(), can be null.
+     * @param receiver The account that received the money.
+     * @param amount   The amount of the deposit.
+     */
+    public static void endDeposit(DepositEvent event, BankAccountTypeInterface receiver, Money amount) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.accountID = receiver.getAccountID();
+            event.amount = amount.getMinorUnits();
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts a line whose sender or receiver does not exist.
+     */
+    public static void recordUnknownAccount() {
+        if (enabled) {
+            unknown_accounts.increment();
+        }
+    }
+
+    /**
+     * Returns the number of rejections of one kind.
+     * @param outcome The reason of the rejection.
+     * @return The count.
+     */
+    public static long getRejections(WithdrawOutcome outcome) {
+        return rejections.get(outcome).sum();
+    }
+
+    /**
+     * Returns the latency histogram of a stage.
+     * @param stage The stage.
+     * @return The histogram.
+     */
+    public static LatencyHistogram getLatencies(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    /**
+     * Prints the counters and the percentiles of the stages (in microseconds) that have recorded something.
+     * @param out The stream to print to.
+     */
+    public static void dump(PrintStream out) {
+        double seconds = (System.nanoTime() - start_nanos) / 1e9;
+        long rejected = 0;
+        for (LongAdder count : rejections.values()) {
+            rejected += count.sum();
+        }
+        long transfers = accepted.sum() + rejected;
+        out.printf("Metrics after %.3f s%n", seconds);
+        out.printf("transfers: %d (%.0f/s), accepted %d, rejected %d%n", transfers, transfers / Math.max(seconds, 1e-9), accepted.sum(), rejected);
+        out.printf("rejections: InvalidAmountException=%d InsufficientFundsException=%d PenaltyException=%d unknown account=%d%n",
+                getRejections(WithdrawOutcome.INVALID_AMOUNT), getRejections(WithdrawOutcome.INSUFFICIENT_FUNDS),
+                getRejections(WithdrawOutcome.PENALTY), unknown_accounts.sum());
+        out.printf("%-10s %10s %9s %9s %9s %9s %9s %9s%n", "stage (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = latencies.get(stage);
+            if (histogram.getCount() > 0) {
+                out.printf("%-10s %10d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", stage.name().toLowerCase(), histogram.getCount(),
+                        histogram.getMean() / 1e3, histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(90) / 1e3,
+                        histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+            }
+        }
+    }
+
+    /**
+     * JFR event of one withdrawal in a transfer, with the time that tryWithdraw took.
+     */
+    @Name("bank.Withdraw")
+    @Label("Withdraw")
+    @Category("Banking")
+    @Description("Withdrawal of the sender of a transfer")
+    public static final class WithdrawEvent extends Event {
+        @Label("Account")
+        String accountID;
+        @Label("Amount in cents")
+        long amount;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    /**
+     * JFR event of one deposit in a transfer, with the time that deposit took.
+     */
+    @Name("bank.Deposit")
+    @Label("Deposit")
+    @Category("Banking")
+    @Description("Deposit to the receiver of a transfer")
+    public static final class DepositEvent extends Event {
+        @Label("Account")
+        String accountID;
+        @Label("Amount in cents")
+        long amount;
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saves and restores the whole state of the banking system (accounts, balances and transaction histories) in a compact binary file.
+ * A restart can restore the snapshot instead of reading accounts.txt and replaying all old transaction files,
+ * and new transaction files can then be applied on top of it.
+ * <p>
+ * Format (all numbers big endian, written with DataOutputStream):
+ * magic "BNKS", version, the sequence of the last journal record in the snapshot, the transaction ID mode (see
+ * TransactionIdGenerator.mode(), a restore continues in that mode so the stored IDs print right), the AccountIndex names used by the histories, the number of accounts and then every account:
+ * type, ID, balance in cents, the fields of its type and its transaction history.
+ */
+public final class BankSnapshot {
+    private static final int MAGIC = 0x424E4B53; // "BNKS"
+    private static final int VERSION = 4; // Version 1 had no journal sequence, version 2 no sequence numbers and timestamps in the histories,
+                                          // version 3 no transaction ID mode.
+    private static final String OLD_ID_MODE = "sequence"; // The default ID mode when the snapshots before version 4 were written.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte CURRENT = 1; // Type tags of the accounts.
+    private static final byte SAVING = 2;
+    private static final byte DEPOSIT = 3;
+
+    private BankSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the accounts. The snapshot is written to a temporary file first and then moved over the
+     * target, so an old snapshot is never left half written.
+     * @param file     The snapshot file.
+     * @param accounts All accounts of the system.
+     * @throws IOException If the file can not be written.
+     */
+    public static void write(Path file, Map<String, BankAccountTypeInterface> accounts) throws IOException {
+        write(file, accounts, 0);
+    }
+
+    /**
+     * Writes a snapshot that is a checkpoint of a TransferJournal.
+     * After a restart only the journal records after journalSequence are replayed on top of it.
+     * @param file            The snapshot file.
+     * @param accounts        All accounts of the system.
+     * @param journalSequence Sequence of the last journal record whose transfer is in the accounts.
+     * @throws IOException If the file can not be written.
+     */
+    public static void write(Path file, Map<String, BankAccountTypeInterface> accounts, long journalSequence) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+            writeTo(out, accounts, journalSequence);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a snapshot into a stream, so it can be a part of a bigger file (see InterestAccrualEngine checkpoints).
+     * @param out             The stream.
+     * @param accounts        All accounts of the system.
+     * @param journalSequence Sequence of the last journal record whose transfer is in the accounts.
+     * @throws IOException If the stream can not be written.
+     */
+    static void writeTo(DataOutputStream out, Map<String, BankAccountTypeInterface> accounts, long journalSequence) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(journalSequence);
+        out.writeUTF(TransactionHistory.getIdGenerator().mode());
+
+        int names = AccountIndex.size();
+        out.writeInt(names);
+        for (int i = 0; i < names; i++) {
+            out.writeUTF(AccountIndex.idOf(i));
+        }
+
+        out.writeInt(accounts.size());
+        for (BankAccountTypeInterface account : accounts.values()) {
+            writeAccount(out, account);
+            account.getTransactionHistory().writeSnapshot(out);
+        }
+    }
+
+    /**
+     * Restores the accounts from a snapshot.
+     * @param file The snapshot file.
+     * @return All accounts, keyed by account ID.
+     * @throws IOException If the file can not be read or it is not a snapshot.
+     */
+    public static Map<String, BankAccountTypeInterface> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            return readFrom(in, file);
+        }
+    }
+
+    /**
+     * Reads a snapshot that is written by writeTo from a stream.
+     * @param in     The stream.
+     * @param source The file of the stream, for the error messages.
+     * @return All accounts, keyed by account ID.
+     * @throws IOException If the stream can not be read or it is not a snapshot.
+     */
+    static Map<String, BankAccountTypeInterface> readFrom(DataInputStream in, Path source) throws IOException {
+        int version = readVersion(in, source);
+        if (version > 1) {
+            in.readLong(); // journal sequence
+        }
+        // the stored IDs are only printed right by the generator that made them, so the snapshot chooses the mode
+        String idMode = version >= 4 ? in.readUTF() : OLD_ID_MODE;
+        if (!idMode.equals(TransactionHistory.getIdGenerator().mode())) {
+            TransactionHistory.setIdGenerator(TransactionIdGenerator.of(idMode));
+            System.err.println("Transaction IDs continue in the " + idMode + " mode of the snapshot " + source);
+        }
+
+        // the index numbers of this program can be different from the ones in the snapshot
+        int[] indexMapping = new int[in.readInt()];
+        for (int i = 0; i < indexMapping.length; i++) {
+            indexMapping[i] = AccountIndex.indexOf(in.readUTF());
+        }
+
+        int count = in.readInt();
+        Map<String, BankAccountTypeInterface> accounts = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+        for (int i = 0; i < count; i++) {
+            BankAccountTypeInterface account = readAccount(in);
+            account.getTransactionHistory().readSnapshot(in, indexMapping, version >= 3);
+            accounts.put(account.getAccountID(), account);
+        }
+        return accounts;
+    }
+
+    /**
+     * Returns the journal sequence that is stored in a snapshot, without reading the accounts.
+     * @param file The snapshot file.
+     * @return Sequence of the last journal record in the snapshot, 0 if it was not written as a checkpoint.
+     * @throws IOException If the file can not be read or it is not a snapshot.
+     */
+    public static long readJournalSequence(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return readVersion(in, file) == 1 ? 0 : in.readLong();
+        }
+    }
+
+    /**
+     * Checks the magic and returns the version, the journal sequence follows it from version 2.
+     */
+    private static int readVersion(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot file: " + file);
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " in " + file);
+        }
+        return version;
+    }
+
+    private static void writeAccount(DataOutputStream out, BankAccountTypeInterface account) throws IOException {
+        if (account instanceof CurrentAccount) {
+            CurrentAccount current = (CurrentAccount) account;
+            out.writeByte(CURRENT);
+            out.writeUTF(current.getAccountID());
+            out.writeLong(current.getBalance().getMinorUnits());
+            out.writeLong(current.getOverdraftLimit().getMinorUnits());
+        } else if (account instanceof SavingAccount) {
+            SavingAccount saving = (SavingAccount) account;
+            out.writeByte(SAVING);
+            out.writeUTF(saving.getAccountID());
+            out.writeLong(saving.getBalance().getMinorUnits());
+            out.writeDouble(saving.getInterestRate());
+            out.writeLong(saving.getMinBalance().getMinorUnits());
+        } else if (account instanceof FixedDepositAccount) {
+            FixedDepositAccount deposit = (FixedDepositAccount) account;
+            out.writeByte(DEPOSIT);
+            out.writeUTF(deposit.getAccountID());
+            out.writeLong(deposit.getBalance().getMinorUnits());
+            out.writeDouble(deposit.getInterestRate());
+            out.writeInt(deposit.getTermInMonths());
+            out.writeDouble(deposit.getPenaltyRate());
+            out.writeUTF(deposit.getStartDate());
+        } else {
+            throw new IOException("Unknown account class: " + account.getClass().getName());
+        }
+    }
+
+    private static BankAccountTypeInterface readAccount(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        String accountID = in.readUTF();
+        Money balance = Money.ofMinorUnits(in.readLong());
+        switch (type) {
+            case CURRENT:
+                return new CurrentAccount(accountID, balance, Money.ofMinorUnits(in.readLong()));
+            case SAVING:
+                double interestRate = in.readDouble();
+                return new SavingAccount(accountID, balance, interestRate, Money.ofMinorUnits(in.readLong()));
+            case DEPOSIT:
+                double depositInterestRate = in.readDouble();
+                int termInMonths = in.readInt();
+                double penaltyRate = in.readDouble();
+                return new FixedDepositAccount(accountID, balance, depositInterestRate, termInMonths, penaltyRate, in.readUTF());
+            default:
+                throw new IOException("Unknown account type in snapshot: " + type);
+        }
+    }
+}
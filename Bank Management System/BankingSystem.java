@@ -1,8 +1,22 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * BankingSystem class for simulating the banking system.
@@ -12,36 +26,528 @@ public class BankingSystem {
     /**
      * Entry point for the banking system simulation.
      * @param args Command-line arguments(accounts file and transaction file)
+     *             Optional: --stream spill_dir [batch_size] writes the transaction histories to spill files while processing.
+     *             Optional: --archive archive_dir [keep_last] keeps the last transactions of every account in memory and compresses the older ones into archive files.
+     *             Optional: --threads n processes the transfers on n threads.
+     *             Optional: --interest run_id [checkpoint] pays the interest of the Saving and Fixed Deposit accounts after the transactions.
+     *             With a checkpoint file an interrupted run is resumed, and a finished run is not paid again.
+     *             Optional: --today yyyy-MM-dd runs with a fixed date, so the maturity and risk results do not depend on the real date.
+     *             Optional: --ids mode chooses the transaction IDs (uuid by default, sequence, thread or snowflake).
+     *             Optional: --mmap reads the input files with MappedInputLoader and prints the rows per second to the error stream.
+     *             Optional: --restore file loads the accounts from a snapshot instead of the accounts file.
+     *             Optional: --snapshot file saves a snapshot after the transactions are processed.
+     *             Optional: --high-risk lists the High Risk accounts after the report, from the tiers that RiskEngine keeps during the transfers.
+     *             Optional: --high-value lists the high value accounts and --top n lists the n highest balances, from AccountSecondaryIndexes.
+     *             Optional: --report file writes the account details to a file instead of the console.
+     *             Optional: --report-threads n renders the account details on n threads.
+     *             Optional: --journal dir [group_size] [checkpoint_every] journals every transfer before it is applied and recovers from the journal after a crash.
+     *             A checkpoint is written every checkpoint_every transfers (100000 by default). It can not be combined with --threads, --waves, --pipeline or --multi.
+     *             Optional: --pipeline [parse_threads] processes the transactions with TransactionPipeline (parse, validate and apply stages on their own threads).
+     *             Optional: --hot id,id,... combines the deposits into these accounts with --threads (see HotAccountCombiner).
+     *             Optional: --multi [threads] treats transactions_file as a directory or a glob and processes the files with MultiFileIngester.
+     *             Optional: --waves [threads] processes the transfers in parallel waves with WaveTransferScheduler, with exactly the output of the sequential run.
+     *             Optional: --metrics [file] records the transfers, the rejections and the stage latencies with BankMetrics and prints them at the end (to the error stream without a file).
+     *             Optional: --as-of id point prints the balance of an account after an event sequence number or at an ISO-8601 instant, with LedgerQueries.
+     *             Optional: --statement id [page_size] [after_sequence] prints one page of the statement of an account, with LedgerQueries.
+     *             Optional: --serve port answers account, risk, high value and statement queries over HTTP (LedgerHttpServer) during and after the run,
+     *             It sets the system property sun.net.httpserver.nodelay=true (unless it is given), so the answers are not delayed by TCP.
+     *             MaturityScheduler flips the Fixed Deposit accounts to Matured when their maturity date comes while it is up.
+     *             Optional: --compact keeps the accounts in an AccountStore (columns instead of one object per account).
      */
     public static void main(String[] args) {
       // checking for how many command line argument have entered
         if (args.length < 2) {
-            System.out.println("Usage: java Main <accounts_file> <transactions_file>");
+            System.out.println("Usage: java Main <accounts_file> <transactions_file> [--stream <spill_dir> [batch_size]] [--archive <archive_dir> [keep_last]] [--threads <n>] [--ids <mode>] [--mmap] [--restore <snapshot>] [--snapshot <snapshot>] [--journal <dir> [group_size] [checkpoint_every]] [--report <file>] [--report-threads <n>] [--high-risk] [--high-value] [--top <n>] [--today <yyyy-MM-dd>] [--interest <run_id> [checkpoint]] [--compact] [--pipeline [parse_threads]] [--hot <id,id,...>] [--multi [threads]] [--waves [threads]] [--metrics [file]] [--as-of <id> <sequence|instant>] [--statement <id> [page_size] [after_sequence]] [--serve <port>]");
             return;
         }
 
         String accountsFile = args[0];// accounts file taken for first command line argument
         String transactionsFile = args[1];// transactions file taken for second command line argument
+        String spillDirectory = null; // streaming mode is off unless --stream is given
+        int spillBatchSize = 64;
+        String archiveDirectory = null; // all transactions stay in memory unless --archive is given
+        int archiveKeepLast = 1024;
+        int threadCount = 1; // transfers are processed on one thread unless --threads is given
+        boolean useMappedFiles = false; // files are read with BufferedReader unless --mmap is given
+        String restoreFile = null; // snapshot to start from instead of the accounts file
+        String snapshotFile = null; // snapshot to write after the transactions
+        String journalDirectory = null; // transfers are not journaled unless --journal is given
+        int groupCommitSize = 256;
+        long checkpointInterval = 100000; // journaled transfers between two checkpoints
+        String reportFile = null; // account details are printed to the console unless --report is given
+        int reportThreads = 1;
+        boolean listHighRisk = false; // High Risk accounts are listed after the report if --high-risk is given
+        boolean listHighValue = false; // high value accounts are listed after the report if --high-value is given
+        int topCount = 0; // number of accounts listed by --top
+        String interestRunId = null; // no interest is paid unless --interest is given
+        String interestCheckpointFile = null;
+        boolean compactStore = false; // accounts are objects in a HashMap unless --compact is given
+        int pipelineThreads = 0; // transactions are not pipelined unless --pipeline is given
+        int multiFileThreads = 0; // transactions_file is one file unless --multi is given
+        int waveThreads = 0; // transfers are not scheduled in waves unless --waves is given
+        List<String> hotAccountIDs = Collections.emptyList(); // accounts whose deposits are combined with --threads
+        boolean recordMetrics = false; // no metrics are recorded unless --metrics is given
+        String metricsFile = null; // the metrics go to the error stream unless a file is given
+        String asOfAccountID = null; // no balance as of an earlier point is printed unless --as-of is given
+        String asOfPoint = null; // event sequence number or ISO-8601 instant
+        String statementAccountID = null; // no statement is printed unless --statement is given
+        int statementPageSize = LedgerQueries.DEFAULT_PAGE_SIZE;
+        long statementAfterSequence = 0;
+        int servePort = -1; // no HTTP server is started unless --serve is given
 
-        Map<String, BankAccountTypeInterface> accounts = new HashMap<>();
+        // optional arguments after the two files
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stream":
+                    spillDirectory = args[++i];
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        spillBatchSize = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "--archive":
+                    archiveDirectory = args[++i];
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        archiveKeepLast = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "--threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--mmap":
+                    useMappedFiles = true;
+                    break;
+                case "--restore":
+                    restoreFile = args[++i];
+                    break;
+                case "--snapshot":
+                    snapshotFile = args[++i];
+                    break;
+                case "--journal":
+                    journalDirectory = args[++i];
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        groupCommitSize = Integer.parseInt(args[++i]);
+                    }
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        checkpointInterval = Long.parseLong(args[++i]);
+                    }
+                    break;
+                case "--high-risk":
+                    listHighRisk = true;
+                    break;
+                case "--high-value":
+                    listHighValue = true;
+                    break;
+                case "--top":
+                    topCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--report":
+                    reportFile = args[++i];
+                    break;
+                case "--report-threads":
+                    reportThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--interest":
+                    interestRunId = args[++i];
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        interestCheckpointFile = args[++i];
+                    }
+                    break;
+                case "--pipeline":
+                    pipelineThreads = 2;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        pipelineThreads = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "--hot":
+                    hotAccountIDs = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--multi":
+                    multiFileThreads = Runtime.getRuntime().availableProcessors();
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        multiFileThreads = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "--waves":
+                    waveThreads = Runtime.getRuntime().availableProcessors();
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        waveThreads = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                case "--metrics":
+                    recordMetrics = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        metricsFile = args[++i];
+                    }
+                    break;
+                case "--compact":
+                    compactStore = true;
+                    break;
+                case "--today":
+                    // the dates of the run (maturity, risk) are computed for this day instead of the real date
+                    ZoneId zone = ZoneId.systemDefault();
+                    BankClock.set(Clock.fixed(LocalDate.parse(args[++i]).atStartOfDay(zone).toInstant(), zone));
+                    break;
+                case "--ids":
+                    TransactionHistory.setIdGenerator(TransactionIdGenerator.of(args[++i]));
+                    break;
+                case "--serve":
+                    servePort = Integer.parseInt(args[++i]);
+                    break;
+                case "--as-of":
+                    asOfAccountID = args[++i];
+                    asOfPoint = args[++i];
+                    break;
+                case "--statement":
+                    statementAccountID = args[++i];
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        statementPageSize = Integer.parseInt(args[++i]);
+                    }
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        statementAfterSequence = Long.parseLong(args[++i]);
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        if (journalDirectory != null && (threadCount > 1 || waveThreads > 0 || pipelineThreads > 0 || multiFileThreads > 0)) {
+            // the journal is written in file order and replayed on one thread
+            System.out.println("--journal can not be used with --threads, --waves, --pipeline or --multi.");
+            return;
+        }
+        if (journalDirectory != null && (groupCommitSize <= 0 || checkpointInterval <= 0)) {
+            System.out.println("The group size and the checkpoint interval of --journal must be positive.");
+            return;
+        }
+
+        if (spillDirectory != null) {
+            try {
+                TransactionHistory.enableSpilling(Paths.get(spillDirectory), spillBatchSize);
+            } catch (IOException e) {
+                System.out.println("Error creating spill directory: " + e.getMessage());
+                return;
+            }
+        }
+        if (archiveDirectory != null) {
+            if (spillDirectory != null) {
+                System.out.println("--stream and --archive can not be used together.");
+                return;
+            }
+            try {
+                TransactionHistory.enableArchiving(Paths.get(archiveDirectory), archiveKeepLast);
+            } catch (IOException e) {
+                System.out.println("Error creating archive directory: " + e.getMessage());
+                return;
+            }
+        }
+
+        // with a journal, the last checkpoint is used instead of the accounts file (or the restored snapshot)
+        TransferJournal journal = null;
+        Path checkpointFile = null;
+        long checkpointSequence = 0;
+        if (journalDirectory != null) {
+            try {
+                Files.createDirectories(Paths.get(journalDirectory));
+                journal = new TransferJournal(Paths.get(journalDirectory, "journal.wal"), groupCommitSize);
+                checkpointFile = Paths.get(journalDirectory, "checkpoint.snap");
+                if (Files.exists(checkpointFile)) {
+                    restoreFile = checkpointFile.toString();
+                    checkpointSequence = BankSnapshot.readJournalSequence(checkpointFile);
+                }
+            } catch (IOException e) {
+                System.out.println("Error opening journal: " + e.getMessage());
+                return;
+            }
+        }
+
+        // an unfinished interest run is resumed from its checkpoint, which already holds the processed transactions
+        InterestAccrualEngine.Checkpoint interestCheckpoint = null;
+        if (interestCheckpointFile != null && Files.exists(Paths.get(interestCheckpointFile))) {
+            try {
+                InterestAccrualEngine.Checkpoint checkpoint = InterestAccrualEngine.readCheckpoint(Paths.get(interestCheckpointFile));
+                if (checkpoint.getRunId().equals(interestRunId)) {
+                    interestCheckpoint = checkpoint;
+                }
+            } catch (IOException e) {
+                System.out.println("Error reading interest checkpoint: " + e.getMessage());
+                return;
+            }
+        }
+
+        Map<String, BankAccountTypeInterface> accounts = compactStore ? new AccountStore().asMap() : new HashMap<>();
+        if (interestCheckpoint != null) {
+            accounts = interestCheckpoint.getAccounts();
+        } else if (restoreFile != null) {
+            try {
+                accounts = BankSnapshot.read(Paths.get(restoreFile));
+            } catch (IOException e) {
+                System.out.println("Error reading snapshot file: " + e.getMessage());
+                return;
+            }
+        }
+        if (compactStore && (interestCheckpoint != null || restoreFile != null)) {
+            // the restored accounts are copied into the columns, in the order of the restored map
+            Map<String, BankAccountTypeInterface> compactAccounts = new AccountStore().asMap();
+            compactAccounts.putAll(accounts);
+            accounts = compactAccounts;
+        }
+        MappedInputLoader mappedLoader = useMappedFiles ? new MappedInputLoader(accounts) : null;
+
+        // Load accounts from the accounts file (the accounts file is not used when a snapshot is restored)
+        if (interestCheckpoint != null || restoreFile != null) {
+            // accounts are already restored
+        } else if (mappedLoader != null) {
+            try {
+                long start = System.nanoTime();
+                long rows = mappedLoader.loadAccounts(Paths.get(accountsFile));
+                reportRowRate("accounts", rows, start);
+            } catch (IOException e) {
+                System.out.println("Error reading accounts file: " + e.getMessage());
+            }
+        } else {
+            loadAccounts(accountsFile, accounts);
+        }
+
+        // the risk tiers are kept up to date during the transfers, so the High Risk accounts are known without a scan
+        RiskEngine riskEngine = null;
+        if (listHighRisk || servePort >= 0) {
+            riskEngine = new RiskEngine();
+            riskEngine.registerAll(accounts.values());
+        }
+        AccountSecondaryIndexes indexes = null;
+        if (listHighValue || topCount > 0 || servePort >= 0) {
+            indexes = new AccountSecondaryIndexes();
+            indexes.registerAll(accounts.values());
+        }
+        AccountChangeListener changeListener = AccountChangeListener.of(riskEngine, indexes);
+        TransferService transferService = new TransferService(1);
+        transferService.setChangeListener(changeListener);
+
+        // the server answers during the run too, it stays up after the report until the program is stopped
+        LedgerHttpServer server = null;
+        if (servePort >= 0) {
+            LedgerHttpServer.useNoDelay(); // sets sun.net.httpserver.nodelay for the process, see --serve
+            server = new LedgerHttpServer(accounts, transferService, riskEngine, indexes);
+            try {
+                server.start(servePort);
+            } catch (IOException e) {
+                System.out.println("Error starting HTTP server: " + e.getMessage());
+                return;
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            System.err.println("Serving on http://127.0.0.1:" + server.getPort() + "/ until the program is stopped");
+        }
+
+        if (recordMetrics) {
+            BankMetrics.enable(); // the rates are measured over the transactions, not the loading of the accounts
+        }
+
+        // Process transactions from the transactions file
+        if (interestCheckpoint != null) {
+            // the transactions were processed before the checkpoint of the interest run
+        } else if (journal != null) {
+            // the journal is written in file order, so the journaled transfers are processed on one thread
+            try {
+                processJournaledTransactions(transactionsFile, accounts, transferService, journal, checkpointSequence, checkpointFile, checkpointInterval);
+                checkpoint(journal, checkpointFile, accounts);
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Error writing journal: " + e.getMessage());
+            }
+        } else if (multiFileThreads > 0) {
+            // files that share no account run in parallel, the statistics go to the error stream like the --mmap rates
+            try {
+                MultiFileIngester ingester = new MultiFileIngester(accounts, multiFileThreads);
+                ingester.getTransferService().setChangeListener(changeListener);
+                if (server != null) {
+                    server.setTransferService(ingester.getTransferService());
+                }
+                ingester.process(MultiFileIngester.resolveFiles(transactionsFile));
+                ingester.report(System.err);
+            } catch (IOException e) {
+                System.out.println("Error reading transactions files: " + e.getMessage());
+            }
+        } else if (pipelineThreads > 0) {
+            try {
+                new TransactionPipeline(accounts, transferService, pipelineThreads).process(Paths.get(transactionsFile));
+            } catch (IOException e) {
+                System.out.println("Error reading transactions file: " + e.getMessage());
+            }
+        } else if (waveThreads > 0) {
+            try {
+                WaveTransferScheduler scheduler = new WaveTransferScheduler(accounts, waveThreads);
+                scheduler.getTransferService().setChangeListener(changeListener);
+                if (server != null) {
+                    server.setTransferService(scheduler.getTransferService());
+                }
+                scheduler.processFile(transactionsFile);
+            } catch (IOException e) {
+                System.out.println("Error reading transactions file: " + e.getMessage());
+            }
+        } else if (threadCount > 1) {
+            try {
+                ParallelTransferExecutor executor = new ParallelTransferExecutor(accounts, threadCount);
+                executor.getTransferService().setChangeListener(changeListener);
+                if (server != null) {
+                    server.setTransferService(executor.getTransferService());
+                }
+                executor.setHotAccounts(hotAccountIDs);
+                executor.processFile(transactionsFile);
+            } catch (IOException e) {
+                System.out.println("Error reading transactions file: " + e.getMessage());
+            }
+        } else if (mappedLoader != null) {
+            try {
+                long start = System.nanoTime();
+                long rows = mappedLoader.processTransactions(Paths.get(transactionsFile), transferService);
+                reportRowRate("transactions", rows, start);
+            } catch (IOException e) {
+                System.out.println("Error reading transactions file: " + e.getMessage());
+            }
+        } else {
+            processTransactions(transactionsFile, accounts, transferService);
+        }
+
+        if (interestRunId != null) {
+            InterestAccrualEngine interestEngine = new InterestAccrualEngine(Math.max(threadCount, Runtime.getRuntime().availableProcessors()),
+                    interestCheckpoint != null ? interestCheckpoint.getShardSize() : InterestAccrualEngine.DEFAULT_SHARD_SIZE, null, changeListener);
+            try {
+                InterestAccrualEngine.Summary summary = interestCheckpointFile == null ? interestEngine.run(accounts)
+                        : interestEngine.run(accounts, interestRunId, Paths.get(interestCheckpointFile), interestCheckpoint != null ? interestCheckpoint.getNextShard() : 0);
+                System.out.println("Interest run " + interestRunId + ": $" + summary.getTotalInterest() + " paid to " + summary.getPaidAccounts() + " accounts");
+            } catch (IOException e) {
+                System.out.println("Error writing interest checkpoint: " + e.getMessage());
+            } finally {
+                interestEngine.shutdown();
+            }
+        }
 
-        // Load accounts from the accounts file
+        if (snapshotFile != null) {
+            try {
+                BankSnapshot.write(Paths.get(snapshotFile), accounts);
+            } catch (IOException e) {
+                System.out.println("Error writing snapshot file: " + e.getMessage());
+            }
+        }
+
+        // Display account details with risk evaluations
+        try (ReportWriter reportWriter = reportFile != null ? ReportWriter.toFile(Paths.get(reportFile)) : ReportWriter.toStandardOutput()) {
+            reportWriter.writeAccountsParallel(accounts.values(), reportThreads);
+        } catch (IOException e) {
+            System.out.println("Error writing report: " + e.getMessage());
+        }
+
+        if (riskEngine != null) {
+            riskEngine.refresh(); // Fixed Deposit tiers can change with the date
+        }
+        if (riskEngine != null && listHighRisk) {
+            List<String> highRisk = new ArrayList<>(riskEngine.accountsIn(RiskTier.HIGH));
+            Collections.sort(highRisk);
+            System.out.println("High Risk accounts (" + highRisk.size() + "): " + String.join(", ", highRisk));
+        }
+        if (indexes != null && listHighValue) {
+            List<String> highValue = new ArrayList<>(indexes.highValueAccounts());
+            Collections.sort(highValue);
+            System.out.println("High value accounts (" + highValue.size() + "): " + String.join(", ", highValue));
+        }
+        if (indexes != null && topCount > 0) {
+            System.out.println("Top " + topCount + " balances:");
+            for (BankAccountTypeInterface account : indexes.topByBalance(topCount)) {
+                System.out.println(account.getAccountID() + ": $" + account.getBalance());
+            }
+        }
+        if (asOfAccountID != null || statementAccountID != null) {
+            printQueries(new LedgerQueries(transferService), accounts, asOfAccountID, asOfPoint, statementAccountID, statementPageSize, statementAfterSequence);
+        }
+        if (recordMetrics) {
+            if (metricsFile == null) {
+                BankMetrics.dump(System.err);
+            } else {
+                try (PrintStream metricsOut = new PrintStream(metricsFile)) {
+                    BankMetrics.dump(metricsOut);
+                } catch (IOException e) {
+                    System.out.println("Error writing metrics file: " + e.getMessage());
+                }
+            }
+        }
+        if (server != null) {
+            // the program stays up, so the Fixed Deposit accounts are flipped to Matured when their maturity date comes
+            MaturityScheduler maturityScheduler = new MaturityScheduler(server.getTransferService().getLocks(), changeListener);
+            maturityScheduler.scheduleAll(accounts.values());
+            ScheduledExecutorService maturityExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "maturity-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maturityScheduler.start(maturityExecutor);
+        }
+    }
+
+    /**
+     * Prints the answers of --as-of and --statement.
+     * @param queries            The queries over the accounts.
+     * @param accounts           All accounts, keyed by account ID.
+     * @param asOfAccountID      Account of --as-of, null if it is not given.
+     * @param asOfPoint          Event sequence number (only digits) or ISO-8601 instant of --as-of.
+     * @param statementAccountID Account of --statement, null if it is not given.
+     * @param pageSize           Most transactions on the statement page.
+     * @param afterSequence      The statement starts after this event sequence number.
+     */
+    private static void printQueries(LedgerQueries queries, Map<String, BankAccountTypeInterface> accounts, String asOfAccountID, String asOfPoint,
+                                     String statementAccountID, int pageSize, long afterSequence) {
+        if (asOfAccountID != null) {
+            BankAccountTypeInterface account = accounts.get(asOfAccountID);
+            if (account == null) {
+                System.out.println("Unknown account: " + asOfAccountID);
+            } else if (asOfPoint.chars().allMatch(Character::isDigit)) {
+                System.out.println("Balance of " + asOfAccountID + " after event " + asOfPoint + ": $"
+                        + queries.balanceAsOfSequence(account, Long.parseLong(asOfPoint)));
+            } else {
+                System.out.println("Balance of " + asOfAccountID + " at " + asOfPoint + ": $" + queries.balanceAsOf(account, Instant.parse(asOfPoint)));
+            }
+        }
+        if (statementAccountID != null) {
+            BankAccountTypeInterface account = accounts.get(statementAccountID);
+            if (account == null) {
+                System.out.println("Unknown account: " + statementAccountID);
+                return;
+            }
+            LedgerQueries.StatementPage page = queries.statement(account, afterSequence, pageSize);
+            System.out.println("Statement of " + statementAccountID + " after event " + afterSequence + ":");
+            for (Transaction t : page.getTransactions()) {
+                System.out.printf("#%d %s %s %s -> %s %s%n", t.getSequence(), Instant.ofEpochMilli(t.getTimestamp()), t.getTransactionId(),
+                        t.getSenderId(), t.getReceiverId(), Money.of(t.getAmount()));
+            }
+            if (page.hasNextPage()) {
+                System.out.println("Next page: --statement " + statementAccountID + " " + pageSize + " " + page.getNextAfterSequence());
+            }
+        }
+    }
+
+    /**
+     * Loads the accounts from the accounts file with a BufferedReader.
+     * @param accountsFile Path of the accounts file.
+     * @param accounts     The map that the accounts are put into.
+     */
+    private static void loadAccounts(String accountsFile, Map<String, BankAccountTypeInterface> accounts) {
         try (BufferedReader br = new BufferedReader(new FileReader(accountsFile))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(",");
                 String accountID = parts[0];
                 String accountType = parts[1];
-                double balance = Double.parseDouble(parts[2]);
+                Money balance = Money.parse(parts[2]);
 
                 switch (accountType) {
                     case "Current":
-                        double overdraftLimit = Double.parseDouble(parts[3]);
+                        Money overdraftLimit = Money.parse(parts[3]);
                         accounts.put(accountID, new CurrentAccount(accountID, balance, overdraftLimit));
                         break;
                     case "Saving":
                         double interestRate = Double.parseDouble(parts[3]);
-                        double minBalance = Double.parseDouble(parts[4]);
+                        Money minBalance = Money.parse(parts[4]);
                         accounts.put(accountID, new SavingAccount(accountID, balance, interestRate, minBalance));
                         break;
                     case "Deposit":
@@ -60,35 +566,111 @@ public class BankingSystem {
         } catch (IOException e) {
             System.out.println("Error reading accounts file: " + e.getMessage());
         }
+    }
 
-        // Process transactions from the transactions file
+    /**
+     * Processes the transactions file line by line on the current thread.
+     * @param transactionsFile Path of the transactions file.
+     * @param accounts         All accounts, keyed by account ID.
+     * @param transferService  The service that applies the transfers.
+     */
+    private static void processTransactions(String transactionsFile, Map<String, BankAccountTypeInterface> accounts, TransferService transferService) {
         try (BufferedReader br = new BufferedReader(new FileReader(transactionsFile))) {
             String line;
             while ((line = br.readLine()) != null) {
+                long start = BankMetrics.startTimer();
                 String[] parts = line.split(",");
                 String senderID = parts[0];
-                double amount = Double.parseDouble(parts[1]);
+                Money amount = Money.parse(parts[1]);
                 String receiverID = parts[2];
+                BankMetrics.recordLatency(BankMetrics.Stage.PARSE, start);
+                applyTransfer(accounts, transferService, senderID, receiverID, amount);
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading transactions file: " + e.getMessage());
+        }
+    }
 
-                BankAccountTypeInterface sender = accounts.get(senderID);
-                BankAccountTypeInterface receiver = accounts.get(receiverID);
+    /**
+     * Replays the journal after the checkpoint and then processes the transactions file with journaling.
+     * Every line is appended to the journal before it is applied. The lines that are already in the journal
+     * (applied before a crash) are skipped, so running the same file again after a crash continues where it stopped.
+     * A checkpoint is written and the journal is emptied after every checkpointInterval lines, so the journal and the
+     * replay after a crash stay short.
+     * @param transactionsFile   Path of the transactions file.
+     * @param accounts           All accounts, keyed by account ID.
+     * @param transferService    The service that applies the transfers.
+     * @param journal            The opened journal.
+     * @param checkpointSequence Sequence of the last journal record that is already in the accounts.
+     * @param checkpointFile     The checkpoint snapshot of the journal.
+     * @param checkpointInterval Journaled lines between two checkpoints.
+     * @throws IOException If the journal or the checkpoint can not be read or written.
+     */
+    private static void processJournaledTransactions(String transactionsFile, Map<String, BankAccountTypeInterface> accounts, TransferService transferService,
+                                                     TransferJournal journal, long checkpointSequence, Path checkpointFile, long checkpointInterval) throws IOException {
+        journal.replay(checkpointSequence, (senderID, receiverID, amount) ->
+                applyTransfer(accounts, transferService, senderID, receiverID, Money.ofMinorUnits(amount)));
 
-                if (sender != null && receiver != null) {
-                    boolean transactionSuccessful = sender.withdraw(receiver, amount);  // Sender withdraws the amount
-                    if (transactionSuccessful) {
-                        receiver.deposit(sender, amount);  // Receiver deposits the amount
-                    }
-                } else {
-                    System.out.println("Invalid transaction: Sender or Receiver not found.");
+        String fileName = Paths.get(transactionsFile).toAbsolutePath().normalize().toString();
+        long skippedLines = journal.lastAppliedLine(fileName);
+        journal.beginFile(fileName);
+        try (BufferedReader br = new BufferedReader(new FileReader(transactionsFile))) {
+            String line;
+            long lineNumber = 0;
+            long sinceCheckpoint = 0;
+            while ((line = br.readLine()) != null) {
+                if (++lineNumber <= skippedLines) {
+                    continue;
+                }
+                long start = BankMetrics.startTimer();
+                String[] parts = line.split(",");
+                Money amount = Money.parse(parts[1]);
+                BankMetrics.recordLatency(BankMetrics.Stage.PARSE, start);
+                start = BankMetrics.startTimer();
+                journal.append(lineNumber, parts[0], parts[2], amount.getMinorUnits());
+                BankMetrics.recordLatency(BankMetrics.Stage.JOURNAL, start);
+                applyTransfer(accounts, transferService, parts[0], parts[2], amount);
+                if (++sinceCheckpoint == checkpointInterval) {
+                    checkpoint(journal, checkpointFile, accounts);
+                    journal.beginFile(fileName); // the records after the reset belong to this file again
+                    sinceCheckpoint = 0;
                 }
             }
         } catch (IOException e) {
             System.out.println("Error reading transactions file: " + e.getMessage());
         }
+    }
 
-        // Display account details with risk evaluations
-        for (BankAccountTypeInterface account : accounts.values()) {
-            account.displayAccountDetails();
+    /**
+     * Writes a checkpoint of all accounts with the last journal sequence and then empties the journal.
+     * The snapshot is moved into place before the journal is cut, so a crash in between only replays nothing.
+     */
+    private static void checkpoint(TransferJournal journal, Path checkpointFile, Map<String, BankAccountTypeInterface> accounts) throws IOException {
+        journal.commit();
+        BankSnapshot.write(checkpointFile, accounts, journal.lastSequence());
+        journal.reset();
+    }
+
+    /**
+     * Applies one transfer, or prints a message if one of the accounts does not exist.
+     */
+    private static void applyTransfer(Map<String, BankAccountTypeInterface> accounts, TransferService transferService, String senderID, String receiverID, Money amount) {
+        BankAccountTypeInterface sender = accounts.get(senderID);
+        BankAccountTypeInterface receiver = accounts.get(receiverID);
+
+        if (sender != null && receiver != null) {
+            transferService.transfer(sender, receiver, amount);  // Sender withdraws and receiver deposits the amount
+        } else {
+            BankMetrics.recordUnknownAccount();
+            System.out.println("Invalid transaction: Sender or Receiver not found.");
         }
     }
+
+    /**
+     * Prints how fast the rows of a file are read to the error stream, so the normal output does not change.
+     */
+    private static void reportRowRate(String fileName, long rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.err.printf("Read %d %s rows in %.3f s (%.0f rows/s)%n", rows, fileName, seconds, rows / Math.max(seconds, 1e-9));
+    }
 }
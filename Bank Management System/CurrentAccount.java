@@ -1,5 +1,4 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.math.RoundingMode;
 
 /**
  * Represents the Current Account in the banking system.
@@ -10,9 +9,9 @@ public class CurrentAccount implements BankAccountTypeInterface{
 
     private final String accountType; //  Type of the account. Always "Current" for this class.
     private final String accountID; //Unique identifier for the account.
-    private double current_balance; //Current balance of the account.
-    private final double overdraft_limit; //Overdraft limit for the account.
-    private List<Transaction> my_transaction_history; //History of transactions associated with this account.
+    private long current_balance; //Current balance of the account in cents.
+    private final long overdraft_limit; //Overdraft limit for the account in cents.
+    private final TransactionHistory my_transaction_history; //History of transactions associated with this account.
 
     /**
      * Constructs a new CurrentAccount with the specified ID, balance, and overdraft limit.
@@ -21,42 +20,67 @@ public class CurrentAccount implements BankAccountTypeInterface{
      * @param current_balance  Initial balance of the account.
      * @param overdraft_limit  Maximum allowable overdraft.
      */
-    public CurrentAccount(String accountID, double current_balance, double overdraft_limit){
+    public CurrentAccount(String accountID, Money current_balance, Money overdraft_limit){
         this.accountID=accountID;
-        this.current_balance=current_balance;
-        this.overdraft_limit=overdraft_limit;
+        this.current_balance=current_balance.getMinorUnits();
+        this.overdraft_limit=overdraft_limit.getMinorUnits();
         this.accountType="Current";
-        this.my_transaction_history=new ArrayList<>();
+        this.my_transaction_history=new TransactionHistory(accountID);
+    }
+
+    /**
+     * Constructs a view whose balance, limit and history are kept in an AccountStore.
+     * The view overrides the state accessors below, the fields of this class are not used.
+     * @param accountID Unique identifier for the account.
+     */
+    CurrentAccount(String accountID){
+        this.accountID=accountID;
+        this.current_balance=0;
+        this.overdraft_limit=0;
+        this.accountType="Current";
+        this.my_transaction_history=null;
+    }
+
+    // State accessors. All methods below read the state through them, so an AccountStore view can keep the state in its columns.
+    long balanceCents(){
+        return this.current_balance;
+    }
+    void setBalanceCents(long cents){
+        this.current_balance=cents;
+    }
+    long overdraftCents(){
+        return this.overdraft_limit;
     }
 
     // I also wrote only the ones that I do use from all possible getter and setter methods.
 
    // explained in the interface that Current account implements
-    public void setCurrentBalance(double current_balance){
-        this.current_balance=current_balance;
+    public void setBalance(Money current_balance){
+        setBalanceCents(current_balance.getMinorUnits());
     }
     // explained in the interface that Current account implements
-    public double getCurrentBalance(){
-        return this.current_balance;
+    public Money getBalance(){
+        return Money.ofMinorUnits(balanceCents());
     }
 
 
 
     /**
      * Deposits the amount into the account.
-     * Creates a transaction record for the deposit and adds it to my_transaction_history list.
+     * Records the deposit in my_transaction_history.
      * @param receiver The account that  receiving the deposit.
      * @param amount   The amount to deposit (must be positive or InvalidAmountException will be thrown and handled.)
      * Note: If the amount is negative, it throws and catches an InvalidAmountException internally.
      */
     @Override
-    public void deposit(BankAccountTypeInterface receiver,double amount) {
+    public void deposit(BankAccountTypeInterface receiver,Money amount) {
+       long cents=amount.getMinorUnits();
        try{
-           if(amount<0){
-               throw new InvalidAmountException("Current Account","Invalid amount for deposit.", amount);
+           if(cents<0){
+               throw new InvalidAmountException("Current Account","Invalid amount for deposit.", Money.toDouble(cents));
            }
-           my_transaction_history.add(new Transaction(receiver.getAccountID(), this.accountID,amount));
-           setCurrentBalance(getCurrentBalance()+amount);
+           getTransactionHistory().add(receiver.getAccountID(), this.accountID,cents);
+           setBalanceCents(balanceCents()+cents);
        }catch (InvalidAmountException e){
            System.out.println(e.getErrorDetails());
        }
@@ -67,77 +91,92 @@ public class CurrentAccount implements BankAccountTypeInterface{
      * Ensures that the withdrawal does not exceed the overdraft limit.
      *
      * @param receiver The account to which the amount is transferred.
-     * @param amount   The amount to withdraw (must be positive or InvalidAmountException will be thrown and handled.).
-     * Note: If the amount is negative, it throws and catches an InvalidAmountException internally.
-     * If the amount exceeds the overdraft limit, it throws and catches an InsufficientFundsException internally.
-     * @return true if the withdrawal is successful otherwise false.
+     * @param amount   The amount to withdraw (must be positive).
+     * @param result   Filled with the details if the withdrawal is rejected.
+     * Note: A negative amount is rejected with INVALID_AMOUNT (the case of InvalidAmountException),
+     * an amount over the overdraft limit with INSUFFICIENT_FUNDS (the case of InsufficientFundsException).
+     * @return ACCEPTED if the withdrawal is successful otherwise the reason of the rejection.
      */
     @Override
-    public boolean withdraw(BankAccountTypeInterface receiver,double amount) {
-        try{
-            if(amount<0){
-                throw new InvalidAmountException("Current Account","Invalid amount for withdraw.", amount);
-            }
-            if(amount>current_balance+overdraft_limit){
-                throw new InsufficientFundsException("Current Account", "Amount exceeds overdraft limit.", current_balance, amount, overdraft_limit);
-            }
-            my_transaction_history.add(new Transaction(this.accountID,receiver.getAccountID(),-amount));
-            setCurrentBalance(getCurrentBalance()-amount);
-
-
-        } catch (InvalidAmountException e) {
-            System.out.println(e.getErrorDetails());
-            return false;
-        }catch (InsufficientFundsException e) {
-            System.out.println(e.getErrorDetails());
-            return false;
+    public WithdrawOutcome tryWithdraw(BankAccountTypeInterface receiver,Money amount,WithdrawResult result) {
+        long cents=amount.getMinorUnits();
+        long balance=balanceCents();
+        long limit=overdraftCents();
+        if(cents<0){
+            return result.rejectInvalidAmount("Current Account","Invalid amount for withdraw.",cents);
+        }
+        if(cents>balance+limit){
+            return result.rejectInsufficientFunds("Current Account", "Amount exceeds overdraft limit.", balance, cents, limit);
         }
-        return true;
+        getTransactionHistory().add(this.accountID,receiver.getAccountID(),-cents);
+        setBalanceCents(balance-cents);
+        return result.accept();
     }
 
     /**
      * Evaluates the risk level of the account based on its balance and overdraft limit usage.
-     * Prints the risk evaluation to the console and called inside  the displayAccountDetails function.
+     * Called inside the appendAccountDetails function.
+     * @return The risk evaluation message.
      */
     @Override
-    public void evaluateRisk() {
+    public String riskEvaluation() {
         String risk;
-        if(current_balance<0 && Math.abs(current_balance)>overdraft_limit*(0.8)){ // If using >80% of overdraft limit.
-            risk="High Risk: Account is both in overdraft and using more than 80 percent of the overdraft.";
+        switch (riskTier()){
+            case HIGH:
+                risk="High Risk: Account is both in overdraft and using more than 80 percent of the overdraft.";
+                break;
+            case LOW:
+                risk="Low Risk: Account is in stable.";
+                break;
+            default:
+                risk=balanceCents()<0 ? "Medium Risk: Account is in overdraft." : "Medium Risk: Current account balance is zero.";
+        }
+        return risk;
+    }
+
+    // explained in the interface that Current account implements
+    @Override
+    public RiskTier riskTier() {
+        return riskTierOf(balanceCents(),overdraftCents());
+    }
+
+    /**
+     * The risk rule of the Current accounts, also used by the column scans of AccountStore.
+     * @param current_balance Balance in cents.
+     * @param overdraft_limit Overdraft limit in cents.
+     * @return The risk tier.
+     */
+    static RiskTier riskTierOf(long current_balance, long overdraft_limit) {
+        if(current_balance<0 && -current_balance*5>overdraft_limit*4){ // If using >80% of overdraft limit.
+            return RiskTier.HIGH;
         }
         else if(current_balance<0){ // If account is in overdraft but <80% used.
-            risk="Medium Risk: Account is in overdraft.";
+            return RiskTier.MEDIUM;
         }
         else if(current_balance>0){ // if account has positive balance
-            risk="Low Risk: Account is in stable.";
+            return RiskTier.LOW;
         }
-        else{ // nothing specified for this situation
-            risk = "Medium Risk: Current account balance is zero.";
-        }
-        System.out.println(risk);
+        return RiskTier.MEDIUM; // nothing specified for this situation
     }
 
     /**
-     * Displays the details of the account, including transaction history,current balance,risk evaluation,account ID and overdraft limit.
-     * This method internally calls `evaluateRisk` to determine the account's risk level.
+     * Appends the details of the account, including transaction history,current balance,risk evaluation,account ID and overdraft limit.
+     * This method internally calls `riskEvaluation` to determine the account's risk level.
      */
     @Override
-    public void displayAccountDetails() {
-        System.out.println("****************** Summary for Account "+this.accountID+" ******************");
-        for (Transaction t: my_transaction_history){
-            System.out.println(t);
-            System.out.println();
-        }
-        System.out.println();
-        System.out.println("Account Info");
-        String message=  this.accountType+" Account - Account Number: "+this.accountID+"\n"+
-                "Balance: $"+this.current_balance+"\n"+
-                "Overdraft Limit: $"+ this.overdraft_limit;
-        System.out.println(message);
-        System.out.println();
-        System.out.println("Account Risk Evaluation");
-        System.out.print(this.accountType+" Account-");evaluateRisk();
-        System.out.println("************************************************************************************************************");
+    public void appendAccountDetails(StringBuilder out) {
+        String newline=ReportWriter.NEWLINE;
+        out.append("****************** Summary for Account ").append(this.accountID).append(" ******************").append(newline);
+        getTransactionHistory().appendReport(out,true);
+        out.append(newline);
+        out.append("Account Info").append(newline);
+        out.append(this.accountType).append(" Account - Account Number: ").append(this.accountID).append("\n")
+                .append("Balance: $").append(Money.toDouble(balanceCents())).append("\n")
+                .append("Overdraft Limit: $").append(Money.toDouble(overdraftCents())).append(newline);
+        out.append(newline);
+        out.append("Account Risk Evaluation").append(newline);
+        out.append(this.accountType).append(" Account-").append(riskEvaluation()).append(newline);
+        out.append("************************************************************************************************************").append(newline);
     }
 
     /**
@@ -148,8 +187,13 @@ public class CurrentAccount implements BankAccountTypeInterface{
      */
     @Override
     public boolean isHighValueAccount() {
+        return isHighValue(balanceCents(),overdraftCents());
+    }
+
+    // the high value rule on the raw columns, used by isHighValueAccount and AccountStore
+    static boolean isHighValue(long current_balance, long overdraft_limit) {
         //If the balance is above 5000 $, and over draft limit is above 1000 $ the account is considered as high value account.
-        return ((current_balance>5000) && (overdraft_limit>1000));
+        return ((current_balance>5000*Money.MINOR_UNITS_PER_UNIT) && (overdraft_limit>1000*Money.MINOR_UNITS_PER_UNIT));
     }
 
     // explained in the interface that Current account implements
@@ -158,13 +202,28 @@ public class CurrentAccount implements BankAccountTypeInterface{
         return this.accountID;
     }
 
+    // explained in the interface that Current account implements
+    @Override
+    public TransactionHistory getTransactionHistory() {
+        return this.my_transaction_history;
+    }
+
+    /**
+     * Retrieves the overdraft limit of the account.
+     * @return The overdraft limit.
+     */
+    public Money getOverdraftLimit() {
+        return Money.ofMinorUnits(overdraftCents());
+    }
+
     /**
      * For Current Accounts, this method always returns 0 as they do not earn any  interest.
      *
+     * @param rounding Not used, there is nothing to round.
      * @return The interest amount, which is always 0 for Current Accounts.
      */
     @Override
-    public double Interest_calculation() {
-        return 0;
+    public Money calculateInterest(RoundingMode rounding) {
+        return Money.ZERO;
     }
 }
@@ -1,5 +1,5 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
@@ -10,15 +10,18 @@ import java.time.temporal.ChronoUnit;
  * It supports deposits, withdrawals with penalties(if withdraw before the maturity date) and risk evaluations.
  */
 public class FixedDepositAccount implements BankAccountTypeInterface{
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd"); // Format of the start and maturity dates.
+
     private final String accountID; // Unique identifier for the account.
     private final String account_type; //Type of the account. Always "Deposit" for this class.
-    private double current_balance; //Current balance of the account.
+    private long current_balance; //Current balance of the account in cents.
     private final double interest_rate; //Interest rate for the account.
     private final int term_in_months; //Term of the account in months.
     private final double penalty_rate;// Penalty rate for early(before maturity date) withdrawals.
     private final String start_date; // Start date of the account.
+    private final LocalDate maturity_date; // Start date plus the term, parsed once in the constructor.
     private String maturity_status; // Maturity status of the account ("Active" or "Matured").
-    private List<Transaction> my_transaction_history; //History of transactions associated with this account.
+    private final TransactionHistory my_transaction_history; //History of transactions associated with this account.
 
     /**
      * Constructs a new FixedDepositAccount with the specified details.
@@ -30,48 +33,73 @@ public class FixedDepositAccount implements BankAccountTypeInterface{
      * @param penalty_rate    Penalty rate for early withdrawals.
      * @param start_date      Start date of the account in "yyyy-MM-dd" format.
      */
-    public FixedDepositAccount(String accountID, double current_balance, double interest_rate ,int term_in_months, double penalty_rate, String start_date){
+    public FixedDepositAccount(String accountID, Money current_balance, double interest_rate ,int term_in_months, double penalty_rate, String start_date){
         this.accountID=accountID;
         this.account_type="Deposit";
-        this.current_balance=current_balance;
+        this.current_balance=current_balance.getMinorUnits();
         this.interest_rate=interest_rate;
         this.term_in_months=term_in_months;
         this.penalty_rate=penalty_rate;
         this.start_date=start_date.trim();
+        this.maturity_date=LocalDate.parse(this.start_date, DATE_FORMATTER).plusMonths(term_in_months);
 
         setMaturity_status();
 
-        my_transaction_history=new ArrayList<>();
+        my_transaction_history=new TransactionHistory(accountID);
+    }
+
+    /**
+     * Constructs a view whose balance, terms, dates and history are kept in an AccountStore.
+     * The view overrides the state accessors and the getters, the fields of this class are not used.
+     * @param accountID Unique identifier for the account.
+     */
+    FixedDepositAccount(String accountID){
+        this.accountID=accountID;
+        this.account_type="Deposit";
+        this.current_balance=0;
+        this.interest_rate=0;
+        this.term_in_months=0;
+        this.penalty_rate=0;
+        this.start_date=null;
+        this.maturity_date=null;
+        this.my_transaction_history=null;
+    }
+
+    // State accessors. All methods below read the state through them or through the getters, so an AccountStore view can keep the state in its columns.
+    long balanceCents(){
+        return this.current_balance;
+    }
+    void setBalanceCents(long cents){
+        this.current_balance=cents;
     }
     /**
-     * Sets the maturity status of the account based on the current date ,term duration and start date.
+     * Sets the maturity status of the account based on the current date of BankClock ,term duration and start date.
      * If the term has ended the status is "Matured" otherwise the status is "Active".
+     * MaturityScheduler calls it again when the maturity date comes.
      */
     public void setMaturity_status(){
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDate startDate = LocalDate.parse(this.start_date.trim(), formatter);
-        LocalDate maturityDate = startDate.plusMonths(this.term_in_months);
-        LocalDate today = LocalDate.now();
+        LocalDate today = BankClock.today();
 
-        this.maturity_status = (today.isBefore(maturityDate)) ? "Active" : "Matured";
+        this.maturity_status = (today.isBefore(this.maturity_date)) ? "Active" : "Matured";
     }
 
     /**
      * Deposits the amount into the account.
-     * Creates a transaction record for the deposit and adds it to the my_transaction_history list.
+     * Records the deposit in my_transaction_history.
      *
      * @param receiver The account that receives the deposit.
      * @param amount   The amount to deposit (must be positive).
      * Note: If the amount is negative, it throws and catches an InvalidAmountException internally.
      */
     @Override
-    public void deposit(BankAccountTypeInterface receiver, double amount) {
+    public void deposit(BankAccountTypeInterface receiver, Money amount) {
+        long cents=amount.getMinorUnits();
         try{
-            if(amount<0){
-                throw  new InvalidAmountException("Fixed Deposit Account","Invalid amount for deposit.", amount);
+            if(cents<0){
+                throw  new InvalidAmountException("Fixed Deposit Account","Invalid amount for deposit.", Money.toDouble(cents));
             }
-            my_transaction_history.add(new Transaction(receiver.getAccountID(), this.accountID,amount));
-            setCurrentBalance(getCurrentBalance()+amount);
+            getTransactionHistory().add(receiver.getAccountID(), this.accountID,cents);
+            setBalanceCents(balanceCents()+cents);
         } catch (InvalidAmountException e) {
             System.out.println(e.getErrorDetails());
         }
@@ -79,101 +107,112 @@ public class FixedDepositAccount implements BankAccountTypeInterface{
     /**
      * Withdraws a specified amount from the account.
      * Applies a penalty for early withdrawal if the account is still active(if the maturity date has not come yet.).
+     * The penalty is rounded to cents with Money.PENALTY_ROUNDING.
      *
      * @param receiver The account to which the amount is transferred.
      * @param amount   The amount to withdraw (must be positive).
-     * @return true if the withdrawal is successful; false otherwise.
-     * Note: If the amount is negative, it throws and catches an InvalidAmountException internally.
-     *       If insufficient funds are available after applying the penalty, it throws and catches a PenaltyException internally.
-     *       If insufficient funds are available for withdrawal without a penalty, it throws and catches an InsufficientFundsException internally.
+     * @param result   Filled with the details if the withdrawal is rejected.
+     * @return ACCEPTED if the withdrawal is successful; otherwise the reason of the rejection.
+     * Note: A negative amount is rejected with INVALID_AMOUNT (the case of InvalidAmountException).
+     *       If insufficient funds are available after applying the penalty, it is rejected with PENALTY (the case of PenaltyException).
+     *       If insufficient funds are available for withdrawal without a penalty, it is rejected with INSUFFICIENT_FUNDS (the case of InsufficientFundsException).
      */
     @Override
-    public boolean withdraw(BankAccountTypeInterface receiver, double amount) {
-        try {
-            if (amount < 0) {
-                throw new InvalidAmountException("Fixed Deposit Account", "Invalid amount for withdraw.", amount);
-            }
+    public WithdrawOutcome tryWithdraw(BankAccountTypeInterface receiver, Money amount, WithdrawResult result) {
+        long cents = amount.getMinorUnits();
+        if (cents < 0) {
+            return result.rejectInvalidAmount("Fixed Deposit Account", "Invalid amount for withdraw.", cents);
+        }
 
-            if ("Active".equals(this.maturity_status)) {
-                double penalty = amount * this.penalty_rate;
-                if (penalty+amount > this.current_balance) {
-                    throw new PenaltyException("Fixed Deposit Account", "Insufficient funds including penalty charges.", penalty, this.current_balance, amount);
-                }
-                this.current_balance -= (amount + penalty);
-                my_transaction_history.add(new Transaction(this.accountID, receiver.getAccountID(), -amount-penalty));
-            } else {
-                if (amount > this.current_balance) {
-                    throw new InsufficientFundsException("Fixed Deposit Account", "Insufficient funds.", this.current_balance, amount, 0); // 0 is for the limit
-                }
-                this.current_balance -= amount;
-                my_transaction_history.add(new Transaction(this.accountID, receiver.getAccountID(), -amount));
+        long balance = balanceCents();
+        if (!isMatured()) {
+            long penalty = Money.multiply(cents, getPenaltyRate(), Money.PENALTY_ROUNDING);
+            if (penalty+cents > balance) {
+                return result.rejectPenalty("Fixed Deposit Account", "Insufficient funds including penalty charges.", penalty, balance, cents);
             }
-        } catch (InvalidAmountException e) {
-            System.out.println(e.getErrorDetails());
-            return false;
-        } catch (PenaltyException e) {
-            System.out.println(e.getErrorDetails());
-            return false;
-        } catch (InsufficientFundsException e) {
-            System.out.println(e.getErrorDetails());
-            return false;
+            setBalanceCents(balance - (cents + penalty));
+            getTransactionHistory().add(this.accountID, receiver.getAccountID(), -cents-penalty);
+        } else {
+            if (cents > balance) {
+                return result.rejectInsufficientFunds("Fixed Deposit Account", "Insufficient funds.", balance, cents, 0); // 0 is for the limit
+            }
+            setBalanceCents(balance - cents);
+            getTransactionHistory().add(this.accountID, receiver.getAccountID(), -cents);
         }
-        return true;
+        return result.accept();
     }
 
-
     /**
      * Evaluates the risk level of the account based on its maturity status and proximity to maturity date.
-     * Prints the risk evaluation to the console  and called inside  the displayAccountDetails function.
+     * Called inside the appendAccountDetails function.
+     * @return The risk evaluation message.
      */
     @Override
-    public void evaluateRisk() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDate startDate = LocalDate.parse(this.start_date, formatter);
-        LocalDate maturityDate = startDate.plusMonths(this.term_in_months);
-        LocalDate today = LocalDate.now();
-
+    public String riskEvaluation() {
         String risk;
-        if ("Matured".equals(this.maturity_status)) {
-            risk = "High Risk: Matured but not withdrawn.";
-        } else {
-            long daysToMaturity = ChronoUnit.DAYS.between(today, maturityDate);
-            if (daysToMaturity <= 30) {
+        switch (riskTier()) {
+            case HIGH:
+                risk = "High Risk: Matured but not withdrawn.";
+                break;
+            case MEDIUM:
                 risk = "Medium Risk: Within 30 days of maturity.";
-            } else {
+                break;
+            default:
                 risk = "Low Risk: Account is in stable.";
-            }
         }
 
-        System.out.println(risk);
+        return risk;
 
     }
+
     /**
-     * Displays the details of the account, including transaction history, balance, interest rate, maturity date and risk evaluation.
-     * This method internally calls `evaluateRisk` to determine the account's risk level.
+     * Returns the risk tier from the maturity status and the days until the cached maturity date.
+     * The tier can change when the date changes, RiskEngine.refresh() evaluates the accounts again.
+     * @return The risk tier.
      */
     @Override
-    public void displayAccountDetails() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        System.out.println("****************** Summary for Account " + this.accountID + " ******************");
-        for (Transaction t : my_transaction_history) {
-            System.out.println(t);
+    public RiskTier riskTier() {
+        return riskTierOf(isMatured(), ChronoUnit.DAYS.between(BankClock.today(), getMaturityDate()));
+    }
+
+    /**
+     * The risk rule of the Fixed Deposit accounts, also used by the column scans of AccountStore.
+     * @param matured         true if the status is "Matured".
+     * @param daysToMaturity  Days from today to the maturity date.
+     * @return The risk tier.
+     */
+    static RiskTier riskTierOf(boolean matured, long daysToMaturity) {
+        if (matured) {
+            return RiskTier.HIGH;
         }
-        System.out.println();
-        System.out.println("Account Info");
+        return daysToMaturity <= 30 ? RiskTier.MEDIUM : RiskTier.LOW;
+    }
+    /**
+     * Appends the details of the account, including transaction history, balance, interest rate, maturity date and risk evaluation.
+     * This method internally calls `riskEvaluation` to determine the account's risk level.
+     */
+    @Override
+    public void appendAccountDetails(StringBuilder out) {
+        String newline = ReportWriter.NEWLINE;
+        out.append("****************** Summary for Account ").append(this.accountID).append(" ******************").append(newline);
+        getTransactionHistory().appendReport(out, false);
+        out.append(newline);
+        out.append("Account Info").append(newline);
 
 
-        LocalDate startDate = LocalDate.parse(this.start_date, formatter);
-        LocalDate maturityDate = startDate.plusMonths(this.term_in_months);
-        String formattedMaturityDate = maturityDate.format(formatter);
+        String formattedMaturityDate = getMaturityDate().format(DATE_FORMATTER);
 
-        System.out.printf("Fixed Deposit Account - Account Number: %s%nBalance: $%.1f%nInterest Rate: %.1f%%%nMaturity Date: %s%nStatus: %s%n",
-                this.accountID, this.current_balance, this.interest_rate * 100, formattedMaturityDate, this.maturity_status);
-        System.out.println();
-        System.out.println("Account Risk Evaluation");
-        System.out.print("Fixed Deposit Account-");
-        evaluateRisk();
-        System.out.println("************************************************************************************************************");
+        out.append("Fixed Deposit Account - Account Number: ").append(this.accountID).append(newline);
+        Money.appendOneDecimal(out.append("Balance: $"), balanceCents()).append(newline);
+        // the rate in percent rounded to tenths like "%.1f", then written as hundredths by appendOneDecimal without a Formatter
+        long ratePercent = BigDecimal.valueOf(getInterestRate() * 100).setScale(1, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        Money.appendOneDecimal(out.append("Interest Rate: "), ratePercent).append('%').append(newline);
+        out.append("Maturity Date: ").append(formattedMaturityDate).append(newline);
+        out.append("Status: ").append(isMatured() ? "Matured" : "Active").append(newline);
+        out.append(newline);
+        out.append("Account Risk Evaluation").append(newline);
+        out.append("Fixed Deposit Account-").append(riskEvaluation()).append(newline);
+        out.append("************************************************************************************************************").append(newline);
     }
 
     /**
@@ -184,16 +223,22 @@ public class FixedDepositAccount implements BankAccountTypeInterface{
      */
     @Override
     public boolean isHighValueAccount() {
-        return this.current_balance >= 50000;
+        return isHighValue(balanceCents());
+    }
+
+    // the high value rule on the raw balance, used by isHighValueAccount and AccountStore
+    static boolean isHighValue(long current_balance) {
+        return current_balance >= 50000L * Money.MINOR_UNITS_PER_UNIT;
     }
 
     /**
      * Calculates the interest for the account based on its balance, interest rate, and term duration.
+     * @param rounding How the interest is rounded to cents.
      * @return The calculated interest amount.
      */
     @Override
-    public double Interest_calculation() {
-        return this.current_balance * this.interest_rate * (this.term_in_months / 12.0);
+    public Money calculateInterest(RoundingMode rounding) {
+        return Money.ofMinorUnits(Money.multiply(balanceCents(), Money.termFactor(getInterestRate(), getTermInMonths()), rounding));
     }
 
 
@@ -203,11 +248,63 @@ public class FixedDepositAccount implements BankAccountTypeInterface{
         return this.accountID;
     }
     @Override
-    public void setCurrentBalance(double currentBalance) {
-this.current_balance=currentBalance;
+    public TransactionHistory getTransactionHistory() {
+        return this.my_transaction_history;
+    }
+
+    /**
+     * Retrieves the interest rate of the account.
+     * @return The interest rate.
+     */
+    public double getInterestRate() {
+        return this.interest_rate;
+    }
+
+    /**
+     * Retrieves the term of the account.
+     * @return The term in months.
+     */
+    public int getTermInMonths() {
+        return this.term_in_months;
+    }
+
+    /**
+     * Retrieves the penalty rate for early withdrawals.
+     * @return The penalty rate.
+     */
+    public double getPenaltyRate() {
+        return this.penalty_rate;
+    }
+
+    /**
+     * Retrieves the start date of the account.
+     * @return The start date in "yyyy-MM-dd" format.
+     */
+    public String getStartDate() {
+        return this.start_date;
+    }
+
+    /**
+     * Checks if the account has matured.
+     * @return true if the status is "Matured".
+     */
+    public boolean isMatured() {
+        return "Matured".equals(this.maturity_status);
+    }
+
+    /**
+     * Retrieves the maturity date (start date plus the term).
+     * @return The maturity date.
+     */
+    public LocalDate getMaturityDate() {
+        return this.maturity_date;
     }
     @Override
-    public double getCurrentBalance() {
-        return this.current_balance;
+    public void setBalance(Money currentBalance) {
+setBalanceCents(currentBalance.getMinorUnits());
+    }
+    @Override
+    public Money getBalance() {
+        return Money.ofMinorUnits(balanceCents());
     }
 }
@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures transfers per second when most transfers go to a few hot accounts, with TransferService locking the hot
+ * accounts for every transfer and with their deposits combined by HotAccountCombiner.
+ * Some transfers also withdraw from the hot accounts, so the folds before the withdrawals are measured too.
+ * Both runs must end with the same balances, which is checked.
+ * Usage: java HotAccountBenchmark [accounts] [transfers] [max_threads] [hot_accounts] [hot_share]
+ */
+public class HotAccountBenchmark {
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of accounts, transfers, maximum threads, hot accounts and share of the transfers to a hot account.
+     * @throws Exception If a worker thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transferCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int hotCount = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        double hotShare = args.length > 4 ? Double.parseDouble(args[4]) : 0.8;
+
+        Random random = new Random(42);
+        int[] senders = new int[transferCount];
+        int[] receivers = new int[transferCount];
+        for (int i = 0; i < transferCount; i++) {
+            senders[i] = random.nextInt(accountCount);
+            receivers[i] = random.nextDouble() < hotShare ? random.nextInt(hotCount) : random.nextInt(accountCount);
+        }
+
+        // warm up once so the JIT compiles both paths before the measured runs
+        run(TransferBenchmark.createAccounts(accountCount), senders, receivers, 1, 0);
+        run(TransferBenchmark.createAccounts(accountCount), senders, receivers, 1, hotCount);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            BankAccountTypeInterface[] locked = TransferBenchmark.createAccounts(accountCount);
+            double lockedSeconds = run(locked, senders, receivers, threads, 0);
+            BankAccountTypeInterface[] combined = TransferBenchmark.createAccounts(accountCount);
+            double combinedSeconds = run(combined, senders, receivers, threads, hotCount);
+            for (int i = 0; i < accountCount; i++) {
+                if (!locked[i].getBalance().equals(combined[i].getBalance())) {
+                    throw new IllegalStateException("Different balance of " + locked[i].getAccountID() + ": "
+                            + locked[i].getBalance() + " and " + combined[i].getBalance());
+                }
+            }
+            System.out.printf("threads=%-2d locked %,.0f transfers/s, combined %,.0f transfers/s%n", threads,
+                    transferCount / lockedSeconds, transferCount / combinedSeconds);
+        }
+    }
+
+    /**
+     * Runs the transfers through a TransferService with the first hotCount accounts hot, every thread takes an equal slice.
+     * @return Elapsed time in seconds, including the last fold.
+     */
+    private static double run(BankAccountTypeInterface[] accounts, int[] senders, int[] receivers, int threads, int hotCount) throws Exception {
+        TransferService service = new TransferService(threads * 16);
+        service.setHotAccounts(Arrays.asList(accounts).subList(0, hotCount));
+        Money amount = Money.ofMinorUnits(100);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            int slice = (senders.length + threads - 1) / threads;
+            for (int t = 0; t < threads; t++) {
+                int from = t * slice;
+                int to = Math.min(senders.length, from + slice);
+                futures.add(pool.submit(() -> {
+                    for (int i = from; i < to; i++) {
+                        service.transfer(accounts[senders[i]], accounts[receivers[i]], amount);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            service.foldAll();
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
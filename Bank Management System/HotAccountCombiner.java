@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the deposits into a few hot accounts (like clearing accounts that receive most of the transfers) so the
+ * transfers to them do not all wait for the lock of the same account.
+ * <p>
+ * Every hot account has a few cells, like the cells of a LongAdder. A transfer to a hot account only locks the sender,
+ * withdraws from it and adds the deposit (sender, amount and time) and its amount to the sum of the cell of its thread.
+ * The cells are folded into the account while the lock of the account is held: when a cell is full, before every
+ * withdrawal from the account and before its balance is read. A fold appends one history row per deposit with the
+ * time of the transfer, in time order over the cells, and changes the balance once by the sum of the cells.
+ * So a withdrawal from a hot account sees every deposit that was made before it, and its limit check is exact.
+ * Deposits only add money, so the order of folding does not change the balances.
+ * <p>
+ * A cell has two sets of columns: the transfers fill one while a fold reads the other, so a fold does not block the
+ * cell and nothing is allocated once the columns are big enough.
+ * <p>
+ * TransferService creates the combiner in setHotAccounts() and does the locking; the methods of this class that
+ * change an account must be called while the lock of that account is held.
+ */
+public class HotAccountCombiner {
+    public static final int DEFAULT_CELL_COUNT = 16;
+    public static final int DEFAULT_FOLD_THRESHOLD = 1024; // Deposits in a cell before the cell asks for a fold.
+
+    private final Map<String, HotAccount> hot_accounts = new HashMap<>(); // Hot account ID to its cells. Not changed after the constructor.
+    private final int cell_mask; // Number of cells - 1, the number of cells is a power of two.
+    private final int fold_threshold;
+    private final LongAdder combined_deposits = new LongAdder(); // Deposits that went through a cell.
+    private final LongAdder folds = new LongAdder(); // Folds that moved at least one deposit.
+
+    /**
+     * The pending deposits of one thread (or of a few threads that share the cell) into one hot account.
+     */
+    private static final class Cell {
+        private String[] senders = new String[16]; // IDs of the senders of the pending deposits.
+        private long[] amounts = new long[16]; // Amounts in cents.
+        private long[] times = new long[16]; // Epoch milliseconds of the transfers.
+        private int count; // Pending deposits.
+        private long sum; // Sum of the pending amounts in cents.
+
+        // The deposits of the last drain, only read by the fold that holds the lock of the account.
+        private String[] drained_senders = new String[16];
+        private long[] drained_amounts = new long[16];
+        private long[] drained_times = new long[16];
+        private int drained_count;
+
+        /**
+         * Adds a deposit and returns the number of deposits in the cell.
+         */
+        synchronized int add(String senderID, long amount) {
+            if (count == amounts.length) {
+                senders = Arrays.copyOf(senders, count * 2);
+                amounts = Arrays.copyOf(amounts, count * 2);
+                times = Arrays.copyOf(times, count * 2);
+            }
+            senders[count] = senderID;
+            amounts[count] = amount;
+            times[count] = BankClock.get().millis(); // taken under the lock, so the times of a cell are in order
+            sum += amount;
+            return ++count;
+        }
+
+        /**
+         * Swaps the pending deposits into the drained columns, empties the cell and returns the drained sum.
+         */
+        synchronized long drain() {
+            String[] swapSenders = drained_senders;
+            long[] swapAmounts = drained_amounts;
+            long[] swapTimes = drained_times;
+            drained_senders = senders;
+            drained_amounts = amounts;
+            drained_times = times;
+            drained_count = count;
+            senders = swapSenders;
+            amounts = swapAmounts;
+            times = swapTimes;
+            count = 0;
+            long drained = sum;
+            sum = 0;
+            return drained;
+        }
+
+        synchronized long pendingCents() {
+            return sum;
+        }
+    }
+
+    /**
+     * A hot account and its cells.
+     */
+    private static final class HotAccount {
+        final BankAccountTypeInterface account;
+        final Cell[] cells;
+        final int[] fold_positions; // Next drained row of every cell while a fold merges them, guarded by the account lock.
+
+        HotAccount(BankAccountTypeInterface account, int cellCount) {
+            this.account = account;
+            this.cells = new Cell[cellCount];
+            this.fold_positions = new int[cellCount];
+            for (int i = 0; i < cellCount; i++) {
+                cells[i] = new Cell();
+            }
+        }
+    }
+
+    /**
+     * Constructs a combiner for the given accounts.
+     * @param hotAccounts   The hot accounts.
+     * @param cellCount     Minimum number of cells of every hot account, rounded up to a power of two.
+     * @param foldThreshold Deposits in a cell before the cell asks for a fold.
+     */
+    public HotAccountCombiner(Collection<BankAccountTypeInterface> hotAccounts, int cellCount, int foldThreshold) {
+        if (cellCount <= 0 || foldThreshold <= 0) {
+            throw new IllegalArgumentException("Cell count and fold threshold must be positive: " + cellCount + ", " + foldThreshold);
+        }
+        int size = Integer.highestOneBit(Math.max(1, cellCount - 1)) << 1;
+        for (BankAccountTypeInterface account : hotAccounts) {
+            hot_accounts.put(account.getAccountID(), new HotAccount(account, size));
+        }
+        this.cell_mask = size - 1;
+        this.fold_threshold = foldThreshold;
+    }
+
+    /**
+     * Checks if the deposits into an account are combined.
+     * @param account The account.
+     * @return true for a hot account.
+     */
+    public boolean isHot(BankAccountTypeInterface account) {
+        return hot_accounts.containsKey(account.getAccountID());
+    }
+
+    /**
+     * Returns the hot accounts.
+     * @return The hot accounts, in no order.
+     */
+    public List<BankAccountTypeInterface> hotAccounts() {
+        List<BankAccountTypeInterface> accounts = new ArrayList<>(hot_accounts.size());
+        for (HotAccount hot : hot_accounts.values()) {
+            accounts.add(hot.account);
+        }
+        return accounts;
+    }
+
+    /**
+     * Adds a deposit into a hot account to the cell of the current thread. The lock of the account is not needed.
+     * @param receiver The hot account.
+     * @param sender   The account that sent the money.
+     * @param amount   The amount in cents.
+     * @return true if the cell is full and the account should be folded.
+     */
+    public boolean add(BankAccountTypeInterface receiver, BankAccountTypeInterface sender, long amount) {
+        HotAccount hot = hot_accounts.get(receiver.getAccountID());
+        combined_deposits.increment();
+        return hot.cells[cellOfCurrentThread()].add(sender.getAccountID(), amount) >= fold_threshold;
+    }
+
+    /**
+     * Moves the pending deposits of an account into its history, one row per deposit in time order, and adds their sum
+     * to its balance. The lock of the account must be held.
+     * @param account The account, nothing happens if it is not hot.
+     * @return Number of folded deposits.
+     */
+    public int fold(BankAccountTypeInterface account) {
+        HotAccount hot = hot_accounts.get(account.getAccountID());
+        if (hot == null) {
+            return 0;
+        }
+        Cell[] cells = hot.cells;
+        long sum = 0;
+        int folded = 0;
+        for (Cell cell : cells) {
+            sum += cell.drain();
+            folded += cell.drained_count;
+        }
+        if (folded == 0) {
+            return 0;
+        }
+
+        // the rows of every cell are in time order, the cells are merged by always taking the earliest next row
+        TransactionHistory history = hot.account.getTransactionHistory();
+        String accountID = hot.account.getAccountID();
+        int[] positions = hot.fold_positions;
+        Arrays.fill(positions, 0);
+        for (int n = 0; n < folded; n++) {
+            int next = -1;
+            for (int c = 0; c < cells.length; c++) {
+                if (positions[c] < cells[c].drained_count
+                        && (next < 0 || cells[c].drained_times[positions[c]] < cells[next].drained_times[positions[next]])) {
+                    next = c;
+                }
+            }
+            Cell cell = cells[next];
+            int row = positions[next]++;
+            history.add(cell.drained_senders[row], accountID, cell.drained_amounts[row], cell.drained_times[row]);
+        }
+        hot.account.setBalance(Money.ofMinorUnits(hot.account.getBalance().getMinorUnits() + sum));
+        folds.increment();
+        return folded;
+    }
+
+    /**
+     * Sums the deposits of an account that are not folded yet, like LongAdder.sum() it is not a snapshot.
+     * @param account The account.
+     * @return The pending amount in cents, 0 if the account is not hot.
+     */
+    public long pendingCents(BankAccountTypeInterface account) {
+        HotAccount hot = hot_accounts.get(account.getAccountID());
+        long total = 0;
+        if (hot != null) {
+            for (Cell cell : hot.cells) {
+                total += cell.pendingCents();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of deposits that went through a cell.
+     * @return The count.
+     */
+    public long getCombinedDeposits() {
+        return combined_deposits.sum();
+    }
+
+    /**
+     * Returns the number of folds that moved at least one deposit.
+     * @return The count.
+     */
+    public long getFolds() {
+        return folds.sum();
+    }
+
+    /**
+     * Picks the cell of the current thread from its ID, mixed so neighbouring IDs use different cells.
+     */
+    private int cellOfCurrentThread() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & cell_mask;
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.Random;
+
+/**
+ * Measures transfers per second with every transaction ID generator.
+ * The transfers go through TransferService on the given number of threads, so the contention on the ID generator is visible.
+ * Usage: java IdGeneratorBenchmark [accounts] [transfers] [threads]
+ */
+public class IdGeneratorBenchmark {
+    private static final String[] MODES = {"uuid", "sequence", "thread", "snowflake"};
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of accounts, number of transfers and number of threads.
+     * @throws Exception If a worker thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transferCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(42);
+        int[] senders = new int[transferCount];
+        int[] receivers = new int[transferCount];
+        for (int i = 0; i < transferCount; i++) {
+            senders[i] = random.nextInt(accountCount);
+            receivers[i] = random.nextInt(accountCount);
+        }
+
+        for (String mode : MODES) {
+            TransactionHistory.setIdGenerator(TransactionIdGenerator.of(mode));
+            // first run is the warm up
+            TransferBenchmark.runTransferService(TransferBenchmark.createAccounts(accountCount), senders, receivers, threads);
+            double seconds = TransferBenchmark.runTransferService(TransferBenchmark.createAccounts(accountCount), senders, receivers, threads);
+            System.out.printf("%-9s threads=%-2d %,.0f transfers/s%n", mode, threads, transferCount / seconds);
+        }
+    }
+}
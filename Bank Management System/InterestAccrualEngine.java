@@ -0,0 +1,310 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Interest run over all Saving and Fixed Deposit accounts at the end of a month.
+ * A run pays one month of interest to both types: rate / 12 of the balance, rounded with Money.INTEREST_ROUNDING.
+ * The rates are yearly, so calculateInterest() (a year of a Saving account, the whole term of a Fixed Deposit) is not
+ * used here, it would be paid again in every run. The interest is posted as a deposit from the pseudo account "INTEREST", so it is in the transaction history like any transfer.
+ * Accounts whose interest is zero or negative get nothing.
+ * <p>
+ * The accounts are sorted by ID and cut into shards of a fixed size. The shards are processed with fork-join on a
+ * ForkJoinPool. Every account is in exactly one shard, so the shards do not share any account.
+ * With a checkpoint file, the run is done in groups of shards and after every group a checkpoint is written:
+ * the run ID, the next shard and a BankSnapshot of all accounts, in one file that is moved into place atomically.
+ * A stopped run is resumed by restoring the checkpoint and running again from its next shard, so no account is paid twice.
+ */
+public class InterestAccrualEngine {
+    public static final String INTEREST_ACCOUNT_ID = "INTEREST"; // Sender of the interest transactions.
+    public static final int DEFAULT_SHARD_SIZE = 4096;
+    private static final int CHECKPOINT_MAGIC = 0x494E5443; // "INTC"
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int SHARDS_PER_CHECKPOINT = 256; // Shards processed between two checkpoints.
+
+    private final ForkJoinPool pool;
+    private final int shard_size; // Accounts in one shard.
+    private final AccountLockStripes locks; // Locks of the accounts, null if no transfer runs at the same time.
+    private final AccountChangeListener change_listener; // Told about every paid account, null if none.
+    private final BankAccountTypeInterface interest_source = new CurrentAccount(INTEREST_ACCOUNT_ID, Money.ZERO, Money.ZERO);
+
+    /**
+     * Totals of an interest run.
+     */
+    public static final class Summary {
+        private long paid_accounts; // Accounts that got interest.
+        private long total_interest; // Sum of the interest in cents.
+
+        private Summary add(Summary other) {
+            paid_accounts += other.paid_accounts;
+            total_interest += other.total_interest;
+            return this;
+        }
+
+        public long getPaidAccounts() {
+            return paid_accounts;
+        }
+
+        public Money getTotalInterest() {
+            return Money.ofMinorUnits(total_interest);
+        }
+    }
+
+    /**
+     * A restored checkpoint of a stopped run.
+     */
+    public static final class Checkpoint {
+        private final String run_id;
+        private final int next_shard;
+        private final int shard_size;
+        private final Map<String, BankAccountTypeInterface> accounts;
+
+        private Checkpoint(String runId, int nextShard, int shardSize, Map<String, BankAccountTypeInterface> accounts) {
+            this.run_id = runId;
+            this.next_shard = nextShard;
+            this.shard_size = shardSize;
+            this.accounts = accounts;
+        }
+
+        public String getRunId() {
+            return run_id;
+        }
+
+        /**
+         * Returns the first shard that is not paid yet. It is the number of shards when the run is finished.
+         * @return The next shard.
+         */
+        public int getNextShard() {
+            return next_shard;
+        }
+
+        public int getShardSize() {
+            return shard_size;
+        }
+
+        /**
+         * Returns the accounts as they were when the checkpoint was written.
+         * @return All accounts, keyed by account ID.
+         */
+        public Map<String, BankAccountTypeInterface> getAccounts() {
+            return accounts;
+        }
+    }
+
+    /**
+     * Constructs an engine.
+     * @param parallelism    Number of threads.
+     * @param shardSize      Accounts in one shard. A resumed run must use the shard size of its checkpoint.
+     * @param locks          Lock stripes of the accounts (the ones of TransferService), or null.
+     * @param changeListener Listener of the paid accounts, or null.
+     */
+    public InterestAccrualEngine(int parallelism, int shardSize, AccountLockStripes locks, AccountChangeListener changeListener) {
+        if (shardSize <= 0) {
+            throw new IllegalArgumentException("Shard size must be positive: " + shardSize);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.shard_size = shardSize;
+        this.locks = locks;
+        this.change_listener = changeListener;
+    }
+
+    /**
+     * Returns the Saving and Fixed Deposit accounts sorted by ID, the order that the shards are cut from.
+     * @param accounts All accounts.
+     * @return The interest bearing accounts.
+     */
+    public static BankAccountTypeInterface[] interestBearing(Collection<? extends BankAccountTypeInterface> accounts) {
+        List<BankAccountTypeInterface> result = new ArrayList<>();
+        for (BankAccountTypeInterface account : accounts) {
+            if (account instanceof SavingAccount || account instanceof FixedDepositAccount) {
+                result.add(account);
+            }
+        }
+        result.sort(Comparator.comparing(BankAccountTypeInterface::getAccountID));
+        return result.toArray(new BankAccountTypeInterface[0]);
+    }
+
+    /**
+     * Pays the interest of all accounts without checkpoints.
+     * @param accounts All accounts.
+     * @return Totals of the run.
+     */
+    public Summary run(Map<String, BankAccountTypeInterface> accounts) {
+        return accrue(interestBearing(accounts.values()), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Pays the interest from a shard on and writes a checkpoint after every group of shards and at the end.
+     * @param accounts       All accounts (all of them are in the checkpoints).
+     * @param runId          Name of the run, like "2025-01".
+     * @param checkpointFile The checkpoint file.
+     * @param firstShard     0 for a new run, or getNextShard() of the restored checkpoint.
+     * @return Totals of the shards that are paid by this call.
+     * @throws IOException If a checkpoint can not be written.
+     */
+    public Summary run(Map<String, BankAccountTypeInterface> accounts, String runId, Path checkpointFile, int firstShard) throws IOException {
+        BankAccountTypeInterface[] ordered = interestBearing(accounts.values());
+        int shardCount = shardCount(ordered.length);
+        Summary summary = new Summary();
+        for (int from = firstShard; from < shardCount; from += SHARDS_PER_CHECKPOINT) {
+            int to = Math.min(shardCount, from + SHARDS_PER_CHECKPOINT);
+            summary.add(accrue(ordered, from, to));
+            writeCheckpoint(checkpointFile, runId, to, accounts);
+        }
+        if (firstShard >= shardCount) {
+            writeCheckpoint(checkpointFile, runId, shardCount, accounts); // nothing left, the run is finished
+        }
+        return summary;
+    }
+
+    /**
+     * Pays the interest of the shards from fromShard (included) to toShard (excluded) with fork-join.
+     * @param ordered   Accounts returned by interestBearing().
+     * @param fromShard First shard.
+     * @param toShard   End of the shards, it is cut to the number of shards.
+     * @return Totals of the shards.
+     */
+    public Summary accrue(BankAccountTypeInterface[] ordered, int fromShard, int toShard) {
+        int end = Math.min(toShard, shardCount(ordered.length));
+        if (fromShard >= end) {
+            return new Summary();
+        }
+        return pool.invoke(new ShardTask(this, ordered, fromShard, end));
+    }
+
+    /**
+     * Reads a checkpoint.
+     * @param file The checkpoint file.
+     * @return The checkpoint.
+     * @throws IOException If the file can not be read or it is not a checkpoint.
+     */
+    public static Checkpoint readCheckpoint(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not an interest checkpoint file: " + file);
+            }
+            int version = in.readInt();
+            if (version != CHECKPOINT_VERSION) {
+                throw new IOException("Unsupported interest checkpoint version " + version + " in " + file);
+            }
+            String runId = in.readUTF();
+            int nextShard = in.readInt();
+            int shardSize = in.readInt();
+            return new Checkpoint(runId, nextShard, shardSize, BankSnapshot.readFrom(in, file));
+        }
+    }
+
+    /**
+     * Stops the threads of the engine.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private int shardCount(int accountCount) {
+        return (int) ((accountCount + (long) shard_size - 1) / shard_size);
+    }
+
+    private void writeCheckpoint(Path file, String runId, int nextShard, Map<String, BankAccountTypeInterface> accounts) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeUTF(runId);
+            out.writeInt(nextShard);
+            out.writeInt(shard_size);
+            BankSnapshot.writeTo(out, accounts, 0);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Pays the interest of one account.
+     * @return The paid interest in cents, 0 if nothing is paid.
+     */
+    private long pay(BankAccountTypeInterface account) {
+        String accountID = account.getAccountID();
+        if (locks != null) {
+            locks.lock(accountID);
+        }
+        try {
+            Money interest = interestOfOneRun(account);
+            if (interest.getMinorUnits() <= 0) {
+                return 0;
+            }
+            account.deposit(interest_source, interest);
+            if (change_listener != null) {
+                change_listener.accountChanged(account);
+            }
+            return interest.getMinorUnits();
+        } finally {
+            if (locks != null) {
+                locks.unlock(accountID);
+            }
+        }
+    }
+
+    /**
+     * Returns the interest that one run pays to an account: one month of its yearly rate.
+     * @param account A Saving or Fixed Deposit account.
+     * @return The interest, rounded with Money.INTEREST_ROUNDING.
+     */
+    static Money interestOfOneRun(BankAccountTypeInterface account) {
+        double rate = account instanceof FixedDepositAccount ? ((FixedDepositAccount) account).getInterestRate()
+                : ((SavingAccount) account).getInterestRate();
+        return Money.ofMinorUnits(Money.multiply(account.getBalance().getMinorUnits(), Money.termFactor(rate, 1), Money.INTEREST_ROUNDING));
+    }
+
+    /**
+     * Splits a range of shards in half until one shard is left, and pays the accounts of that shard.
+     */
+    private static final class ShardTask extends RecursiveTask<Summary> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient InterestAccrualEngine engine;
+        private final transient BankAccountTypeInterface[] ordered;
+        private final int from_shard;
+        private final int to_shard;
+
+        ShardTask(InterestAccrualEngine engine, BankAccountTypeInterface[] ordered, int fromShard, int toShard) {
+            this.engine = engine;
+            this.ordered = ordered;
+            this.from_shard = fromShard;
+            this.to_shard = toShard;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to_shard - from_shard > 1) {
+                int middle = (from_shard + to_shard) >>> 1;
+                ShardTask left = new ShardTask(engine, ordered, from_shard, middle);
+                left.fork();
+                Summary right = new ShardTask(engine, ordered, middle, to_shard).compute();
+                return right.add(left.join());
+            }
+            Summary summary = new Summary();
+            int shardSize = engine.shard_size;
+            int end = (int) Math.min(ordered.length, (long) (from_shard + 1) * shardSize);
+            for (int i = from_shard * shardSize; i < end; i++) {
+                long interest = engine.pay(ordered[i]);
+                if (interest != 0) {
+                    summary.paid_accounts++;
+                    summary.total_interest += interest;
+                }
+            }
+            return summary;
+        }
+    }
+}
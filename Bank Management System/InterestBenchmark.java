@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the month-end interest run with InterestAccrualEngine on 1 to n threads.
+ * Half of the accounts are Saving accounts and half are Fixed Deposit accounts, every run starts from fresh accounts.
+ * 10 million accounts need a big heap (about 8 GB, -Xmx8g), smaller runs can pass a smaller number.
+ * Usage: java InterestBenchmark [accounts] [max_threads] [shard_size]
+ */
+public class InterestBenchmark {
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of accounts, maximum number of threads and shard size.
+     */
+    public static void main(String[] args) {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int shardSize = args.length > 2 ? Integer.parseInt(args[2]) : InterestAccrualEngine.DEFAULT_SHARD_SIZE;
+
+        // warm up once so the JIT compiles the interest path before the measured runs
+        run(Math.min(accountCount, 100_000), 1, shardSize, false);
+
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+        for (int threads : threadCounts) {
+            run(accountCount, threads, shardSize, true);
+        }
+    }
+
+    /**
+     * Creates the accounts and pays their interest once, printing the result if print is true.
+     */
+    private static void run(int accountCount, int threads, int shardSize, boolean print) {
+        BankAccountTypeInterface[] ordered = InterestAccrualEngine.interestBearing(createAccounts(accountCount));
+        InterestAccrualEngine engine = new InterestAccrualEngine(threads, shardSize, null, null);
+        try {
+            long start = System.nanoTime();
+            InterestAccrualEngine.Summary summary = engine.accrue(ordered, 0, Integer.MAX_VALUE);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (print) {
+                System.out.printf("threads=%-2d %,.0f accounts/s ($%s paid to %,d accounts)%n", threads, accountCount / seconds,
+                        summary.getTotalInterest(), summary.getPaidAccounts());
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Creates Saving and Fixed Deposit accounts with different balances.
+     */
+    private static List<BankAccountTypeInterface> createAccounts(int count) {
+        List<BankAccountTypeInterface> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Money balance = Money.ofMinorUnits(100_000 + (i % 1000) * 1_000L);
+            if (i % 2 == 0) {
+                accounts.add(new SavingAccount("SAV" + i, balance, 0.05, Money.ZERO));
+            } else {
+                accounts.add(new FixedDepositAccount("DEP" + i, balance, 0.04, 12, 0.1, "2024-01-01"));
+            }
+        }
+        return accounts;
+    }
+}
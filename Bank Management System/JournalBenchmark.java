@@ -0,0 +1,63 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Measures journaled transfers per second with different group commit sizes.
+ * Every transfer is appended to a TransferJournal and then applied with TransferService on one thread.
+ * A group size of 1 forces the journal after every transfer, bigger groups share one force between more transfers.
+ * Usage: java JournalBenchmark [accounts] [transfers] [journal_dir]
+ */
+public class JournalBenchmark {
+    private static final int[] GROUP_SIZES = {1, 8, 64, 512, 4096};
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of accounts, number of transfers and the directory of the journal files.
+     * @throws Exception If the journal can not be written.
+     */
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transferCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        Path directory = args.length > 2 ? Path.of(args[2]) : Files.createTempDirectory("journal-benchmark");
+        Files.createDirectories(directory);
+
+        Random random = new Random(42);
+        int[] senders = new int[transferCount];
+        int[] receivers = new int[transferCount];
+        for (int i = 0; i < transferCount; i++) {
+            senders[i] = random.nextInt(accountCount);
+            receivers[i] = random.nextInt(accountCount);
+        }
+
+        for (int groupSize : GROUP_SIZES) {
+            Path file = directory.resolve("benchmark-" + groupSize + ".wal");
+            Files.deleteIfExists(file);
+            // a force per transfer is very slow, so group size 1 only runs a part of the transfers
+            int count = groupSize == 1 ? Math.min(transferCount, 2_000) : transferCount;
+            double seconds = run(TransferBenchmark.createAccounts(accountCount), senders, receivers, count, file, groupSize);
+            System.out.printf("group=%-5d %,.0f transfers/s (%d transfers)%n", groupSize, count / seconds, count);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Journals and applies the first count transfers.
+     * @return Elapsed time in seconds.
+     */
+    private static double run(BankAccountTypeInterface[] accounts, int[] senders, int[] receivers, int count, Path file, int groupSize) throws Exception {
+        TransferService transferService = new TransferService(1);
+        Money amount = Money.ofMinorUnits(100);
+        long start = System.nanoTime();
+        try (TransferJournal journal = new TransferJournal(file, groupSize)) {
+            journal.beginFile("benchmark");
+            for (int i = 0; i < count; i++) {
+                BankAccountTypeInterface sender = accounts[senders[i]];
+                BankAccountTypeInterface receiver = accounts[receivers[i]];
+                journal.append(i + 1, sender.getAccountID(), receiver.getAccountID(), amount.getMinorUnits());
+                transferService.transfer(sender, receiver, amount);
+            }
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
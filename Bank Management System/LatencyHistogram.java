@@ -0,0 +1,105 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in nanoseconds in log-linear buckets, in the same way as HdrHistogram.
+ * Values under 128 have their own bucket. Bigger values are split by their highest bit and every power of two has
+ * 64 buckets, so a percentile is at most 1/64 (about 1.6%) higher than the real value. The buckets are a fixed
+ * array, so recording a value does not create any object, and several threads can record at the same time.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7; // Values under 2^7 are exact.
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2; // Buckets for every power of two above SUB_BUCKET_COUNT.
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF; // Long.MAX_VALUE has shift 56
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT); // Number of values in every bucket.
+    private final LongAdder total_count = new LongAdder();
+    private final LongAdder total_nanos = new LongAdder(); // Sum of the values, for the mean.
+    private final AtomicLong max_nanos = new AtomicLong();
+
+    /**
+     * Records one latency.
+     * @param nanos The latency in nanoseconds. Negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        total_count.increment();
+        total_nanos.add(value);
+        if (value > max_nanos.get()) {
+            max_nanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return The count.
+     */
+    public long getCount() {
+        return total_count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * @return The mean in nanoseconds, 0 if nothing is recorded.
+     */
+    public double getMean() {
+        long count = total_count.sum();
+        return count == 0 ? 0 : (double) total_nanos.sum() / count;
+    }
+
+    /**
+     * Returns the biggest recorded value.
+     * @return The maximum in nanoseconds.
+     */
+    public long getMax() {
+        return max_nanos.get();
+    }
+
+    /**
+     * Returns the value that the given percentage of the recorded values are lower than or equal to.
+     * Like HdrHistogram, the highest value of the bucket is returned, but never more than the maximum.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value in nanoseconds, 0 if nothing is recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = total_count.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(bucket), getMax());
+            }
+        }
+        return getMax(); // values recorded while counting
+    }
+
+    /**
+     * Finds the bucket of a value that is not negative.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1); // value >>> shift is in [64, 128)
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * Returns the highest value that falls into a bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long top = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((top + 1) << shift) - 1; // the last bucket wraps around to Long.MAX_VALUE
+    }
+}
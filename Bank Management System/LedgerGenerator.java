@@ -0,0 +1,362 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic accounts file and transactions files in the formats of inputs/accounts.txt and inputs/transactions1.txt,
+ * for load tests at any scale.
+ * <p>
+ * The output only depends on the options and the seed, so the same command always writes the same files. Nothing is
+ * kept in memory: the type and the ID of account i are computed from i, and every line is written as soon as it is made,
+ * so millions of accounts and billions of rows only need disk space.
+ * <p>
+ * Skew options:
+ * hot accounts receive the given share of the transfers (as sender or receiver), the reject ratio is the share of rows
+ * that are made to be rejected (negative amount, an amount over any balance or an unknown account; normal rows can
+ * still be rejected when a balance runs out), and the matured ratio is the share of Fixed Deposit accounts whose term
+ * has ended on the "today" date. Replays should use the same date with --today.
+ * Usage: java LedgerGenerator out_dir [--accounts n] [--rows n] [--files n] [--seed n] [--hot n share] [--reject-ratio r]
+ *        [--matured-ratio r] [--mix current,saving,deposit] [--today yyyy-MM-dd]
+ */
+public class LedgerGenerator {
+    private static final long MAX_BALANCE = 10_000_000; // Balances are between $1,000.00 and $100,000.00 (in cents).
+    private static final long MIN_BALANCE = 100_000;
+    private static final long HUGE_AMOUNT = 100_000_000_000L; // $1,000,000,000.00, over every balance and limit.
+
+    private final long seed; // Seed of all random choices.
+    private final int account_count;
+    private final long row_count;
+    private int file_count = 1; // The rows are split into transactions1.txt ... transactionsN.txt.
+    private int hot_count; // Accounts 0 .. hot_count-1 are the hot accounts.
+    private double hot_share; // Share of the transfers that touch a hot account.
+    private double reject_ratio; // Share of the rows that are made to be rejected.
+    private double matured_ratio = 0.5; // Share of the Fixed Deposit accounts that are matured on today.
+    private int current_percent = 40; // Percent of Current accounts.
+    private int saving_percent = 40; // Percent of Saving accounts, the rest are Fixed Deposit accounts.
+    private LocalDate today = LocalDate.of(2025, 1, 1); // Date that the matured accounts are matured on.
+
+    /**
+     * Constructs a generator with no skew: every account is used equally and only the normal rejections happen.
+     * @param seed         Seed of the random choices.
+     * @param accountCount Number of accounts.
+     * @param rowCount     Number of transfer rows in all files.
+     */
+    public LedgerGenerator(long seed, int accountCount, long rowCount) {
+        if (accountCount < 2 || rowCount < 0) {
+            throw new IllegalArgumentException("Need at least 2 accounts and no negative row count: " + accountCount + ", " + rowCount);
+        }
+        this.seed = seed;
+        this.account_count = accountCount;
+        this.row_count = rowCount;
+    }
+
+    /**
+     * Splits the rows into several transactions files of almost the same size.
+     * @param fileCount Number of files.
+     */
+    public void setFileCount(int fileCount) {
+        if (fileCount <= 0) {
+            throw new IllegalArgumentException("File count must be positive: " + fileCount);
+        }
+        this.file_count = fileCount;
+    }
+
+    /**
+     * Makes some accounts hot.
+     * @param hotCount Number of hot accounts.
+     * @param hotShare Share of the transfers (0 to 1) whose sender or receiver is a hot account.
+     */
+    public void setHotAccounts(int hotCount, double hotShare) {
+        if (hotCount < 0 || hotCount > account_count || hotShare < 0 || hotShare > 1) {
+            throw new IllegalArgumentException("Wrong hot accounts: " + hotCount + ", " + hotShare);
+        }
+        this.hot_count = hotCount;
+        this.hot_share = hotCount == 0 ? 0 : hotShare;
+    }
+
+    /**
+     * Sets the share of the rows that are made to be rejected.
+     * @param rejectRatio Share from 0 to 1.
+     */
+    public void setRejectRatio(double rejectRatio) {
+        if (rejectRatio < 0 || rejectRatio > 1) {
+            throw new IllegalArgumentException("Reject ratio must be between 0 and 1: " + rejectRatio);
+        }
+        this.reject_ratio = rejectRatio;
+    }
+
+    /**
+     * Sets the share of the Fixed Deposit accounts that are matured on today.
+     * @param maturedRatio Share from 0 to 1.
+     */
+    public void setMaturedRatio(double maturedRatio) {
+        if (maturedRatio < 0 || maturedRatio > 1) {
+            throw new IllegalArgumentException("Matured ratio must be between 0 and 1: " + maturedRatio);
+        }
+        this.matured_ratio = maturedRatio;
+    }
+
+    /**
+     * Sets the percentages of the account types.
+     * @param currentPercent Percent of Current accounts.
+     * @param savingPercent  Percent of Saving accounts. The rest up to 100 are Fixed Deposit accounts.
+     */
+    public void setMix(int currentPercent, int savingPercent) {
+        if (currentPercent < 0 || savingPercent < 0 || currentPercent + savingPercent > 100) {
+            throw new IllegalArgumentException("Wrong account mix: " + currentPercent + ", " + savingPercent);
+        }
+        this.current_percent = currentPercent;
+        this.saving_percent = savingPercent;
+    }
+
+    /**
+     * Sets the date that decides which Fixed Deposit accounts are matured.
+     * @param today The date of the replay.
+     */
+    public void setToday(LocalDate today) {
+        this.today = today;
+    }
+
+    /**
+     * Writes accounts.txt and the transactions files into a directory.
+     * @param directory The output directory, created if it does not exist.
+     * @return The written transactions files, in order.
+     * @throws IOException If a file can not be written.
+     */
+    public Path[] generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        writeAccounts(directory.resolve("accounts.txt"));
+        Path[] files = new Path[file_count];
+        SplittableRandom random = new SplittableRandom(seed);
+        long written = 0;
+        for (int file = 0; file < file_count; file++) {
+            files[file] = directory.resolve(file_count == 1 ? "transactions.txt" : "transactions" + (file + 1) + ".txt");
+            long rows = row_count * (file + 1) / file_count - written;
+            writeTransactions(files[file], rows, random);
+            written += rows;
+        }
+        return files;
+    }
+
+    /**
+     * Writes one line per account. The random choices of account i only depend on the seed and i.
+     */
+    private void writeAccounts(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0; i < account_count; i++) {
+                SplittableRandom random = new SplittableRandom(mix(seed, i));
+                line.setLength(0);
+                line.append(accountID(i)).append(',');
+                long balance = MIN_BALANCE + random.nextLong(MAX_BALANCE - MIN_BALANCE);
+                switch (typeOf(i)) {
+                    case 'C':
+                        line.append("Current,");
+                        appendDollars(line, balance).append(',');
+                        appendDollars(line, 10_000 * (1 + random.nextInt(50))); // overdraft limit $100 to $5,000
+                        break;
+                    case 'S':
+                        line.append("Saving,");
+                        appendDollars(line, balance).append(',');
+                        line.append(rate(random, 1, 8)).append(',');
+                        appendDollars(line, 10_000 * random.nextInt(20)); // minimum balance $0 to $1,900
+                        break;
+                    default:
+                        int term = 1 + random.nextInt(60);
+                        LocalDate start = random.nextDouble() < matured_ratio
+                                ? today.minusMonths(term + random.nextInt(24)) // ended before today
+                                : today.minusMonths(random.nextInt(term)).plusDays(1); // ends after today
+                        line.append("Deposit,");
+                        appendDollars(line, balance).append(',');
+                        line.append(rate(random, 1, 8)).append(',').append(term).append(',');
+                        line.append(rate(random, 5, 40)).append(',').append(start);
+                }
+                out.append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes rows transfer lines: senderID,amount,receiverID.
+     */
+    private void writeTransactions(Path file, long rows, SplittableRandom random) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(48);
+            for (long row = 0; row < rows; row++) {
+                int sender = pickAccount(random);
+                int receiver = pickAccount(random);
+                if (receiver == sender) {
+                    receiver = (receiver + 1) % account_count;
+                }
+                long amount = 100 + random.nextLong(50_000); // $1.00 to $500.99
+                String senderID = accountID(sender);
+                String receiverID = accountID(receiver);
+                if (random.nextDouble() < reject_ratio) {
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            amount = -amount;
+                            break;
+                        case 1:
+                            amount = HUGE_AMOUNT;
+                            break;
+                        default:
+                            receiverID = "NONE" + receiver;
+                    }
+                }
+                line.setLength(0);
+                line.append(senderID).append(',');
+                appendDollars(line, amount).append(',').append(receiverID);
+                out.append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Picks a hot account with the hot share, otherwise any account.
+     */
+    private int pickAccount(SplittableRandom random) {
+        if (hot_count > 0 && random.nextDouble() < hot_share / 2) { // sender and receiver are picked separately
+            return random.nextInt(hot_count);
+        }
+        return random.nextInt(account_count);
+    }
+
+    /**
+     * Returns the type of account i: 'C' for Current, 'S' for Saving and 'D' for Fixed Deposit.
+     */
+    private char typeOf(int i) {
+        int percent = (int) Long.remainderUnsigned(mix(seed ^ 0x5DEECE66DL, i), 100);
+        return percent < current_percent ? 'C' : percent < current_percent + saving_percent ? 'S' : 'D';
+    }
+
+    /**
+     * Returns the ID of account i, with the prefix of its type like the example inputs.
+     */
+    private String accountID(int i) {
+        switch (typeOf(i)) {
+            case 'C':
+                return "CUR" + i;
+            case 'S':
+                return "SAV" + i;
+            default:
+                return "DEP" + i;
+        }
+    }
+
+    /**
+     * Returns a rate between low and high percent, like 0.05.
+     */
+    private static String rate(SplittableRandom random, int low, int high) {
+        int percent = low + random.nextInt(high - low + 1);
+        return percent < 10 ? "0.0" + percent : "0." + percent;
+    }
+
+    /**
+     * Appends cents as dollars with two decimals, like 1234.05.
+     */
+    private static StringBuilder appendDollars(StringBuilder line, long cents) {
+        if (cents < 0) {
+            line.append('-');
+            cents = -cents;
+        }
+        line.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            line.append('0');
+        }
+        return line.append(fraction);
+    }
+
+    /**
+     * Mixes the seed and a number into a well spread 64-bit value (the finalizer of SplitMix64).
+     */
+    private static long mix(long seed, long value) {
+        long z = seed + value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Entry point of the generator.
+     * @param args The output directory and the options.
+     * @throws IOException If a file can not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java LedgerGenerator <out_dir> [--accounts <n>] [--rows <n>] [--files <n>] [--seed <n>] [--hot <n> <share>] "
+                    + "[--reject-ratio <r>] [--matured-ratio <r>] [--mix <current>,<saving>,<deposit>] [--today <yyyy-MM-dd>]");
+            return;
+        }
+        int accountCount = 10_000;
+        long rowCount = 100_000;
+        long seed = 42;
+        int fileCount = 1;
+        int hotCount = 0;
+        double hotShare = 0;
+        double rejectRatio = 0;
+        double maturedRatio = 0.5;
+        int currentPercent = 40;
+        int savingPercent = 40;
+        LocalDate today = LocalDate.of(2025, 1, 1);
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--accounts":
+                    accountCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--rows":
+                    rowCount = Long.parseLong(args[++i]);
+                    break;
+                case "--files":
+                    fileCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--hot":
+                    hotCount = Integer.parseInt(args[++i]);
+                    hotShare = Double.parseDouble(args[++i]);
+                    break;
+                case "--reject-ratio":
+                    rejectRatio = Double.parseDouble(args[++i]);
+                    break;
+                case "--matured-ratio":
+                    maturedRatio = Double.parseDouble(args[++i]);
+                    break;
+                case "--mix":
+                    String[] percents = args[++i].split(",");
+                    currentPercent = Integer.parseInt(percents[0]);
+                    savingPercent = Integer.parseInt(percents[1]);
+                    if (percents.length > 2 && currentPercent + savingPercent + Integer.parseInt(percents[2]) != 100) {
+                        System.out.println("The account mix must add up to 100: " + args[i]);
+                        return;
+                    }
+                    break;
+                case "--today":
+                    today = LocalDate.parse(args[++i]);
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        LedgerGenerator generator = new LedgerGenerator(seed, accountCount, rowCount);
+        generator.setFileCount(fileCount);
+        generator.setHotAccounts(hotCount, hotShare);
+        generator.setRejectRatio(rejectRatio);
+        generator.setMaturedRatio(maturedRatio);
+        generator.setMix(currentPercent, savingPercent);
+        generator.setToday(today);
+        long start = System.nanoTime();
+        Path[] files = generator.generate(Paths.get(args[0]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %d accounts and %d rows in %d files in %.3f s, replay with --today %s%n",
+                accountCount, rowCount, files.length, seconds, today);
+    }
+}
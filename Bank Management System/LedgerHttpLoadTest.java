@@ -0,0 +1,143 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local load test of LedgerHttpServer: clients send queries while transfer threads change the accounts.
+ * The queries run once alone and once with the transfers, and the transfers once alone and once with the queries,
+ * so both slowdowns are shown, with the requests per second and the latency percentiles of the queries (from LatencyHistogram).
+ * The queries are 70% account lookups, 10% risk tiers, 15% statement pages and 5% high value listings.
+ * On a machine with few cores the clients, the handlers and the transfer threads share the cores, so compare the
+ * phases with each other and not with a real deployment.
+ * Usage: java LedgerHttpLoadTest [accounts] [seconds] [transfer_threads] [clients]
+ */
+public class LedgerHttpLoadTest {
+
+    /**
+     * Entry point of the load test.
+     * @param args Optional number of accounts, seconds of every phase, transfer threads and client threads.
+     * @throws Exception If a thread fails or the server can not be started.
+     */
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int transferThreads = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        if (transferThreads <= 0 || clients <= 0) {
+            throw new IllegalArgumentException("Transfer threads and clients must be positive.");
+        }
+
+        BankAccountTypeInterface[] accounts = TransferBenchmark.createAccounts(accountCount);
+        Map<String, BankAccountTypeInterface> accountMap = new HashMap<>();
+        for (BankAccountTypeInterface account : accounts) {
+            accountMap.put(account.getAccountID(), account);
+        }
+        RiskEngine riskEngine = new RiskEngine();
+        riskEngine.registerAll(accountMap.values());
+        AccountSecondaryIndexes indexes = new AccountSecondaryIndexes();
+        indexes.registerAll(accountMap.values());
+        TransferService transferService = new TransferService(transferThreads * 16);
+        transferService.setChangeListener(AccountChangeListener.of(riskEngine, indexes));
+
+        LedgerHttpServer.useNoDelay();
+        LedgerHttpServer server = new LedgerHttpServer(accountMap, transferService, riskEngine, indexes);
+        server.start(0);
+        try {
+            // a short run of both phases first, so the JIT compiles the transfers and the handlers
+            runPhase(accounts, transferService, transferThreads, 1, clients, server.getPort(), null);
+            runPhase(accounts, transferService, 0, seconds, clients, server.getPort(), "queries alone");
+            double alone = runPhase(accounts, transferService, transferThreads, seconds, 0, server.getPort(), null);
+            double loaded = runPhase(accounts, transferService, transferThreads, seconds, clients, server.getPort(), "with transfers");
+            System.out.printf("transfers alone %,.0f/s, with %d clients %,.0f/s (%.1f%%)%n", alone, clients, loaded, 100 * loaded / alone);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Runs the transfer threads and the clients for some seconds.
+     * @param label Printed before the query statistics, null to print nothing.
+     * @return Transfers per second.
+     */
+    private static double runPhase(BankAccountTypeInterface[] accounts, TransferService transferService, int transferThreads, int seconds,
+                                   int clients, int port, String label) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder transfers = new LongAdder();
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(transferThreads + clients);
+        List<Future<?>> futures = new ArrayList<>();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        try {
+            for (int t = 0; t < transferThreads; t++) {
+                long seed = t;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    Money amount = Money.ofMinorUnits(100);
+                    while (running.get()) {
+                        transferService.transfer(accounts[random.nextInt(accounts.length)], accounts[random.nextInt(accounts.length)], amount);
+                        transfers.increment();
+                    }
+                }));
+            }
+            for (int c = 0; c < clients; c++) {
+                long seed = 1000 + c;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    while (running.get()) {
+                        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + randomPath(random, accounts))).GET().build();
+                        long start = System.nanoTime();
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        latencies.record(System.nanoTime() - start);
+                        if (response.statusCode() != 200) {
+                            failures.increment();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            if (label != null) {
+                System.out.printf("%-14s %d clients: %,.0f requests/s, %d failed, latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                        label, clients, latencies.getCount() / elapsed, failures.sum(), latencies.getValueAtPercentile(50) / 1e6,
+                        latencies.getValueAtPercentile(99) / 1e6, latencies.getValueAtPercentile(99.9) / 1e6, latencies.getMax() / 1e6);
+            }
+            return transfers.sum() / elapsed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Picks the path of the next query.
+     */
+    private static String randomPath(Random random, BankAccountTypeInterface[] accounts) {
+        String accountID = accounts[random.nextInt(accounts.length)].getAccountID();
+        int kind = random.nextInt(100);
+        if (kind < 70) {
+            return "/accounts/" + accountID;
+        } else if (kind < 80) {
+            return "/accounts/" + accountID + "/risk";
+        } else if (kind < 95) {
+            return "/accounts/" + accountID + "/statement?size=20";
+        }
+        return "/high-value";
+    }
+}
@@ -0,0 +1,312 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small local HTTP server (com.sun.net.httpserver, on the loopback address) that answers questions about the live
+ * accounts of a running BankingSystem, so the program does not have to be run again to look up one account.
+ * All answers are JSON:
+ * <ul>
+ *     <li>GET /accounts/{id}: type, balance, risk tier, high value and number of transactions.</li>
+ *     <li>GET /accounts/{id}/risk: the risk tier.</li>
+ *     <li>GET /accounts/{id}/balance?asOf=sequence|instant: the balance after an event or at a time (LedgerQueries).</li>
+ *     <li>GET /accounts/{id}/statement?after=0&amp;size=50[&amp;from=instant&amp;to=instant]: one page of the statement (LedgerQueries).</li>
+ *     <li>GET /high-value: the IDs of the high value accounts.</li>
+ * </ul>
+ * The queries are read-mostly, so they do not hold up the transfer threads: the account map is only read, the
+ * account lookups read the balance and the counters without any lock (the value can be a moment old, and pending
+ * deposits of a hot account are added from HotAccountCombiner), and the tiers and high value accounts come from the
+ * concurrent sets of RiskEngine and AccountSecondaryIndexes. Only the balance-as-of and statement queries take the
+ * lock of their one account, for as long as one block of its history is read.
+ * <p>
+ * Every request runs on its own virtual thread when the JVM has them (Java 21 and later), otherwise on a fixed pool.
+ */
+public class LedgerHttpServer {
+    private static final int FALLBACK_THREADS = 16; // Handler threads when there are no virtual threads.
+
+    private final Map<String, BankAccountTypeInterface> accounts; // All accounts, keyed by account ID. Only read.
+    private final RiskEngine risk_engine; // null to evaluate the tier of the account at every request.
+    private final AccountSecondaryIndexes indexes; // null to scan the accounts for /high-value.
+    private volatile TransferService transfer_service; // Service that changes the accounts now, its locks are used by the queries.
+    private volatile LedgerQueries queries;
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    /**
+     * Constructs a server over the given accounts, it is started with start().
+     * @param accounts        All accounts, keyed by account ID. The map itself must not change.
+     * @param transferService The service that changes the accounts.
+     * @param riskEngine      The risk engine that keeps the tiers, or null.
+     * @param indexes         The indexes that keep the high value accounts, or null.
+     */
+    public LedgerHttpServer(Map<String, BankAccountTypeInterface> accounts, TransferService transferService, RiskEngine riskEngine,
+                            AccountSecondaryIndexes indexes) {
+        this.accounts = accounts;
+        this.risk_engine = riskEngine;
+        this.indexes = indexes;
+        setTransferService(transferService);
+    }
+
+    /**
+     * Changes the service whose locks the queries take, when the transfers are processed by another service
+     * (for example the one of ParallelTransferExecutor).
+     * @param transferService The service that changes the accounts now.
+     */
+    public void setTransferService(TransferService transferService) {
+        this.transfer_service = transferService;
+        this.queries = new LedgerQueries(transferService);
+    }
+
+    /**
+     * Returns the service whose locks the queries take.
+     * @return The service that changes the accounts now.
+     */
+    public TransferService getTransferService() {
+        return transfer_service;
+    }
+
+    /**
+     * Turns on TCP_NODELAY for the JDK HTTP server of the whole process, unless the sun.net.httpserver.nodelay property
+     * is already set. Small answers are sent as headers and body, and without it the body waits for the delayed ACK
+     * (about 40 ms per request). The property is read when the first server is created, so the main method calls this
+     * once before start().
+     */
+    public static void useNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Starts the server on the loopback address.
+     * @param port The port, 0 for any free port.
+     * @throws IOException If the port can not be bound.
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        handlers = newHandlerExecutor();
+        server.setExecutor(handlers);
+        server.createContext("/accounts/", this::handleAccount);
+        server.createContext("/high-value", this::handleHighValue);
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server and waits up to a second for the open requests.
+     */
+    public void stop() {
+        server.stop(1);
+        handlers.shutdown();
+        try {
+            handlers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the JVM has one, looked up by reflection because the program
+     * is also compiled for Java 17, otherwise a fixed pool of platform threads.
+     */
+    private static ExecutorService newHandlerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "ledger-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Handles /accounts/{id} and the paths under it.
+     */
+    private void handleAccount(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Only GET is supported."));
+                return;
+            }
+            String[] parts = exchange.getRequestURI().getPath().substring("/accounts/".length()).split("/");
+            String accountID = URLDecoder.decode(parts[0], StandardCharsets.UTF_8);
+            BankAccountTypeInterface account = accounts.get(accountID);
+            if (account == null || parts.length > 2) {
+                send(exchange, 404, error(account == null ? "Unknown account: " + accountID : "Unknown path."));
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String action = parts.length == 1 ? "" : parts[1];
+            switch (action) {
+                case "":
+                    send(exchange, 200, accountJson(account));
+                    break;
+                case "risk":
+                    send(exchange, 200, "{\"id\":" + quote(accountID) + ",\"riskTier\":" + quote(tierOf(account).name()) + "}");
+                    break;
+                case "balance":
+                    send(exchange, 200, balanceJson(account, query.get("asOf")));
+                    break;
+                case "statement":
+                    send(exchange, 200, statementJson(account, query));
+                    break;
+                default:
+                    send(exchange, 404, error("Unknown path."));
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            send(exchange, 400, error("Bad parameter: " + e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error(e.toString()));
+        }
+    }
+
+    /**
+     * Handles /high-value.
+     */
+    private void handleHighValue(HttpExchange exchange) throws IOException {
+        List<String> highValue = new ArrayList<>();
+        if (indexes != null) {
+            highValue.addAll(indexes.highValueAccounts());
+        } else {
+            for (BankAccountTypeInterface account : accounts.values()) {
+                if (account.isHighValueAccount()) {
+                    highValue.add(account.getAccountID());
+                }
+            }
+        }
+        Collections.sort(highValue);
+        StringBuilder json = new StringBuilder("{\"count\":").append(highValue.size()).append(",\"accounts\":[");
+        for (int i = 0; i < highValue.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(quote(highValue.get(i)));
+        }
+        send(exchange, 200, json.append("]}").toString());
+    }
+
+    private String accountJson(BankAccountTypeInterface account) {
+        Money balance = account.getBalance();
+        HotAccountCombiner hot = transfer_service.getHotAccountCombiner();
+        if (hot != null && hot.isHot(account)) {
+            balance = Money.ofMinorUnits(balance.getMinorUnits() + hot.pendingCents(account));
+        }
+        return "{\"id\":" + quote(account.getAccountID()) + ",\"type\":" + quote(typeOf(account)) + ",\"balance\":" + balance
+                + ",\"riskTier\":" + quote(tierOf(account).name()) + ",\"highValue\":" + account.isHighValueAccount()
+                + ",\"transactions\":" + account.getTransactionHistory().size() + "}";
+    }
+
+    private String balanceJson(BankAccountTypeInterface account, String asOf) {
+        if (asOf == null) {
+            throw new IllegalArgumentException("asOf is missing.");
+        }
+        Money balance = asOf.chars().allMatch(Character::isDigit) ? queries.balanceAsOfSequence(account, Long.parseLong(asOf))
+                : queries.balanceAsOf(account, Instant.parse(asOf));
+        return "{\"id\":" + quote(account.getAccountID()) + ",\"asOf\":" + quote(asOf) + ",\"balance\":" + balance + "}";
+    }
+
+    private String statementJson(BankAccountTypeInterface account, Map<String, String> query) {
+        long after = Long.parseLong(query.getOrDefault("after", "0"));
+        int size = Integer.parseInt(query.getOrDefault("size", String.valueOf(LedgerQueries.DEFAULT_PAGE_SIZE)));
+        Instant from = query.containsKey("from") ? Instant.parse(query.get("from")) : Instant.ofEpochMilli(Long.MIN_VALUE);
+        Instant to = query.containsKey("to") ? Instant.parse(query.get("to")) : Instant.ofEpochMilli(Long.MAX_VALUE);
+        LedgerQueries.StatementPage page = queries.statement(account, from, to, after, size);
+        StringBuilder json = new StringBuilder("{\"id\":").append(quote(account.getAccountID())).append(",\"transactions\":[");
+        List<Transaction> transactions = page.getTransactions();
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction t = transactions.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"sequence\":").append(t.getSequence())
+                    .append(",\"time\":").append(quote(Instant.ofEpochMilli(t.getTimestamp()).toString()))
+                    .append(",\"id\":").append(quote(t.getTransactionId()))
+                    .append(",\"sender\":").append(quote(t.getSenderId()))
+                    .append(",\"receiver\":").append(quote(t.getReceiverId()))
+                    .append(",\"amount\":").append(Money.of(t.getAmount())).append('}'); // like the balance, not in the format of the locale
+        }
+        json.append("],\"next\":").append(page.hasNextPage() ? String.valueOf(page.getNextAfterSequence()) : "null").append('}');
+        return json.toString();
+    }
+
+    private RiskTier tierOf(BankAccountTypeInterface account) {
+        RiskTier tier = risk_engine == null ? null : risk_engine.tierOf(account.getAccountID());
+        return tier != null ? tier : account.riskTier();
+    }
+
+    private static String typeOf(BankAccountTypeInterface account) {
+        if (account instanceof CurrentAccount) {
+            return "Current";
+        } else if (account instanceof SavingAccount) {
+            return "Saving";
+        }
+        return "FixedDeposit";
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    /**
+     * Writes a JSON string literal, escaping the quotes, backslashes and control characters.
+     */
+    private static String quote(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point in time balances and statements of the accounts, answered from their transaction histories, which are the
+ * event log of the bank (see TransactionHistory).
+ * <p>
+ * Every change of a balance is a row of the history (deposits, withdrawals, penalties and the interest that
+ * InterestAccrualEngine posts), so the balance at an earlier point is the current balance minus the amounts after it.
+ * The sum of the amounts up to the point comes from the sparse index of the history and one block of rows, so a query
+ * does not replay the history from the beginning, even when the old rows are spilled or archived.
+ * <p>
+ * The queries take the lock of the account from the TransferService, so they can run while transfers are processed,
+ * and the balance and the history they read always belong together.
+ */
+public class LedgerQueries {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    private final TransferService transfer_service; // Its locks protect the accounts, and it folds the hot accounts before they are read.
+
+    /**
+     * Constructs the queries over the accounts of a transfer service.
+     * @param transferService The service that changes the accounts.
+     */
+    public LedgerQueries(TransferService transferService) {
+        this.transfer_service = transferService;
+    }
+
+    /**
+     * One page of a statement.
+     */
+    public static final class StatementPage {
+        private final List<Transaction> transactions;
+        private final long next_after_sequence; // 0 if this is the last page.
+
+        StatementPage(List<Transaction> transactions, long nextAfterSequence) {
+            this.transactions = transactions;
+            this.next_after_sequence = nextAfterSequence;
+        }
+
+        /**
+         * Returns the transactions of the page in the order they were recorded.
+         * @return The transactions, not modifiable.
+         */
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+
+        /**
+         * Returns the afterSequence that reads the next page.
+         * @return The sequence number of the last transaction on this page, 0 if there is no next page.
+         */
+        public long getNextAfterSequence() {
+            return next_after_sequence;
+        }
+
+        /**
+         * Checks if there is another page after this one.
+         * @return true if there is a next page.
+         */
+        public boolean hasNextPage() {
+            return next_after_sequence != 0;
+        }
+    }
+
+    /**
+     * Returns the balance of an account at a point in time.
+     * @param account The account.
+     * @param time    The point in time, the transactions at exactly this time are included.
+     * @return The balance after the last transaction up to the time.
+     */
+    public Money balanceAsOf(BankAccountTypeInterface account, Instant time) {
+        return balanceAsOf(account, time.toEpochMilli(), true);
+    }
+
+    /**
+     * Returns the balance of an account after an event.
+     * @param account  The account.
+     * @param sequence The event sequence number, it does not need to be a transaction of this account.
+     * @return The balance after the last transaction of the account up to the sequence number.
+     */
+    public Money balanceAsOfSequence(BankAccountTypeInterface account, long sequence) {
+        return balanceAsOf(account, sequence, false);
+    }
+
+    /**
+     * Returns one page of the statement of an account.
+     * @param account       The account.
+     * @param from          The first included time.
+     * @param to            The first time that is not included.
+     * @param afterSequence 0 for the first page, then getNextAfterSequence() of the previous page.
+     * @param pageSize      Most transactions on a page.
+     * @return The page.
+     */
+    public StatementPage statement(BankAccountTypeInterface account, Instant from, Instant to, long afterSequence, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        String accountID = account.getAccountID();
+        List<Transaction> rows;
+        transfer_service.getLocks().lock(accountID);
+        try {
+            transfer_service.balanceOf(account); // folds the pending deposits of a hot account into its history
+            // one more row than the page tells if there is a next page
+            rows = account.getTransactionHistory().range(from.toEpochMilli(), to.toEpochMilli(), afterSequence, pageSize + 1);
+        } finally {
+            transfer_service.getLocks().unlock(accountID);
+        }
+        if (rows.size() <= pageSize) {
+            return new StatementPage(Collections.unmodifiableList(rows), 0);
+        }
+        rows = rows.subList(0, pageSize);
+        return new StatementPage(Collections.unmodifiableList(rows), rows.get(pageSize - 1).getSequence());
+    }
+
+    /**
+     * Returns one page of the whole statement of an account.
+     * @param account       The account.
+     * @param afterSequence 0 for the first page, then getNextAfterSequence() of the previous page.
+     * @param pageSize      Most transactions on a page.
+     * @return The page.
+     */
+    public StatementPage statement(BankAccountTypeInterface account, long afterSequence, int pageSize) {
+        return statement(account, Instant.ofEpochMilli(Long.MIN_VALUE), Instant.ofEpochMilli(Long.MAX_VALUE), afterSequence, pageSize);
+    }
+
+    private Money balanceAsOf(BankAccountTypeInterface account, long key, boolean byTime) {
+        String accountID = account.getAccountID();
+        transfer_service.getLocks().lock(accountID);
+        try {
+            long balance = transfer_service.balanceOf(account).getMinorUnits();
+            TransactionHistory history = account.getTransactionHistory();
+            long upTo = byTime ? history.netCentsUpTo(key) : history.netCentsUpToSequence(key);
+            return Money.ofMinorUnits(balance - (history.netCents() - upTo));
+        } finally {
+            transfer_service.getLocks().unlock(accountID);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Loads the accounts file and processes the transactions file by memory-mapping them with FileChannel.map.
+ * The CSV fields are parsed directly from the mapped bytes, numbers and amounts (in cents) are parsed without creating a String for them,
+ * and the sender and receiver of a transfer are found with a table keyed by the bytes of the account ID.
+ * Only the values that are kept (account IDs and start dates) become Strings.
+ * It accepts the same rows as BankingSystem, including rows with a trailing comma like "ABC125,Current,30,100,".
+ * Big files are mapped in chunks, so the size of a file is not limited by the size of one mapping.
+ */
+public class MappedInputLoader {
+    private static final int CHUNK_SIZE = 1 << 30; // Bytes mapped at once.
+    private static final int MAX_FIELDS = 8; // More fields than any row format needs.
+    private static final double[] POWERS_OF_TEN = new double[23]; // Exact powers of ten that a double can hold.
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Map<String, BankAccountTypeInterface> accounts; // The account map that is filled and used for lookups.
+    private final int[] field_starts = new int[MAX_FIELDS]; // Start offsets of the fields of the current row.
+    private final int[] field_ends = new int[MAX_FIELDS]; // End offsets (exclusive) of the fields of the current row.
+    private int field_count;
+    private AccountTable account_table; // Lookup table by ID bytes, built after the accounts are loaded.
+
+    /**
+     * Constructs a loader that puts the accounts into the given map.
+     * @param accounts The account map of the banking system.
+     */
+    public MappedInputLoader(Map<String, BankAccountTypeInterface> accounts) {
+        this.accounts = accounts;
+    }
+
+    /**
+     * Loads every row of the accounts file into the account map.
+     * @param accountsFile Path of the accounts file.
+     * @return Number of rows read.
+     * @throws IOException If the file can not be read.
+     */
+    public long loadAccounts(Path accountsFile) throws IOException {
+        long rows = forEachRow(accountsFile, this::loadAccountRow);
+        account_table = new AccountTable(accounts);
+        return rows;
+    }
+
+    /**
+     * Applies every transfer row of the transactions file with the given transfer service.
+     * @param transactionsFile Path of the transactions file (senderID,amount,receiverID per line).
+     * @param transferService  The service that applies the transfers.
+     * @return Number of rows read.
+     * @throws IOException If the file can not be read.
+     */
+    public long processTransactions(Path transactionsFile, TransferService transferService) throws IOException {
+        if (account_table == null) {
+            account_table = new AccountTable(accounts);
+        }
+        return forEachRow(transactionsFile, (buffer, lineStart) -> {
+            BankAccountTypeInterface sender = account_table.get(buffer, field_starts[0], field_ends[0]);
+            Money amount = Money.ofMinorUnits(parseMinorUnits(buffer, field_starts[1], field_ends[1]));
+            BankAccountTypeInterface receiver = account_table.get(buffer, field_starts[2], field_ends[2]);
+
+            if (sender != null && receiver != null) {
+                transferService.transfer(sender, receiver, amount);  // Sender withdraws and receiver deposits the amount
+            } else {
+                BankMetrics.recordUnknownAccount();
+                System.out.println("Invalid transaction: Sender or Receiver not found.");
+            }
+        });
+    }
+
+    /**
+     * Parses one row of the accounts file, same rules as BankingSystem.
+     */
+    private void loadAccountRow(MappedByteBuffer buffer, int lineStart) {
+        String accountID = text(buffer, 0);
+        Money balance = Money.ofMinorUnits(parseMinorUnits(buffer, field_starts[2], field_ends[2]));
+
+        if (fieldEquals(buffer, 1, "Current")) {
+            Money overdraftLimit = Money.ofMinorUnits(parseMinorUnits(buffer, field_starts[3], field_ends[3]));
+            accounts.put(accountID, new CurrentAccount(accountID, balance, overdraftLimit));
+        } else if (fieldEquals(buffer, 1, "Saving")) {
+            double interestRate = parseDouble(buffer, field_starts[3], field_ends[3]);
+            Money minBalance = Money.ofMinorUnits(parseMinorUnits(buffer, field_starts[4], field_ends[4]));
+            accounts.put(accountID, new SavingAccount(accountID, balance, interestRate, minBalance));
+        } else if (fieldEquals(buffer, 1, "Deposit")) {
+            double depositInterestRate = parseDouble(buffer, field_starts[3], field_ends[3]);
+            int termInMonths = (int) parseLong(buffer, field_starts[4], field_ends[4]);
+            double penaltyRate = parseDouble(buffer, field_starts[5], field_ends[5]);
+            if (field_count < 7 || field_starts[6] == field_ends[6]) {
+                System.out.println("Missing start_date for account: " + accountID);
+                return;
+            }
+            accounts.put(accountID, new FixedDepositAccount(accountID, balance, depositInterestRate, termInMonths, penaltyRate, text(buffer, 6)));
+        } else {
+            System.out.println("Unknown account type: " + text(buffer, 1));
+        }
+    }
+
+    /**
+     * A consumer of one row. The fields of the row are in field_starts/field_ends when it is called.
+     */
+    private interface RowHandler {
+        void handle(MappedByteBuffer buffer, int lineStart);
+    }
+
+    /**
+     * Maps the file chunk by chunk, splits it into lines and fields and calls the handler for every non-empty line.
+     * @return Number of rows handled.
+     */
+    private long forEachRow(Path file, RowHandler handler) throws IOException {
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(CHUNK_SIZE, size - position);
+                boolean lastChunk = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer.get(i) == '\n') {
+                        rows += handleLine(buffer, lineStart, i, handler);
+                        lineStart = i + 1;
+                    }
+                }
+                if (lastChunk) {
+                    rows += handleLine(buffer, lineStart, length, handler); // last line without a line break
+                    lineStart = length;
+                } else if (lineStart == 0) {
+                    throw new IOException("Line is longer than " + CHUNK_SIZE + " bytes in " + file);
+                }
+                // the unfinished line at the end of the chunk is read again with the next chunk
+                position += lineStart;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Splits the line into fields and calls the handler. Empty lines are skipped.
+     * @return 1 if the line is handled, otherwise 0.
+     */
+    private int handleLine(MappedByteBuffer buffer, int start, int end, RowHandler handler) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return 0;
+        }
+        field_count = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end && field_count < MAX_FIELDS; i++) {
+            if (i == end || buffer.get(i) == ',') {
+                field_starts[field_count] = fieldStart;
+                field_ends[field_count] = i;
+                field_count++;
+                fieldStart = i + 1;
+            }
+        }
+        handler.handle(buffer, start);
+        return 1;
+    }
+
+    private boolean fieldEquals(MappedByteBuffer buffer, int field, String value) {
+        int start = field_starts[field];
+        if (field_ends[field] - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer.get(start + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String text(MappedByteBuffer buffer, int field) {
+        byte[] bytes = new byte[field_ends[field] - field_starts[field]];
+        buffer.get(field_starts[field], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a decimal number like "1200.5" or "-5" from the bytes.
+     * When the digits fit in 53 bits and there are at most 22 decimals, mantissa / 10^decimals is exactly the value
+     * Double.parseDouble would return, because both numbers are exact doubles and the division is rounded once.
+     * Other numbers (exponents, very long numbers) fall back to Double.parseDouble.
+     */
+    static double parseDouble(MappedByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = -1; // -1 until the decimal point is seen
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                if (++digits > 15) {
+                    return slowParseDouble(buffer, start, end);
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return slowParseDouble(buffer, start, end);
+            }
+        }
+        if (digits == 0) {
+            return slowParseDouble(buffer, start, end); // lets Double.parseDouble throw the usual exception
+        }
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an amount in dollars to cents from the bytes, with the same rules as Money.parseMinorUnits.
+     * The usual "digits.digits" format is parsed in place, other formats fall back to Money.parseMinorUnits.
+     */
+    static long parseMinorUnits(MappedByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int decimals = -1; // -1 until the decimal point is seen
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9' && digits < 16 && decimals < 2) {
+                units = units * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return Money.parseMinorUnits(text(buffer, start, end));
+            }
+        }
+        if (digits == 0) {
+            return Money.parseMinorUnits(text(buffer, start, end)); // lets Money throw the usual exception
+        }
+        for (int d = Math.max(decimals, 0); d < 2; d++) {
+            units *= 10;
+        }
+        return negative ? -units : units;
+    }
+
+    private static String text(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static double slowParseDouble(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return Double.parseDouble(new String(bytes, StandardCharsets.ISO_8859_1).trim());
+    }
+
+    private static long parseLong(MappedByteBuffer buffer, int start, int end) {
+        boolean negative = start < end && buffer.get(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Not an integer at byte " + i);
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Open addressing hash table from the bytes of an account ID to the account.
+     * It is filled once from the account map and then only read.
+     */
+    private static class AccountTable {
+        private final byte[][] keys;
+        private final BankAccountTypeInterface[] values;
+        private final int mask;
+
+        AccountTable(Map<String, BankAccountTypeInterface> accounts) {
+            int capacity = Integer.highestOneBit(Math.max(2, accounts.size() * 2 - 1)) << 1;
+            keys = new byte[capacity][];
+            values = new BankAccountTypeInterface[capacity];
+            mask = capacity - 1;
+            for (Map.Entry<String, BankAccountTypeInterface> entry : accounts.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int slot = hash(key, 0, key.length) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = entry.getValue();
+            }
+        }
+
+        BankAccountTypeInterface get(MappedByteBuffer buffer, int start, int end) {
+            int slot = hash(buffer, start, end) & mask;
+            while (keys[slot] != null) {
+                if (matches(keys[slot], buffer, start, end)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static boolean matches(byte[] key, MappedByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(byte[] key, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + key[i];
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static int hash(MappedByteBuffer buffer, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + buffer.get(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flips Fixed Deposit accounts from "Active" to "Matured" when their maturity date comes.
+ * The active accounts are kept in a priority queue ordered by maturity date, so runDue() only looks at the accounts
+ * that mature now and not at every account. The date is read from BankClock, so a simulation with an
+ * adjustable clock can replay a whole year in a few seconds.
+ * <p>
+ * If lock stripes are given, an account is flipped while its lock is held, so it does not change in the middle of a transfer.
+ * The change listener (for example RiskEngine) is told about every flipped account.
+ */
+public class MaturityScheduler {
+    private final PriorityQueue<FixedDepositAccount> active_accounts =
+            new PriorityQueue<>(Comparator.comparing(FixedDepositAccount::getMaturityDate)); // Active accounts, earliest maturity first.
+    private final AccountLockStripes locks; // Locks of the accounts, null if the accounts are not shared with other threads.
+    private final AccountChangeListener change_listener; // Told about the flipped accounts, null if none.
+    private ScheduledFuture<?> next_run; // The wake up at the next maturity, when start() is used.
+
+    /**
+     * Constructs a scheduler.
+     * @param locks          Lock stripes of the accounts (the ones of TransferService), or null.
+     * @param changeListener Listener of the flipped accounts, or null.
+     */
+    public MaturityScheduler(AccountLockStripes locks, AccountChangeListener changeListener) {
+        this.locks = locks;
+        this.change_listener = changeListener;
+    }
+
+    /**
+     * Adds the active Fixed Deposit accounts of a collection. The other accounts are skipped.
+     * @param accounts The accounts.
+     */
+    public synchronized void scheduleAll(Collection<? extends BankAccountTypeInterface> accounts) {
+        for (BankAccountTypeInterface account : accounts) {
+            if (account instanceof FixedDepositAccount && !((FixedDepositAccount) account).isMatured()) {
+                active_accounts.add((FixedDepositAccount) account);
+            }
+        }
+    }
+
+    /**
+     * Returns the earliest maturity date of the active accounts.
+     * @return The next maturity date, or null if no account is active.
+     */
+    public synchronized LocalDate nextMaturityDate() {
+        FixedDepositAccount next = active_accounts.peek();
+        return next == null ? null : next.getMaturityDate();
+    }
+
+    /**
+     * Returns the number of accounts that are still active.
+     * @return Number of scheduled accounts.
+     */
+    public synchronized int size() {
+        return active_accounts.size();
+    }
+
+    /**
+     * Flips every account whose maturity date is today or earlier (by BankClock).
+     * @return Number of flipped accounts.
+     */
+    public synchronized int runDue() {
+        LocalDate today = BankClock.today();
+        int flipped = 0;
+        while (!active_accounts.isEmpty() && !active_accounts.peek().getMaturityDate().isAfter(today)) {
+            flip(active_accounts.poll());
+            flipped++;
+        }
+        return flipped;
+    }
+
+    /**
+     * Runs the scheduler in the background: it wakes up at the start of the next maturity date (by BankClock),
+     * flips the due accounts and sleeps until the next one.
+     * The delay is computed from the clock when it is scheduled, so this is for the real clock, simulations call runDue().
+     * @param executor The executor that runs the wake ups.
+     */
+    public synchronized void start(ScheduledExecutorService executor) {
+        runDue();
+        LocalDate next = nextMaturityDate();
+        if (next == null) {
+            next_run = null;
+            return;
+        }
+        ZonedDateTime wakeUp = next.atStartOfDay(BankClock.get().getZone());
+        long delay = Math.max(0, Duration.between(BankClock.get().instant(), wakeUp.toInstant()).toMillis());
+        next_run = executor.schedule(() -> start(executor), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background wake ups of start().
+     */
+    public synchronized void stop() {
+        if (next_run != null) {
+            next_run.cancel(false);
+            next_run = null;
+        }
+    }
+
+    private void flip(FixedDepositAccount account) {
+        String accountID = account.getAccountID();
+        if (locks != null) {
+            locks.lock(accountID);
+        }
+        try {
+            account.setMaturity_status();
+            if (change_listener != null) {
+                change_listener.accountChanged(account);
+            }
+        } finally {
+            if (locks != null) {
+                locks.unlock(accountID);
+            }
+        }
+    }
+}
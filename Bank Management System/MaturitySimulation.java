@@ -0,0 +1,66 @@
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays a year of maturities with an adjustable BankClock.
+ * Creates Fixed Deposit accounts with random start dates and terms, then moves the clock one day at a time and lets
+ * MaturityScheduler flip the accounts that mature on that day. RiskEngine follows the flips, so at the end the
+ * High Risk tier must hold exactly the matured accounts.
+ * Usage: java MaturitySimulation [deposits] [days]
+ */
+public class MaturitySimulation {
+
+    /**
+     * Entry point of the simulation.
+     * @param args Optional number of deposits and number of simulated days.
+     */
+    public static void main(String[] args) {
+        int depositCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+
+        LocalDate firstDay = LocalDate.of(2025, 1, 1);
+        BankClock.Adjustable clock = new BankClock.Adjustable(firstDay, ZoneOffset.UTC);
+        BankClock.set(clock);
+
+        Random random = new Random(42);
+        List<FixedDepositAccount> deposits = new ArrayList<>(depositCount);
+        for (int i = 0; i < depositCount; i++) {
+            LocalDate startDate = firstDay.minusDays(random.nextInt(5 * 365));
+            int termInMonths = 1 + random.nextInt(60);
+            deposits.add(new FixedDepositAccount("DEP" + i, Money.ofMinorUnits(100_000), 0.05, termInMonths, 0.1, startDate.toString()));
+        }
+
+        RiskEngine riskEngine = new RiskEngine();
+        riskEngine.registerAll(deposits);
+        MaturityScheduler scheduler = new MaturityScheduler(null, riskEngine);
+        scheduler.scheduleAll(deposits);
+        int maturedAtStart = depositCount - scheduler.size();
+
+        long start = System.nanoTime();
+        int flipped = 0;
+        for (int day = 1; day <= days; day++) {
+            clock.setDate(firstDay.plusDays(day));
+            flipped += scheduler.runDue();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int matured = 0;
+        LocalDate lastDay = BankClock.today();
+        for (FixedDepositAccount deposit : deposits) {
+            if (deposit.isMatured() != !deposit.getMaturityDate().isAfter(lastDay)) {
+                throw new IllegalStateException("Wrong status for " + deposit.getAccountID());
+            }
+            if (deposit.isMatured()) {
+                matured++;
+            }
+        }
+        if (riskEngine.accountsIn(RiskTier.HIGH).size() != matured) {
+            throw new IllegalStateException("RiskEngine has " + riskEngine.accountsIn(RiskTier.HIGH).size() + " High Risk accounts, expected " + matured);
+        }
+        System.out.printf("%,d deposits, %,d matured before %s, %,d matured in %d simulated days (%.3f s)%n",
+                depositCount, maturedAtStart, firstDay, flipped, days, seconds);
+    }
+}
@@ -0,0 +1,241 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * An amount of money, stored as a whole number of minor units (cents), so sums and comparisons are exact.
+ * Multiplying by a rate (penalty or interest) is done in decimal and then rounded to cents with an explicit rounding mode.
+ * The hot paths of the accounts work directly on the long minor units with the static helpers, Money objects are used at the edges.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+    public static final int MINOR_UNITS_PER_UNIT = 100; // Cents in one dollar.
+    public static final RoundingMode PENALTY_ROUNDING = RoundingMode.HALF_UP; // Rounding of penalties, half a cent goes to the bank.
+    public static final RoundingMode INTEREST_ROUNDING = RoundingMode.HALF_EVEN; // Rounding of interest (banker's rounding).
+    // true if "%.1f" of the default locale prints plain ASCII digits and a dot, so appendOneDecimal can skip the Formatter.
+    private static final boolean PLAIN_DECIMALS = plainDecimals();
+
+    private final long minor_units; // Amount in cents.
+
+    private Money(long minorUnits) {
+        this.minor_units = minorUnits;
+    }
+
+    /**
+     * Creates an amount from cents.
+     * @param minorUnits The amount in cents.
+     * @return The amount.
+     */
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Creates an amount from a double, rounding to the nearest cent (half even).
+     * Only for compatibility with the old double based methods, the decimal value of the double is used (0.1 is 10 cents).
+     * @param amount The amount in dollars.
+     * @return The amount.
+     */
+    public static Money of(double amount) {
+        return ofMinorUnits(BigDecimal.valueOf(amount).setScale(2, INTEREST_ROUNDING).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Parses an amount like "1200", "-5" or "33.33". More than two decimals are rounded half even.
+     * @param text The amount in dollars.
+     * @return The amount.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    public static Money parse(String text) {
+        return ofMinorUnits(parseMinorUnits(text));
+    }
+
+    /**
+     * Parses an amount in dollars to cents without creating any object for the usual "digits.digits" format.
+     * Other formats (exponents, very long numbers) are parsed with BigDecimal.
+     * @param text The amount in dollars.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the text is not a number.
+     */
+    public static long parseMinorUnits(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int decimals = -1; // -1 until the decimal point is seen
+        int digits = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9' && digits < 16 && decimals < 2) {
+                units = units * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return slowParseMinorUnits(text.subSequence(start, end).toString());
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not an amount: \"" + text + "\"");
+        }
+        for (int d = Math.max(decimals, 0); d < 2; d++) {
+            units *= 10;
+        }
+        return negative ? -units : units;
+    }
+
+    private static long slowParseMinorUnits(String text) {
+        return new BigDecimal(text).setScale(2, INTEREST_ROUNDING).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Multiplies an amount in cents by a rate and rounds the result to cents.
+     * The rate is used with its decimal value (0.05 is exactly five percent).
+     * @param minorUnits The amount in cents.
+     * @param rate       The rate.
+     * @param rounding   How the result is rounded to cents.
+     * @return The result in cents.
+     */
+    public static long multiply(long minorUnits, double rate, RoundingMode rounding) {
+        return multiply(minorUnits, BigDecimal.valueOf(rate), rounding);
+    }
+
+    /**
+     * Multiplies an amount in cents by a decimal factor and rounds the result to cents.
+     * @param minorUnits The amount in cents.
+     * @param factor     The factor.
+     * @param rounding   How the result is rounded to cents.
+     * @return The result in cents.
+     */
+    public static long multiply(long minorUnits, BigDecimal factor, RoundingMode rounding) {
+        return BigDecimal.valueOf(minorUnits).multiply(factor).setScale(0, rounding).longValueExact();
+    }
+
+    /**
+     * Returns rate * months / 12 as a decimal, the factor used for the interest of a term.
+     * @param rate   The yearly rate.
+     * @param months The term in months.
+     * @return The factor.
+     */
+    public static BigDecimal termFactor(double rate, int months) {
+        return BigDecimal.valueOf(rate).multiply(BigDecimal.valueOf(months)).divide(BigDecimal.valueOf(12), MathContext.DECIMAL64);
+    }
+
+    /**
+     * Converts cents to dollars as a double, for printing with the old formats.
+     * @param minorUnits The amount in cents.
+     * @return The amount in dollars.
+     */
+    public static double toDouble(long minorUnits) {
+        return minorUnits / (double) MINOR_UNITS_PER_UNIT;
+    }
+
+    /**
+     * Appends cents as dollars with one decimal, exactly like String.format("%.1f", dollars) does
+     * (half up, and a minus sign for every negative amount, also for "-0.0"). It does not create a Formatter.
+     * @param out        The text that the amount is appended to.
+     * @param minorUnits The amount in cents.
+     * @return out.
+     */
+    public static StringBuilder appendOneDecimal(StringBuilder out, long minorUnits) {
+        if (!PLAIN_DECIMALS || minorUnits == Long.MIN_VALUE) {
+            return out.append(String.format("%.1f", BigDecimal.valueOf(minorUnits, 2)));
+        }
+        if (minorUnits < 0) {
+            out.append('-');
+        }
+        long tenths = (Math.abs(minorUnits) + 5) / 10;
+        return out.append(tenths / 10).append('.').append((char) ('0' + tenths % 10));
+    }
+
+    private static boolean plainDecimals() {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        return symbols.getDecimalSeparator() == '.' && symbols.getZeroDigit() == '0';
+    }
+
+    public long getMinorUnits() {
+        return minor_units;
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minor_units, other.minor_units));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minor_units, other.minor_units));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(-minor_units);
+    }
+
+    public boolean isNegative() {
+        return minor_units < 0;
+    }
+
+    /**
+     * Multiplies the amount by a rate, see multiply(long, double, RoundingMode).
+     * @param rate     The rate.
+     * @param rounding How the result is rounded to cents.
+     * @return The result.
+     */
+    public Money times(double rate, RoundingMode rounding) {
+        return ofMinorUnits(multiply(minor_units, rate, rounding));
+    }
+
+    /**
+     * Returns the amount in dollars as a double.
+     * @return The amount in dollars.
+     */
+    public double toDouble() {
+        return toDouble(minor_units);
+    }
+
+    /**
+     * Returns the exact amount in dollars as a BigDecimal with two decimals.
+     * @return The amount in dollars.
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor_units, 2);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor_units, other.minor_units);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minor_units == minor_units;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor_units);
+    }
+
+    /**
+     * Returns the amount with two decimals, like "1200.50".
+     * @return The amount as text.
+     */
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes many transactions files (a directory or a glob like inputs/transactions*.txt) at the same time.
+ * <p>
+ * First every file is read once to collect the accounts it uses. Files that share an account are put into the same
+ * group with a union-find, so the groups have no account in common. The groups are processed in parallel, and the files
+ * of a group one after the other in name order. So every account sees its transfers in the same order as processing
+ * all files one by one in name order, and the final balances are the same. Only the printed rejections of different
+ * groups can be mixed, and the transaction IDs are given in a different order.
+ * <p>
+ * After the run, report() prints the lines per second of every file and the pairs of files that had to wait for each other.
+ */
+public class MultiFileIngester {
+    private static final int CONFLICT_SAMPLE = 5; // Shared account IDs printed for a conflict.
+
+    private final Map<String, BankAccountTypeInterface> accounts; // All accounts of the system, only read.
+    private final TransferService transfer_service; // Applies the transfers, with its own lock stripes.
+    private final int thread_count; // Number of groups processed at the same time.
+    private final List<FileResult> results = new ArrayList<>(); // One result per file, in name order.
+    private final Map<String, Set<String>> conflicts = new LinkedHashMap<>(); // "fileA and fileB" to their shared accounts.
+
+    /**
+     * Statistics of one processed file.
+     */
+    private static final class FileResult {
+        final Path file;
+        int group; // Number of the group of the file, starting from 1.
+        long lines;
+        double seconds;
+
+        FileResult(Path file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Constructs an ingester.
+     * @param accounts    All accounts, keyed by account ID. The map itself is only read.
+     * @param threadCount Number of groups processed at the same time.
+     */
+    public MultiFileIngester(Map<String, BankAccountTypeInterface> accounts, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.accounts = accounts;
+        this.thread_count = threadCount;
+        this.transfer_service = new TransferService(threadCount * 16);
+    }
+
+    /**
+     * Returns the service that applies the transfers, for example to set its change listener.
+     * @return The transfer service.
+     */
+    public TransferService getTransferService() {
+        return transfer_service;
+    }
+
+    /**
+     * Finds the files of a directory (all regular files in it) or of a glob (the last part of the path can have
+     * *, ?, [..] and {..}; for example inputs/transactions*.txt).
+     * @param directoryOrGlob The directory or the glob.
+     * @return The files, sorted by name.
+     * @throws IOException If the directory can not be listed.
+     */
+    public static List<Path> resolveFiles(String directoryOrGlob) throws IOException {
+        Path path = Paths.get(directoryOrGlob);
+        Path directory;
+        String glob;
+        if (Files.isDirectory(path)) {
+            directory = path;
+            glob = "*";
+        } else {
+            directory = path.getParent() != null ? path.getParent() : Paths.get(".");
+            glob = path.getFileName().toString();
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Groups the files by shared accounts and processes the groups in parallel.
+     * @param files The transactions files, in the order they would be processed one by one.
+     * @throws IOException If a file can not be read or a worker thread fails.
+     */
+    public void process(List<Path> files) throws IOException {
+        int[] groups = group(files);
+        Map<Integer, List<FileResult>> byGroup = new LinkedHashMap<>(); // root of a group to its files in name order
+        for (int i = 0; i < files.size(); i++) {
+            FileResult result = new FileResult(files.get(i));
+            results.add(result);
+            byGroup.computeIfAbsent(groups[i], root -> new ArrayList<>()).add(result);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(thread_count);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            int groupNumber = 0;
+            for (List<FileResult> groupFiles : byGroup.values()) {
+                groupNumber++;
+                for (FileResult result : groupFiles) {
+                    result.group = groupNumber;
+                }
+                futures.add(pool.submit(() -> {
+                    for (FileResult result : groupFiles) {
+                        processFile(result);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing transactions.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error while processing transactions: " + cause, cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Prints the lines per second of every file and the conflicts between the files.
+     * @param out The stream to print to.
+     */
+    public void report(PrintStream out) {
+        for (FileResult result : results) {
+            out.printf("%s: %d lines in %.3f s (%.0f lines/s), group %d%n", result.file.getFileName(), result.lines, result.seconds,
+                    result.lines / Math.max(result.seconds, 1e-9), result.group);
+        }
+        if (conflicts.isEmpty()) {
+            out.println("No conflicts: all files were processed in parallel.");
+        }
+        for (Map.Entry<String, Set<String>> conflict : conflicts.entrySet()) {
+            Set<String> shared = conflict.getValue();
+            List<String> sample = new ArrayList<>();
+            for (String accountID : shared) {
+                if (sample.size() == CONFLICT_SAMPLE) {
+                    sample.add("...");
+                    break;
+                }
+                sample.add(accountID);
+            }
+            out.println("Conflict: " + conflict.getKey() + " share " + shared.size() + " accounts (" + String.join(", ", sample) + "), processed one after the other");
+        }
+    }
+
+    /**
+     * Reads the accounts of every file and joins the files that share an account.
+     * @return The group (union-find root) of every file.
+     */
+    private int[] group(List<Path> files) throws IOException {
+        int[] parents = new int[files.size()];
+        Map<String, Integer> lastFile = new HashMap<>(); // account ID to the last file that used it
+        for (int i = 0; i < files.size(); i++) {
+            parents[i] = i;
+            for (String accountID : accountsOf(files.get(i))) {
+                Integer other = lastFile.put(accountID, i);
+                if (other != null && other != i) {
+                    union(parents, other, i);
+                    String pair = files.get(other).getFileName() + " and " + files.get(i).getFileName();
+                    conflicts.computeIfAbsent(pair, key -> new TreeSet<>()).add(accountID);
+                }
+            }
+        }
+        int[] groups = new int[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            groups[i] = find(parents, i);
+        }
+        return groups;
+    }
+
+    /**
+     * Collects the sender and receiver IDs of a file that are in the accounts. A line with an unknown sender or
+     * receiver changes no account, so its IDs are not collected and do not join files.
+     */
+    private Set<String> accountsOf(Path file) throws IOException {
+        Set<String> accountIDs = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, Charset.defaultCharset())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length > 2 && accounts.containsKey(parts[0]) && accounts.containsKey(parts[2])) {
+                    accountIDs.add(parts[0]);
+                    accountIDs.add(parts[2]);
+                }
+            }
+        }
+        return accountIDs;
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]]; // path halving
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA != rootB) {
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB); // the first file stays the root
+        }
+    }
+
+    /**
+     * Applies the transfers of one file in file order.
+     */
+    private void processFile(FileResult result) throws IOException {
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(result.file, Charset.defaultCharset())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long parseStart = BankMetrics.startTimer();
+                String[] parts = line.split(",");
+                String senderID = parts[0];
+                Money amount = Money.parse(parts[1]);
+                String receiverID = parts[2];
+                BankMetrics.recordLatency(BankMetrics.Stage.PARSE, parseStart);
+
+                BankAccountTypeInterface sender = accounts.get(senderID);
+                BankAccountTypeInterface receiver = accounts.get(receiverID);
+                if (sender != null && receiver != null) {
+                    transfer_service.transfer(sender, receiver, amount);
+                } else {
+                    BankMetrics.recordUnknownAccount();
+                    System.out.println("Invalid transaction: Sender or Receiver not found.");
+                }
+                result.lines++;
+            }
+        }
+        result.seconds = (System.nanoTime() - start) / 1e9;
+    }
+}
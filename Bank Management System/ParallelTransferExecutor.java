@@ -0,0 +1,156 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes a transactions file on several threads.
+ * The transfers are sharded into lanes by the lock stripe of the sender, and every lane is processed by one thread in file order.
+ * So the withdrawals of an account are always done in the same order as the sequential run.
+ * Each transfer goes through a TransferService, which locks the stripes of the sender and the receiver (in stripe order, so no deadlock).
+ * The final balances are the same as the sequential run as long as no rejection or penalty depends on money that
+ * arrives from another lane, because deposits and withdrawals of different senders commute.
+ * With setHotAccounts(), the transfers to the hot accounts only lock their sender and the deposits are combined
+ * (see HotAccountCombiner); they are folded into the hot accounts at the end of every batch at the latest.
+ */
+public class ParallelTransferExecutor {
+    private static final int BATCH_SIZE = 100_000; // Number of lines read into memory before they are processed.
+
+    private final Map<String, BankAccountTypeInterface> accounts; // All accounts of the system.
+    private final AccountLockStripes locks; // Locks that protect the accounts.
+    private final TransferService transfer_service; // Applies the transfers atomically.
+    private final int thread_count; // Number of lanes (and threads).
+
+    /**
+     * Constructs an executor.
+     * @param accounts    All accounts, keyed by account ID. The map itself is only read.
+     * @param threadCount Number of threads to use.
+     */
+    public ParallelTransferExecutor(Map<String, BankAccountTypeInterface> accounts, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.accounts = accounts;
+        this.thread_count = threadCount;
+        this.locks = new AccountLockStripes(threadCount * 16);
+        this.transfer_service = new TransferService(locks);
+    }
+
+    /**
+     * Returns the service that applies the transfers, for example to set its change listener.
+     * @return The transfer service.
+     */
+    public TransferService getTransferService() {
+        return transfer_service;
+    }
+
+    /**
+     * Combines the deposits into the given accounts instead of locking them for every transfer.
+     * @param accountIDs IDs of the hot accounts, the IDs that are not in the accounts are ignored.
+     */
+    public void setHotAccounts(Collection<String> accountIDs) {
+        List<BankAccountTypeInterface> hotAccounts = new ArrayList<>();
+        for (String accountID : accountIDs) {
+            BankAccountTypeInterface account = accounts.get(accountID);
+            if (account != null) {
+                hotAccounts.add(account);
+            }
+        }
+        transfer_service.setHotAccounts(hotAccounts);
+    }
+
+    /**
+     * Reads the transactions file in batches and processes every batch in parallel.
+     * @param transactionsFile Path of the transactions file (senderID,amount,receiverID per line).
+     * @throws IOException If the file can not be read.
+     */
+    public void processFile(String transactionsFile) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(thread_count);
+        try (BufferedReader br = new BufferedReader(new FileReader(transactionsFile))) {
+            List<List<String>> lanes = new ArrayList<>();
+            for (int i = 0; i < thread_count; i++) {
+                lanes.add(new ArrayList<>());
+            }
+            int lineCount = 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                lanes.get(laneOf(line)).add(line);
+                if (++lineCount == BATCH_SIZE) {
+                    runBatch(pool, lanes);
+                    lineCount = 0;
+                }
+            }
+            runBatch(pool, lanes);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Finds the lane of a line from the stripe of its sender.
+     */
+    private int laneOf(String line) {
+        int comma = line.indexOf(',');
+        String senderID = comma < 0 ? line : line.substring(0, comma);
+        return locks.stripeOf(senderID) % thread_count;
+    }
+
+    /**
+     * Runs every lane on the pool, waits for all of them and clears the lanes.
+     */
+    private void runBatch(ExecutorService pool, List<List<String>> lanes) throws IOException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<String> lane : lanes) {
+            if (!lane.isEmpty()) {
+                futures.add(pool.submit(() -> {
+                    for (String line : lane) {
+                        applyTransfer(line);
+                    }
+                }));
+            }
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing transactions.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while processing transactions: " + e.getCause(), e.getCause());
+        }
+        transfer_service.foldAll(); // the hot accounts are complete between the batches
+        for (List<String> lane : lanes) {
+            lane.clear();
+        }
+    }
+
+    /**
+     * Applies one transfer line atomically.
+     */
+    private void applyTransfer(String line) {
+        long start = BankMetrics.startTimer();
+        String[] parts = line.split(",");
+        String senderID = parts[0];
+        Money amount = Money.parse(parts[1]);
+        String receiverID = parts[2];
+        BankMetrics.recordLatency(BankMetrics.Stage.PARSE, start);
+
+        BankAccountTypeInterface sender = accounts.get(senderID);
+        BankAccountTypeInterface receiver = accounts.get(receiverID);
+
+        if (sender != null && receiver != null) {
+            transfer_service.transfer(sender, receiver, amount);
+        } else {
+            BankMetrics.recordUnknownAccount();
+            System.out.println("Invalid transaction: Sender or Receiver not found.");
+        }
+    }
+}
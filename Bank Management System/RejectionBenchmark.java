@@ -0,0 +1,69 @@
+/**
+ * Measures rejected withdrawals per second with the old exception path (withdrawOrThrow and catch)
+ * and with the result code path (tryWithdraw with one reused WithdrawResult).
+ * Every withdrawal is over the overdraft limit, so all of them are rejected. Nothing is printed.
+ * Usage: java RejectionBenchmark [withdrawals]
+ */
+public class RejectionBenchmark {
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of withdrawals.
+     */
+    public static void main(String[] args) {
+        int withdrawalCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        BankAccountTypeInterface sender = new CurrentAccount("BNC0", Money.ZERO, Money.ZERO);
+        BankAccountTypeInterface receiver = new CurrentAccount("BNC1", Money.ZERO, Money.ZERO);
+        Money amount = Money.ofMinorUnits(100);
+
+        // first runs are the warm up
+        runExceptions(sender, receiver, amount, withdrawalCount / 10);
+        runResultCodes(sender, receiver, amount, withdrawalCount / 10);
+
+        double seconds = runExceptions(sender, receiver, amount, withdrawalCount);
+        System.out.printf("exceptions   %,.0f rejections/s%n", withdrawalCount / seconds);
+        seconds = runResultCodes(sender, receiver, amount, withdrawalCount);
+        System.out.printf("result codes %,.0f rejections/s%n", withdrawalCount / seconds);
+    }
+
+    /**
+     * @return Elapsed time in seconds.
+     */
+    private static double runExceptions(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount, int count) {
+        int rejected = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            try {
+                sender.withdrawOrThrow(receiver, amount);
+            } catch (InvalidAmountException | InsufficientFundsException | PenaltyException e) {
+                rejected++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        check(rejected, count);
+        return seconds;
+    }
+
+    /**
+     * @return Elapsed time in seconds.
+     */
+    private static double runResultCodes(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount, int count) {
+        WithdrawResult result = new WithdrawResult();
+        int rejected = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (!sender.tryWithdraw(receiver, amount, result).isAccepted()) {
+                rejected++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        check(rejected, count);
+        return seconds;
+    }
+
+    private static void check(int rejected, int count) {
+        if (rejected != count) {
+            throw new IllegalStateException("Expected " + count + " rejections but got " + rejected);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the account reports with large sequential writes instead of many System.out.println calls.
+ * Every account is rendered with appendAccountDetails into one reused StringBuilder, encoded into a big byte buffer
+ * and the buffer is written to a channel (the standard output or a file) when it is full.
+ * The bytes are the same as the ones that displayAccountDetails prints.
+ * <p>
+ * writeAccountsParallel renders blocks of accounts on several threads and writes the blocks in the original order.
+ * The accounts must not change while a report is written.
+ */
+public class ReportWriter implements Closeable {
+    public static final String NEWLINE = System.lineSeparator(); // Line separator of println, used by all reports.
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+    private static final int ACCOUNTS_PER_BLOCK = 64; // Accounts rendered by one task in the parallel mode.
+
+    private final WritableByteChannel channel; // Target of the report.
+    private final boolean close_channel; // false for the standard output, which must stay open.
+    private final ByteBuffer buffer; // Encoded bytes that are not written yet.
+    private final CharsetEncoder encoder;
+    private final StringBuilder text = new StringBuilder(1 << 12); // Reused for the sequential rendering.
+
+    /**
+     * Constructs a writer over a channel.
+     * @param channel      The target of the report.
+     * @param charset      Charset of the output.
+     * @param bufferSize   Size of the byte buffer.
+     * @param closeChannel true if close() should also close the channel.
+     */
+    public ReportWriter(WritableByteChannel channel, Charset charset, int bufferSize, boolean closeChannel) {
+        this.channel = channel;
+        this.close_channel = closeChannel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        // like PrintStream, characters that the charset can not encode are replaced
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Creates a writer to the standard output, with the charset that System.out uses.
+     * System.out is flushed first, so the messages that are printed before the report stay before it.
+     * @return The writer.
+     */
+    public static ReportWriter toStandardOutput() {
+        System.out.flush();
+        String encoding = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        Charset charset = encoding != null && Charset.isSupported(encoding) ? Charset.forName(encoding) : Charset.defaultCharset();
+        return new ReportWriter(Channels.newChannel(new FileOutputStream(FileDescriptor.out)), charset, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * Creates a writer to a file. An existing file is replaced.
+     * @param file The report file.
+     * @return The writer.
+     * @throws IOException If the file can not be opened.
+     */
+    public static ReportWriter toFile(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new ReportWriter(channel, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE, true);
+    }
+
+    /**
+     * Writes the report of one account.
+     * @param account The account.
+     * @throws IOException If the report can not be written.
+     */
+    public void writeAccount(BankAccountTypeInterface account) throws IOException {
+        text.setLength(0);
+        account.appendAccountDetails(text);
+        writeText(text);
+    }
+
+    /**
+     * Writes the reports of the accounts in the order of the collection.
+     * @param accounts The accounts.
+     * @throws IOException If the report can not be written.
+     */
+    public void writeAccounts(Collection<? extends BankAccountTypeInterface> accounts) throws IOException {
+        for (BankAccountTypeInterface account : accounts) {
+            writeAccount(account);
+        }
+    }
+
+    /**
+     * Renders the reports on several threads and writes them in the order of the collection.
+     * At most two blocks per thread are waiting in memory, so big reports do not fill the memory.
+     * @param accounts    The accounts.
+     * @param threadCount Number of rendering threads.
+     * @throws IOException If the report can not be written or a rendering thread fails.
+     */
+    public void writeAccountsParallel(Collection<? extends BankAccountTypeInterface> accounts, int threadCount) throws IOException {
+        if (threadCount <= 1) {
+            writeAccounts(accounts);
+            return;
+        }
+        BankAccountTypeInterface[] all = accounts.toArray(new BankAccountTypeInterface[0]);
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            ArrayDeque<Future<StringBuilder>> waiting = new ArrayDeque<>();
+            int next = 0;
+            while (next < all.length || !waiting.isEmpty()) {
+                while (next < all.length && waiting.size() < threadCount * 2) {
+                    int from = next;
+                    int to = Math.min(all.length, from + ACCOUNTS_PER_BLOCK);
+                    waiting.add(pool.submit(() -> {
+                        StringBuilder block = new StringBuilder(1 << 12);
+                        for (int i = from; i < to; i++) {
+                            all[i].appendAccountDetails(block);
+                        }
+                        return block;
+                    }));
+                    next = to;
+                }
+                writeText(waiting.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering reports.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while rendering reports: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     * @throws IOException If the bytes can not be written.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the writer and closes the channel (but not the standard output).
+     * @throws IOException If the bytes can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (close_channel) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes the text into the buffer, writing the buffer every time it becomes full.
+     */
+    private void writeText(CharSequence chars) throws IOException {
+        CharBuffer input = CharBuffer.wrap(chars);
+        while (true) {
+            CoderResult result = encoder.encode(input, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+        encoder.reset();
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the risk tier of every account up to date while the transfers are processed.
+ * It listens to the account changes of TransferService and evaluates only the changed account (riskTier() is O(1)),
+ * so "all High Risk accounts" is a set that is already there, instead of a scan over every account at report time.
+ * When the tier of an account changes, the TierChangeListeners are told.
+ * <p>
+ * The tier of a Fixed Deposit account also depends on the date, refresh() evaluates all accounts again for that.
+ */
+public class RiskEngine implements AccountChangeListener {
+    private final Map<String, RiskTier> tiers = new ConcurrentHashMap<>(); // Account ID to its current tier.
+    private final Map<RiskTier, Set<String>> accounts_by_tier = new EnumMap<>(RiskTier.class); // Tier to the IDs of its accounts.
+    private final Map<String, BankAccountTypeInterface> accounts = new ConcurrentHashMap<>(); // Registered accounts.
+    private final List<TierChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listener of the tier changes.
+     */
+    public interface TierChangeListener {
+        /**
+         * Called when the tier of an account changes.
+         * @param account The account.
+         * @param oldTier The tier before the change, null when the account is registered.
+         * @param newTier The tier after the change.
+         */
+        void tierChanged(BankAccountTypeInterface account, RiskTier oldTier, RiskTier newTier);
+    }
+
+    /**
+     * Constructs an engine without any accounts.
+     */
+    public RiskEngine() {
+        for (RiskTier tier : RiskTier.values()) {
+            accounts_by_tier.put(tier, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * Adds accounts to the engine and evaluates their tiers.
+     * @param newAccounts The accounts.
+     */
+    public void registerAll(Collection<? extends BankAccountTypeInterface> newAccounts) {
+        for (BankAccountTypeInterface account : newAccounts) {
+            accounts.put(account.getAccountID(), account);
+            accountChanged(account);
+        }
+    }
+
+    /**
+     * Adds a listener of the tier changes.
+     * @param listener The listener.
+     */
+    public void addTierChangeListener(TierChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Evaluates the tier of a changed account and moves it to its new tier set if the tier changed.
+     * Accounts that are not registered are ignored.
+     * @param account The changed account.
+     */
+    @Override
+    public void accountChanged(BankAccountTypeInterface account) {
+        String accountID = account.getAccountID();
+        if (!accounts.containsKey(accountID)) {
+            return;
+        }
+        RiskTier newTier = account.riskTier();
+        RiskTier oldTier = tiers.put(accountID, newTier);
+        if (oldTier == newTier) {
+            return;
+        }
+        if (oldTier != null) {
+            accounts_by_tier.get(oldTier).remove(accountID);
+        }
+        accounts_by_tier.get(newTier).add(accountID);
+        for (TierChangeListener listener : listeners) {
+            listener.tierChanged(account, oldTier, newTier);
+        }
+    }
+
+    /**
+     * Evaluates all accounts again, for the tiers that change with the date.
+     * It must not run while transfers change the accounts.
+     */
+    public void refresh() {
+        for (BankAccountTypeInterface account : accounts.values()) {
+            accountChanged(account);
+        }
+    }
+
+    /**
+     * Returns the current tier of an account.
+     * @param accountID The account ID.
+     * @return The tier, or null if the account is not registered.
+     */
+    public RiskTier tierOf(String accountID) {
+        return tiers.get(accountID);
+    }
+
+    /**
+     * Returns the IDs of the accounts in a tier. The set is a live read-only view, so reading it does not scan the other accounts.
+     * @param tier The tier.
+     * @return IDs of the accounts that are in the tier now.
+     */
+    public Set<String> accountsIn(RiskTier tier) {
+        return Collections.unmodifiableSet(accounts_by_tier.get(tier));
+    }
+}
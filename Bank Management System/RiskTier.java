@@ -0,0 +1,8 @@
+/**
+ * Risk level of an account, the first words of its risk evaluation ("High Risk: ...", "Medium Risk: ...", "Low Risk: ...").
+ */
+public enum RiskTier {
+    LOW,
+    MEDIUM,
+    HIGH
+}
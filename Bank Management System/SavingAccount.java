@@ -1,5 +1,4 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.math.RoundingMode;
 
 /**
  * Represents the Saving Account in the banking system.
@@ -9,10 +8,10 @@ import java.util.List;
 public class SavingAccount implements BankAccountTypeInterface{
     private final String accountID; //Unique identifier for the account.
     private final String account_type; //Type of the account. Always "Saving" for this class.
-    private double current_balance; //Current balance of the account.
+    private long current_balance; //Current balance of the account in cents.
     private final double interest_rate; //Interest rate for the account.
-    private final double min_balance; //Minimum balance of the account.
-    private List<Transaction> my_transaction_history; // History of transactions associated with this account.
+    private final long min_balance; //Minimum balance of the account in cents.
+    private final TransactionHistory my_transaction_history; // History of transactions associated with this account.
     private static final double PENALTY_RATE = 0.05;  // Penalty rate for violating the minimum balance requirement.given as 0.05 in the assignment
 
 
@@ -24,41 +23,67 @@ public class SavingAccount implements BankAccountTypeInterface{
      * @param interest_rate   Interest rate for the account.
      * @param min_balance     Minimum balance of the account.
      */
-    public SavingAccount(String accountID, double  current_balance, double interest_rate, double min_balance){
+    public SavingAccount(String accountID, Money  current_balance, double interest_rate, Money min_balance){
         this.account_type="Saving";
         this.accountID=accountID;
-        this.current_balance=current_balance;
+        this.current_balance=current_balance.getMinorUnits();
         this.interest_rate=interest_rate;
-        this.min_balance=min_balance;
-        this.my_transaction_history= new ArrayList<>();
+        this.min_balance=min_balance.getMinorUnits();
+        this.my_transaction_history= new TransactionHistory(accountID);
+    }
+
+    /**
+     * Constructs a view whose balance, rates and history are kept in an AccountStore.
+     * The view overrides the state accessors below, the fields of this class are not used.
+     * @param accountID Unique identifier for the account.
+     */
+    SavingAccount(String accountID){
+        this.account_type="Saving";
+        this.accountID=accountID;
+        this.current_balance=0;
+        this.interest_rate=0;
+        this.min_balance=0;
+        this.my_transaction_history=null;
+    }
+
+    // State accessors. All methods below read the state through them, so an AccountStore view can keep the state in its columns.
+    long balanceCents(){
+        return this.current_balance;
+    }
+    void setBalanceCents(long cents){
+        this.current_balance=cents;
+    }
+    long minBalanceCents(){
+        return this.min_balance;
     }
 
 
     // I also wrote only the ones that I do use from all possible getter and setter methods.
     // explained in the interface that Saving account implements
-    public void setCurrentBalance(double current_balance){
-        this.current_balance=current_balance;
+    public void setBalance(Money current_balance){
+        setBalanceCents(current_balance.getMinorUnits());
     }
-    public double getCurrentBalance(){
-        return this.current_balance;
+    public Money getBalance(){
+        return Money.ofMinorUnits(balanceCents());
     }
 
     /**
      * Deposits the amount into the account.
-     * Creates a transaction record for the deposit and adds it to the my_transaction_history list.
+     * Records the deposit in my_transaction_history.
      *
      * @param receiver The account that receives the deposit.
      * @param amount   The amount to deposit (must be positive).
      * Note: If the amount is negative, it throws and catches an InvalidAmountException internally.
      */
     @Override
-    public void deposit(BankAccountTypeInterface receiver, double amount)  {
+    public void deposit(BankAccountTypeInterface receiver, Money amount)  {
+        long cents=amount.getMinorUnits();
         try{
-            if(amount<0){
-                throw  new InvalidAmountException("Saving Account","Invalid amount for deposit.", amount);
+            if(cents<0){
+                throw  new InvalidAmountException("Saving Account","Invalid amount for deposit.", Money.toDouble(cents));
             }
-            my_transaction_history.add(new Transaction(receiver.getAccountID(), this.accountID,amount));
-            setCurrentBalance(getCurrentBalance()+amount);
+            getTransactionHistory().add(receiver.getAccountID(), this.accountID,cents);
+            setBalanceCents(balanceCents()+cents);
         }catch (InvalidAmountException e){
             System.out.println(e.getErrorDetails());
         }
@@ -68,88 +93,106 @@ public class SavingAccount implements BankAccountTypeInterface{
     /**
      * Withdraws a specified amount from the account.
      * Ensures that the withdrawal does not be less than the minimum balance .
-     * If the balance drops below the minimum, a penalty is applied.
+     * If the balance drops below the minimum, a penalty is applied. The penalty is rounded to cents with Money.PENALTY_ROUNDING.
      *
      * @param receiver The account to which the amount is transferred.
      * @param amount   The amount to withdraw (must be positive).
-     * @return true if the withdrawal is successful otherwise returns false.
-     * Note: If the amount is negative, it throws and catches an InvalidAmountException internally.
-     * If the withdrawal exceeds the available balance, it throws and catches an InsufficientFundsException internally.
+     * @param result   Filled with the details if the withdrawal is rejected.
+     * @return ACCEPTED if the withdrawal is successful otherwise the reason of the rejection.
+     * Note: A negative amount is rejected with INVALID_AMOUNT (the case of InvalidAmountException),
+     * an amount over the available balance with INSUFFICIENT_FUNDS (the case of InsufficientFundsException).
      */
     @Override
-    public boolean withdraw(BankAccountTypeInterface receiver, double amount)  {
-       try {
-           if (amount < 0) {
-               throw new InvalidAmountException("Saving Account", "Invalid amount for withdraw.", amount);
-           } else if (amount > current_balance + min_balance) {
-               throw new InsufficientFundsException("Saving Account", "Amount exceeds overdraft limit.", current_balance, amount, min_balance);
-           }
-       }catch (InvalidAmountException e) {
-           System.out.println(e.getErrorDetails());
-           return false;
-       }catch (InsufficientFundsException e) {
-           System.out.println(e.getErrorDetails());
-           return false;
+    public WithdrawOutcome tryWithdraw(BankAccountTypeInterface receiver, Money amount, WithdrawResult result)  {
+       long cents=amount.getMinorUnits();
+       long balance=balanceCents();
+       long minimum=minBalanceCents();
+       if (cents < 0) {
+           return result.rejectInvalidAmount("Saving Account", "Invalid amount for withdraw.", cents);
+       } else if (cents > balance + minimum) {
+           return result.rejectInsufficientFunds("Saving Account", "Amount exceeds overdraft limit.", balance, cents, minimum);
        }
-           if (current_balance-amount<min_balance){ // penalty will be applied
-               my_transaction_history.add(new Transaction(this.accountID,receiver.getAccountID(),-amount));
-               current_balance-=amount;
-               double penalty =(min_balance-current_balance)*PENALTY_RATE;
-               my_transaction_history.add(new Transaction(this.accountID,receiver.getAccountID(),-penalty));
-               current_balance-=penalty;
+       TransactionHistory history=getTransactionHistory();
+           if (balance-cents<minimum){ // penalty will be applied
+               history.add(this.accountID,receiver.getAccountID(),-cents);
+               balance-=cents;
+               long penalty =Money.multiply(minimum-balance, PENALTY_RATE, Money.PENALTY_ROUNDING);
+               history.add(this.accountID,receiver.getAccountID(),-penalty);
+               balance-=penalty;
 
            }
            else{
-               my_transaction_history.add(new Transaction(this.accountID,receiver.getAccountID(),-amount));
-               setCurrentBalance(getCurrentBalance()-amount);
+               history.add(this.accountID,receiver.getAccountID(),-cents);
+               balance-=cents;
 
            }
-           return true;
+           setBalanceCents(balance);
+           return result.accept();
        }
 
     /**
      * Evaluates the risk level of the account based on its balance transaction frequency and minimum balance.
-     * Prints the risk evaluation to the console and called inside  the displayAccountDetails function.
+     * Called inside the appendAccountDetails function.
+     * @return The risk evaluation message.
      */
     @Override
-    public void evaluateRisk() {
+    public String riskEvaluation() {
         String risk;
-        if(current_balance< (1.2)*min_balance){
-            risk = "High Risk: Balance is close to the minimum requirement.";
-
-        }
-        else if(my_transaction_history.size()>10){
-            risk="Medium Risk: Transaction frequency is over 10.";
-        }
-        else {
-            risk="Low Risk: Account is in stable.";
+        switch (riskTier()) {
+            case HIGH:
+                risk = "High Risk: Balance is close to the minimum requirement.";
+                break;
+            case MEDIUM:
+                risk="Medium Risk: Transaction frequency is over 10.";
+                break;
+            default:
+                risk="Low Risk: Account is in stable.";
         }
-        System.out.println(risk);
+        return risk;
 
 
     }
+
+    // explained in the interface that Saving account implements
+    @Override
+    public RiskTier riskTier() {
+        return riskTierOf(balanceCents(),minBalanceCents(),getTransactionHistory().size()); // size() is a counter, it does not read the history
+    }
+
     /**
-     * Displays the details of the account, including transaction history, current balance, interest rate and risk evaluation.
-     * This method internally calls `evaluateRisk` to determine the account's risk level.
+     * The risk rule of the Saving accounts, also used by the column scans of AccountStore.
+     * @param current_balance   Balance in cents.
+     * @param min_balance       Minimum balance in cents.
+     * @param transaction_count Number of transactions of the account.
+     * @return The risk tier.
+     */
+    static RiskTier riskTierOf(long current_balance, long min_balance, long transaction_count) {
+        if(current_balance*5< min_balance*6){ // balance < 1.2 * minimum balance
+            return RiskTier.HIGH;
+        }
+        else if(transaction_count>10){
+            return RiskTier.MEDIUM;
+        }
+        return RiskTier.LOW;
+    }
+    /**
+     * Appends the details of the account, including transaction history, current balance, interest rate and risk evaluation.
+     * This method internally calls `riskEvaluation` to determine the account's risk level.
      */
     @Override
-    public void displayAccountDetails() {
-
-            System.out.println("****************** Summary for Account "+this.accountID+" ******************");
-            for (Transaction t: my_transaction_history){
-                System.out.println(t);
-                System.out.println();
-            }
-            System.out.println();
-            System.out.println("Account Info");
-            String message= "Savings Account - Account Number: "+this.accountID+"\n"+
-                    "Balance: $"+((this.current_balance*10.0)/10)+"\n"+
-                    "Interest Rate: "+ (this.interest_rate*100)+"%";
-            System.out.println(message);
-            System.out.println();
-            System.out.println("Account Risk Evaluation");
-            System.out.print(this.account_type+" Account-");evaluateRisk();
-            System.out.println("************************************************************************************************************");
+    public void appendAccountDetails(StringBuilder out) {
+            String newline=ReportWriter.NEWLINE;
+            out.append("****************** Summary for Account ").append(this.accountID).append(" ******************").append(newline);
+            getTransactionHistory().appendReport(out,true);
+            out.append(newline);
+            out.append("Account Info").append(newline);
+            out.append("Savings Account - Account Number: ").append(this.accountID).append("\n")
+                    .append("Balance: $").append((Money.toDouble(balanceCents())*10.0)/10).append("\n")
+                    .append("Interest Rate: ").append(getInterestRate()*100).append("%").append(newline);
+            out.append(newline);
+            out.append("Account Risk Evaluation").append(newline);
+            out.append(this.account_type).append(" Account-").append(riskEvaluation()).append(newline);
+            out.append("************************************************************************************************************").append(newline);
         }
 
 
@@ -161,7 +204,12 @@ public class SavingAccount implements BankAccountTypeInterface{
      */
     @Override
     public boolean isHighValueAccount() {
-        return current_balance>10000;
+        return isHighValue(balanceCents());
+    }
+
+    // the high value rule on the raw balance, used by isHighValueAccount and AccountStore
+    static boolean isHighValue(long current_balance) {
+        return current_balance>10000*Money.MINOR_UNITS_PER_UNIT;
     }
 
     // explained in the interface that Saving account implements
@@ -170,14 +218,37 @@ public class SavingAccount implements BankAccountTypeInterface{
         return this.accountID;
     }
 
+    // explained in the interface that Saving account implements
+    @Override
+    public TransactionHistory getTransactionHistory() {
+        return this.my_transaction_history;
+    }
+
+    /**
+     * Retrieves the interest rate of the account.
+     * @return The interest rate.
+     */
+    public double getInterestRate() {
+        return this.interest_rate;
+    }
+
+    /**
+     * Retrieves the minimum balance of the account.
+     * @return The minimum balance.
+     */
+    public Money getMinBalance() {
+        return Money.ofMinorUnits(minBalanceCents());
+    }
+
     /**
      * Calculates the interest for the Saving account based on its current balance and interest rate.
      *
+     * @param rounding How the interest is rounded to cents.
      * @return The calculated interest amount.
      */
     @Override
-    public double Interest_calculation() {
-        return current_balance*interest_rate;
+    public Money calculateInterest(RoundingMode rounding) {
+        return Money.ofMinorUnits(Money.multiply(balanceCents(), getInterestRate(), rounding));
     }
 }
 
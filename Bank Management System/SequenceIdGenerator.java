@@ -0,0 +1,30 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the IDs from one global counter (1, 2, 3, ...).
+ * It is chosen with --ids sequence. The IDs are in the same order as the transactions, but all threads increment the same counter.
+ */
+public class SequenceIdGenerator implements TransactionIdGenerator {
+    private final AtomicLong sequence = new AtomicLong(); // The last generated ID.
+
+    @Override
+    public void nextId(long[] highBits, long[] lowBits, int row) {
+        highBits[row] = 0;
+        lowBits[row] = sequence.incrementAndGet();
+    }
+
+    @Override
+    public void observe(long highBits, long lowBits) {
+        sequence.accumulateAndGet(lowBits, Math::max);
+    }
+
+    @Override
+    public String mode() {
+        return "sequence";
+    }
+
+    @Override
+    public String format(long highBits, long lowBits) {
+        return Long.toString(lowBits);
+    }
+}
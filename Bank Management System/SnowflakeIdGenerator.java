@@ -0,0 +1,53 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates Snowflake style 64 bit IDs: 41 bits of milliseconds since 2024-01-01, 10 bits of node number and 12 bits of sequence.
+ * The IDs are sortable by time and unique across nodes, and up to 4096 IDs can be generated per millisecond on one node.
+ * If the sequence of a millisecond is used up, the generator continues on the next millisecond instead of waiting.
+ */
+public class SnowflakeIdGenerator implements TransactionIdGenerator {
+    private static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    private final long node; // Node number, between 0 and 1023.
+    private final AtomicLong last_state = new AtomicLong(); // (milliseconds << SEQUENCE_BITS) | sequence of the last ID.
+
+    /**
+     * Constructs a generator for a node.
+     * @param node The node number, between 0 and 1023.
+     */
+    public SnowflakeIdGenerator(int node) {
+        if (node < 0 || node >= (1 << NODE_BITS)) {
+            throw new IllegalArgumentException("Node must be between 0 and " + ((1 << NODE_BITS) - 1) + ": " + node);
+        }
+        this.node = node;
+    }
+
+    @Override
+    public void nextId(long[] highBits, long[] lowBits, int row) {
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long state;
+        long next;
+        do {
+            state = last_state.get();
+            // same or older millisecond (or clock went back): take the next sequence after the last state
+            next = Math.max(now, state + 1);
+        } while (!last_state.compareAndSet(state, next));
+
+        long millis = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        highBits[row] = 0;
+        lowBits[row] = (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+
+    @Override
+    public String mode() {
+        return "snowflake";
+    }
+
+    @Override
+    public String format(long highBits, long lowBits) {
+        return Long.toString(lowBits);
+    }
+}
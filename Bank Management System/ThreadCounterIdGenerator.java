@@ -0,0 +1,37 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the IDs from a counter of the current thread, so the threads never touch a shared variable.
+ * The high bits of the ID hold the number of the thread and the low bits hold the counter,
+ * so the IDs are unique and they increase monotonically inside each thread. They are printed as "thread-counter".
+ */
+public class ThreadCounterIdGenerator implements TransactionIdGenerator {
+    private final AtomicInteger thread_numbers = new AtomicInteger(); // Gives a number to every thread that uses the generator.
+    private final ThreadLocal<long[]> counters = ThreadLocal.withInitial(() -> new long[]{thread_numbers.incrementAndGet(), 0}); // {thread number, last counter}
+
+    @Override
+    public void nextId(long[] highBits, long[] lowBits, int row) {
+        long[] counter = counters.get();
+        highBits[row] = counter[0];
+        lowBits[row] = ++counter[1];
+    }
+
+    /**
+     * Restored IDs may belong to thread numbers that are given again in this run,
+     * so new threads get numbers after the biggest restored one.
+     */
+    @Override
+    public void observe(long highBits, long lowBits) {
+        thread_numbers.accumulateAndGet((int) highBits, Math::max);
+    }
+
+    @Override
+    public String mode() {
+        return "thread";
+    }
+
+    @Override
+    public String format(long highBits, long lowBits) {
+        return highBits + "-" + lowBits;
+    }
+}
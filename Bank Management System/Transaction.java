@@ -1,34 +1,82 @@
-import java.util.UUID;
-
 /**
  * Represents a transaction within the banking system.
  * This class encapsulates details about a transaction, including the transaction ID, sender ID,
  * receiver ID and the transaction amount. Each transaction is assigned a unique ID upon creation.
+ * It also has the event sequence number and the time (epoch milliseconds) it was recorded at,
+ * which order the transactions of all accounts for the queries of LedgerQueries.
  */
 public class Transaction {
     private final String transactionId;   // Unique identifier for the transaction.
     private final String senderId;       // ID of the account initiating the transaction.
     private final String receiverId;     //  ID of the account receiving the transaction.
     private final double amount;         // The amount involved in the transaction.
+    private final long sequence;         // Event sequence number, increasing over all accounts.
+    private final long timestamp;        // Time of the transaction in epoch milliseconds.
 
 
     /**
      * Constructs a new Transaction with the specified sender, receiver and amount.
-     * A unique transaction ID is automatically generated.
+     * A unique transaction ID is automatically generated by the ID generator of TransactionHistory,
+     * and the transaction gets the next event sequence number and the time of BankClock.
      *
      * @param senderId    The ID of the account initiating the transaction.
      * @param receiverId  The ID of the account receiving the transaction.
      * @param amount      The amount of the transaction.
      */
     public Transaction( String senderId, String receiverId, double amount) {
-        this.transactionId = UUID.randomUUID().toString();
+        this.transactionId = TransactionHistory.getIdGenerator().nextFormattedId();
         this.senderId = senderId;
         this.receiverId = receiverId;
         this.amount = amount;
+        this.sequence = TransactionHistory.nextSequence();
+        this.timestamp = BankClock.get().millis();
 
     }
 
-    //Did not write any getter or setter method because there were no use of it.
+    /**
+     * Constructs a Transaction with an already known transaction ID.
+     * Used when a transaction is read back from a file.
+     *
+     * @param transactionId The ID of the transaction.
+     * @param senderId      The ID of the account initiating the transaction.
+     * @param receiverId    The ID of the account receiving the transaction.
+     * @param amount        The amount of the transaction.
+     * @param sequence      The event sequence number of the transaction.
+     * @param timestamp     The time of the transaction in epoch milliseconds.
+     */
+    public Transaction(String transactionId, String senderId, String receiverId, double amount, long sequence, long timestamp) {
+        this.transactionId = transactionId;
+        this.senderId = senderId;
+        this.receiverId = receiverId;
+        this.amount = amount;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    // Getters for the queries, there are no setters because a transaction does not change.
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public String getReceiverId() {
+        return receiverId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
 
     /**
      * Returns a string representation of the transaction including transaction details.
@@ -43,4 +91,22 @@ public class Transaction {
         return message;
 
     }
+
+    /**
+     * Appends the same text as toString() for a transaction that is stored in columns, without creating a Transaction or a Formatter.
+     * Used by the reports, which print many transactions.
+     *
+     * @param out           The text that the transaction is appended to.
+     * @param transactionId The ID of the transaction.
+     * @param senderId      The ID of the account initiating the transaction.
+     * @param receiverId    The ID of the account receiving the transaction.
+     * @param amount        The amount of the transaction in cents.
+     */
+    public static void appendTo(StringBuilder out, String transactionId, String senderId, String receiverId, long amount) {
+        out.append("------------------------------------\n");
+        out.append("Transaction UD: ").append(transactionId).append("  \nSender: ").append(senderId)
+                .append(" \nReceiver: ").append(receiverId).append(" \nAmount: ");
+        Money.appendOneDecimal(out, amount).append(" \n");
+        out.append("------------------------------------");
+    }
 }
@@ -0,0 +1,954 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Holds the transaction history of a single account.
+ * The transactions are stored column by column in primitive arrays (transaction ID as two longs, sender index, receiver index, amount in cents,
+ * event sequence and timestamp), so recording a transaction does not create any object. Account IDs are stored as their AccountIndex numbers.
+ * Transaction objects are only created when the history is iterated, the reports are appended straight from the columns.
+ * <p>
+ * The history is also the event log of the account: every row gets a sequence number (increasing over all accounts)
+ * and the time of BankClock in milliseconds (never going back within an account). The amounts are the changes of the
+ * balance (withdrawals and penalties are negative), so the balance at an earlier point is the current balance minus
+ * the amounts after that point. A sparse index keeps the sequence, the timestamp and the sum of the amounts before
+ * every 64th row, so the queries find their block with a binary search and read at most one block of rows,
+ * wherever the rows are stored. The entries of the spilled or archived rows move to the index file of the account
+ * together with the position of their row in the spill or archive file, so only the entries of the rows in memory
+ * stay on the heap and the memory of a history does not grow with its transactions.
+ * <p>
+ * By default every transaction is kept in memory.
+ * When the streaming mode is enabled, only a small batch of transactions is kept in memory and the older ones are
+ * appended to a spill file of the account, so the memory usage depends on the number of accounts and not on the number of transactions.
+ * Iterating over the history returns the spilled transactions first and then the ones in memory, so the order is kept.
+ * <p>
+ * When the archive mode is enabled instead, the last N transactions always stay in memory. When a segment of older
+ * transactions has collected behind them, the segment is compressed (column by column, the IDs as differences, with
+ * Deflater) and appended to the archive file of the account, and the rows in memory move to the front of the columns.
+ * size() is a running counter in every mode, so the risk rules never read the spilled or archived transactions.
+ */
+public class TransactionHistory implements Iterable<Transaction> {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int INDEX_INTERVAL = 64; // Rows between two entries of the sparse index.
+    private static final int INDEX_SEQUENCE = 0; // Fields of an entry of the sparse index, in the order of the index file.
+    private static final int INDEX_TIMESTAMP = 1;
+    private static final int INDEX_NET_CENTS = 2;
+    private static final int INDEX_OFFSET = 3; // Byte offset of the line of the row in the spill file, or of its segment in the archive file.
+    private static final int INDEX_RECORD_SIZE = 32; // Bytes of an entry in the index file.
+    private static final long[] NO_LONGS = new long[0]; // Shared by the empty histories, the columns are allocated by the first row.
+    private static final int[] NO_INTS = new int[0];
+    private static TransactionIdGenerator id_generator = new UuidIdGenerator(); // Source of the transaction IDs, random UUIDs unless --ids chooses another mode.
+    private static final AtomicLong event_sequence = new AtomicLong(); // Last sequence number given to a row, of any account.
+
+    private static Path spill_directory; // Directory that holds the spill files. null means streaming mode is off.
+    private static int spill_batch_size; // How many transactions are kept in memory before they are written to the spill file.
+    private static final int MIN_ARCHIVE_SEGMENT = 256; // Fewest rows in a compressed archive segment.
+    private static Path archive_directory; // Directory that holds the archive files. null means the archive mode is off.
+    private static int archive_keep; // Newest transactions that always stay in memory.
+    private static int archive_segment; // Rows compressed into one segment of the archive file.
+    private static volatile boolean holding_rows; // true while WaveTransferScheduler applies a window, see holdRows().
+
+    private final String accountID; // ID of the account that this history belongs to.
+    private long[] id_high_bits; // Columns of the transactions that are in memory.
+    private long[] id_low_bits;
+    private int[] sender_indices;
+    private int[] receiver_indices;
+    private long[] amounts; // Amounts in cents.
+    private long[] sequences;
+    private long[] timestamps; // Epoch milliseconds.
+    private int pending_count; // Number of transactions in memory (not written to the spill file yet).
+    private long transaction_count; // Total number of transactions, including the spilled ones.
+    private long net_cents; // Sum of all amounts, including the spilled ones.
+    private long last_timestamp; // Timestamp of the last row, the next rows never get an earlier one.
+    private boolean spilled; // true if the spill file of this history is already created in this run.
+    private boolean archived; // true if the archive file of this history is already created in this run.
+
+    private long[] index_sequences = NO_LONGS; // Sparse index entries of the rows in memory, entry k describes row k * INDEX_INTERVAL
+    private long[] index_timestamps = NO_LONGS; // and is at k - disk_index_count.
+    private long[] index_net_cents = NO_LONGS; // Sum of the amounts before the row.
+    private int index_count; // All entries of the sparse index, including the ones in the index file.
+    private int disk_index_count; // Entries in the index file, the ones of the spilled or archived rows.
+    private long held_from = -1; // First held row, -1 if no row is held. The queries do not see the held rows.
+
+    /**
+     * Enables the streaming mode for all histories.
+     * @param directory The directory where the spill files will be written. It is created if it does not exist.
+     * @param batchSize Number of transactions that are kept in memory for each account before spilling.
+     * @throws IOException If the directory can not be created.
+     */
+    public static void enableSpilling(Path directory, int batchSize) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Spill batch size must be positive: " + batchSize);
+        }
+        if (archive_directory != null) {
+            throw new IllegalStateException("The streaming mode can not be used with the archive mode.");
+        }
+        Files.createDirectories(directory);
+        spill_directory = directory;
+        spill_batch_size = batchSize;
+    }
+
+    /**
+     * Enables the archive mode for all histories: only the newest transactions are kept in memory and the older ones are
+     * compressed into the archive file of the account. Between keepLast and keepLast + segment rows stay in memory,
+     * where a segment is keepLast rows but at least 256.
+     * @param directory The directory where the archive files will be written. It is created if it does not exist.
+     * @param keepLast  Number of newest transactions that always stay in memory.
+     * @throws IOException If the directory can not be created.
+     */
+    public static void enableArchiving(Path directory, int keepLast) throws IOException {
+        if (keepLast <= 0) {
+            throw new IllegalArgumentException("Number of transactions kept in memory must be positive: " + keepLast);
+        }
+        if (spill_directory != null) {
+            throw new IllegalStateException("The archive mode can not be used with the streaming mode.");
+        }
+        Files.createDirectories(directory);
+        archive_directory = directory;
+        archive_keep = keepLast;
+        archive_segment = Math.max(keepLast, MIN_ARCHIVE_SEGMENT);
+    }
+
+    /**
+     * Starts or ends holding the new rows: while they are held, add() leaves the transaction ID, the account indices and
+     * the sequence number of a row empty (0) and the rows stay in memory, so WaveTransferScheduler can fill them in file
+     * order with completeHeldRows() after the rows were added in parallel. Only the scheduler uses it.
+     * The statement and balance-as-of queries do not see the held rows until releaseRows() is called, and the scheduler
+     * fills and releases the rows of an account while it holds the lock of the account, like the queries.
+     * @param hold true to start holding, false to end it (releaseRows() must then be called on the histories that got rows).
+     */
+    static void holdRows(boolean hold) {
+        holding_rows = hold;
+    }
+
+    /**
+     * Changes the generator of the transaction IDs. It should be called before any transaction is recorded,
+     * because the IDs that are already stored are printed with the current generator.
+     * @param generator The new generator.
+     */
+    public static void setIdGenerator(TransactionIdGenerator generator) {
+        id_generator = generator;
+    }
+
+    /**
+     * Returns the generator of the transaction IDs.
+     * @return The current generator.
+     */
+    public static TransactionIdGenerator getIdGenerator() {
+        return id_generator;
+    }
+
+    /**
+     * Returns the next event sequence number, for a Transaction that is created outside a history.
+     * @return The sequence number.
+     */
+    static long nextSequence() {
+        return event_sequence.incrementAndGet();
+    }
+
+    /**
+     * Returns the last event sequence number that is given to a transaction of any account.
+     * @return The sequence number, 0 if there is no transaction yet.
+     */
+    public static long lastSequence() {
+        return event_sequence.get();
+    }
+
+    /**
+     * Constructs an empty history for the given account.
+     * @param accountID ID of the account that owns the history.
+     */
+    public TransactionHistory(String accountID) {
+        this.accountID = accountID;
+        this.id_high_bits = NO_LONGS;
+        this.id_low_bits = NO_LONGS;
+        this.sender_indices = NO_INTS;
+        this.receiver_indices = NO_INTS;
+        this.amounts = NO_LONGS;
+        this.sequences = NO_LONGS;
+        this.timestamps = NO_LONGS;
+    }
+
+    /**
+     * Adds a transaction to the end of the history, with the next event sequence number and the time of BankClock.
+     * In streaming mode the pending batch is written to the spill file when it becomes full.
+     *
+     * @param senderID   The ID of the account initiating the transaction.
+     * @param receiverID The ID of the account receiving the transaction.
+     * @param amount     The amount of the transaction in cents.
+     */
+    public void add(String senderID, String receiverID, long amount) {
+        add(senderID, receiverID, amount, BankClock.get().millis());
+    }
+
+    /**
+     * Adds a transaction that happened at the given time, like a deposit that HotAccountCombiner folds later.
+     * The rows stay in time order: a time before the last row gets the time of the last row.
+     *
+     * @param senderID   The ID of the account initiating the transaction.
+     * @param receiverID The ID of the account receiving the transaction.
+     * @param amount     The amount of the transaction in cents.
+     * @param timestamp  Epoch milliseconds of the transaction.
+     */
+    public void add(String senderID, String receiverID, long amount, long timestamp) {
+        if (pending_count == id_low_bits.length) {
+            grow();
+        }
+        if (holding_rows) {
+            if (held_from < 0) {
+                held_from = transaction_count;
+            }
+            id_high_bits[pending_count] = 0;
+            id_low_bits[pending_count] = 0;
+            sender_indices[pending_count] = 0;
+            receiver_indices[pending_count] = 0;
+            sequences[pending_count] = 0;
+        } else {
+            id_generator.nextId(id_high_bits, id_low_bits, pending_count);
+            sender_indices[pending_count] = AccountIndex.indexOf(senderID);
+            receiver_indices[pending_count] = AccountIndex.indexOf(receiverID);
+            sequences[pending_count] = event_sequence.incrementAndGet();
+        }
+        amounts[pending_count] = amount;
+        timestamps[pending_count] = Math.max(last_timestamp, timestamp);
+        rowAdded();
+    }
+
+    /**
+     * Returns the number of transactions in the history.
+     * Spilled and archived transactions are counted too, so it can be used without reading the files.
+     * @return Total number of transactions.
+     */
+    public long size() {
+        return transaction_count;
+    }
+
+    /**
+     * Returns the sum of all amounts in the history, which is how much the transactions changed the balance.
+     * It is a running counter like size().
+     * @return The sum in cents.
+     */
+    public long netCents() {
+        return net_cents;
+    }
+
+    /**
+     * Sums the amounts of the transactions up to a time.
+     * @param timestamp Epoch milliseconds, the transactions at this time are included.
+     * @return The sum in cents.
+     */
+    public long netCentsUpTo(long timestamp) {
+        return netCentsUpTo(INDEX_TIMESTAMP, timestamp);
+    }
+
+    /**
+     * Sums the amounts of the transactions up to an event sequence number.
+     * @param sequence The sequence number, the transaction with this number is included.
+     * @return The sum in cents.
+     */
+    public long netCentsUpToSequence(long sequence) {
+        return netCentsUpTo(INDEX_SEQUENCE, sequence);
+    }
+
+    /**
+     * Returns the transactions in a time range after a sequence number, so a statement can be read page by page.
+     * The first row is found with the sparse index, only the block before it and the returned rows are read.
+     * @param fromTimestamp Epoch milliseconds, the first included time.
+     * @param toTimestamp   Epoch milliseconds, the first time that is not included.
+     * @param afterSequence Only the transactions after this sequence number are returned, 0 for all of them.
+     * @param limit         Most transactions that are returned.
+     * @return The transactions in the order they are added.
+     */
+    public List<Transaction> range(long fromTimestamp, long toTimestamp, long afterSequence, int limit) {
+        List<Transaction> page = new ArrayList<>();
+        long first = Math.max(firstRowAtLeast(INDEX_TIMESTAMP, fromTimestamp), firstRowAtLeast(INDEX_SEQUENCE, afterSequence + 1));
+        if (first >= visibleRows()) {
+            return page;
+        }
+        try (RowCursor cursor = new RowCursor(first)) {
+            while (page.size() < limit && cursor.next() && cursor.timestamp < toTimestamp) {
+                page.add(cursor.toTransaction());
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Writes the pending transactions to the spill file and clears them from memory.
+     * A spilled row is "idHigh,idLow,senderID,receiverID,cents,sequence,timestamp", so it can be read back without losing anything.
+     * Does nothing if the streaming mode is off.
+     */
+    public void flush() {
+        if (spill_directory == null || pending_count == 0) {
+            return;
+        }
+        long start = transaction_count - pending_count;
+        int entries = index_count - disk_index_count; // all entries in memory belong to the pending rows
+        long[] entryOffsets = new long[entries];
+        try {
+            // the first flush in a run truncates the file that may be left from an older run
+            long offset = spilled ? Files.size(spillFile()) : 0;
+            StandardOpenOption mode = spilled ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            byte[] newline = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(spillFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode))) {
+                for (int i = 0; i < pending_count; i++) {
+                    if ((start + i) % INDEX_INTERVAL == 0) {
+                        entryOffsets[(int) ((start + i) / INDEX_INTERVAL) - disk_index_count] = offset;
+                    }
+                    byte[] line = (id_high_bits[i] + "," + id_low_bits[i] + "," + AccountIndex.idOf(sender_indices[i]) + ","
+                            + AccountIndex.idOf(receiver_indices[i]) + "," + amounts[i] + "," + sequences[i] + "," + timestamps[i]).getBytes(StandardCharsets.UTF_8);
+                    out.write(line);
+                    out.write(newline);
+                    offset += line.length + newline.length;
+                }
+            }
+            moveIndexEntries(entries, entryOffsets);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing spill file of account " + accountID, e);
+        }
+        spilled = true;
+        pending_count = 0;
+    }
+
+    /**
+     * Returns an iterator over all transactions in the order they are added.
+     * Spilled and archived transactions are read back from the disk one by one.
+     * @return Iterator over the history.
+     */
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new CursorIterator(new RowCursor(0));
+    }
+
+    /**
+     * Appends every transaction in the format of Transaction.toString(), each followed by a line separator.
+     * The rows are appended straight from the columns.
+     * @param out       The text that the transactions are appended to.
+     * @param blankLine true to add an empty line after every transaction.
+     */
+    public void appendReport(StringBuilder out, boolean blankLine) {
+        String newline = ReportWriter.NEWLINE;
+        try (RowCursor cursor = new RowCursor(0)) {
+            while (cursor.next()) {
+                Transaction.appendTo(out, id_generator.format(cursor.id_high, cursor.id_low), AccountIndex.idOf(cursor.sender),
+                        AccountIndex.idOf(cursor.receiver), cursor.amount);
+                out.append(newline);
+                if (blankLine) {
+                    out.append(newline);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every transaction (spilled, archived and in memory) to a snapshot.
+     * The account references are written as AccountIndex numbers, the snapshot must also contain the AccountIndex names.
+     * @param out The snapshot stream.
+     * @throws IOException If the snapshot or the spill file can not be accessed.
+     */
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeLong(transaction_count);
+        try (RowCursor cursor = new RowCursor(0)) {
+            while (cursor.next()) {
+                out.writeLong(cursor.id_high);
+                out.writeLong(cursor.id_low);
+                out.writeInt(cursor.sender);
+                out.writeInt(cursor.receiver);
+                out.writeLong(cursor.amount);
+                out.writeLong(cursor.sequence);
+                out.writeLong(cursor.timestamp);
+            }
+        }
+    }
+
+    /**
+     * Appends the transactions that are written by writeSnapshot to this history.
+     * The restored IDs and sequence numbers are shown to their generators, so the new ones do not repeat them.
+     * @param in           The snapshot stream.
+     * @param indexMapping AccountIndex number in the snapshot to AccountIndex number in this program.
+     * @param withEvents   false for the snapshots before version 3, which have no sequence numbers and timestamps.
+     *                     The rows are then given new sequence numbers and the time of the restore.
+     * @throws IOException If the snapshot can not be read.
+     */
+    public void readSnapshot(DataInputStream in, int[] indexMapping, boolean withEvents) throws IOException {
+        long count = in.readLong();
+        long now = BankClock.get().millis();
+        for (long n = 0; n < count; n++) {
+            if (pending_count == id_low_bits.length) {
+                grow();
+            }
+            id_high_bits[pending_count] = in.readLong();
+            id_low_bits[pending_count] = in.readLong();
+            sender_indices[pending_count] = indexMapping[in.readInt()];
+            receiver_indices[pending_count] = indexMapping[in.readInt()];
+            amounts[pending_count] = in.readLong();
+            if (withEvents) {
+                sequences[pending_count] = in.readLong();
+                timestamps[pending_count] = in.readLong();
+                event_sequence.accumulateAndGet(sequences[pending_count], Math::max);
+            } else {
+                sequences[pending_count] = event_sequence.incrementAndGet();
+                timestamps[pending_count] = Math.max(last_timestamp, now);
+            }
+            id_generator.observe(id_high_bits[pending_count], id_low_bits[pending_count]);
+            rowAdded();
+        }
+    }
+
+    /**
+     * Counts the row that is just written to the pending columns, indexes it if it starts a block, and releases the
+     * rows to the spill file or the archive unless they are held.
+     */
+    private void rowAdded() {
+        int row = pending_count;
+        if (transaction_count % INDEX_INTERVAL == 0) {
+            int entry = index_count - disk_index_count;
+            if (entry == index_sequences.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, entry * 2);
+                index_sequences = Arrays.copyOf(index_sequences, capacity);
+                index_timestamps = Arrays.copyOf(index_timestamps, capacity);
+                index_net_cents = Arrays.copyOf(index_net_cents, capacity);
+            }
+            index_sequences[entry] = sequences[row];
+            index_timestamps[entry] = timestamps[row];
+            index_net_cents[entry] = net_cents;
+            index_count++;
+        }
+        net_cents += amounts[row];
+        last_timestamp = timestamps[row];
+        pending_count++;
+        transaction_count++;
+        if (!holding_rows) {
+            releaseRows();
+        }
+    }
+
+    /**
+     * Fills held rows of one transfer, which must still be in memory, with the next transaction IDs, the indices of
+     * the accounts and the next sequence numbers, as add() would have done.
+     * @param firstRow   The first row, counted from the start of the history.
+     * @param count      Number of rows.
+     * @param senderID   The sender of the transfer.
+     * @param receiverID The receiver of the transfer.
+     */
+    void completeHeldRows(long firstRow, int count, String senderID, String receiverID) {
+        long start = transaction_count - pending_count;
+        for (long row = firstRow; row < firstRow + count; row++) {
+            int i = (int) (row - start);
+            id_generator.nextId(id_high_bits, id_low_bits, i);
+            sender_indices[i] = AccountIndex.indexOf(senderID);
+            receiver_indices[i] = AccountIndex.indexOf(receiverID);
+            sequences[i] = event_sequence.incrementAndGet();
+            if (row % INDEX_INTERVAL == 0) {
+                index_sequences[(int) (row / INDEX_INTERVAL) - disk_index_count] = sequences[i]; // held rows and their entries are in memory
+            }
+        }
+    }
+
+    /**
+     * Makes the held rows visible, then spills the pending batch if it is full, or archives the oldest segments while
+     * whole segments have collected behind the kept rows. Called after every row, and by WaveTransferScheduler after the
+     * held rows are filled.
+     */
+    void releaseRows() {
+        held_from = -1;
+        if (spill_directory != null && pending_count >= spill_batch_size) {
+            flush();
+        } else if (archive_directory != null) {
+            while (pending_count >= archive_keep + archive_segment) {
+                archiveOldest(archive_segment);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows the queries can see: all rows, or the rows before the held ones.
+     */
+    private long visibleRows() {
+        return held_from < 0 ? transaction_count : held_from;
+    }
+
+    /**
+     * Sums the amounts up to a key (timestamp or sequence, both never decrease within a history).
+     * The block is found in the sparse index, then only its rows are read.
+     */
+    private long netCentsUpTo(int field, long key) {
+        long sum;
+        int block;
+        try (IndexReader index = new IndexReader()) {
+            block = lastEntry(index, field, key, true);
+            if (block < 0) {
+                return 0;
+            }
+            sum = index.field(block, INDEX_NET_CENTS);
+        }
+        try (RowCursor cursor = new RowCursor((long) block * INDEX_INTERVAL)) {
+            for (int i = 0; i < INDEX_INTERVAL && cursor.next(); i++) {
+                if ((field == INDEX_TIMESTAMP ? cursor.timestamp : cursor.sequence) > key) {
+                    break;
+                }
+                sum += cursor.amount;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the first row whose key (timestamp or sequence) is at least the given one.
+     * @return The row, or size() if there is none.
+     */
+    private long firstRowAtLeast(int field, long key) {
+        // the row is in the block after the last block that starts below the key, or at the start of the next block
+        int block;
+        try (IndexReader index = new IndexReader()) {
+            block = lastEntry(index, field, key, false);
+        }
+        if (block < 0) {
+            return 0;
+        }
+        long row = (long) block * INDEX_INTERVAL;
+        try (RowCursor cursor = new RowCursor(row)) {
+            while (cursor.next() && (field == INDEX_TIMESTAMP ? cursor.timestamp : cursor.sequence) < key) {
+                row++;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Binary search in the sparse index.
+     * @return The last entry whose key is below the given one (or equal to it if inclusive), -1 if there is none.
+     */
+    private int lastEntry(IndexReader index, int field, long key, boolean inclusive) {
+        int low = 0;
+        // the entries of held rows have no sequence yet
+        int high = (int) Math.min(index_count, (visibleRows() + INDEX_INTERVAL - 1) / INDEX_INTERVAL) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = index.field(middle, field);
+            if (middleKey < key || inclusive && middleKey == key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Appends the oldest entries in memory, whose rows just left memory, to the index file with the offsets of their rows.
+     * @param moved   Number of entries.
+     * @param offsets Offset of the row of every entry in the spill or archive file.
+     */
+    private void moveIndexEntries(int moved, long[] offsets) throws IOException {
+        if (moved == 0) {
+            return;
+        }
+        // the first entries in a run truncate the file that may be left from an older run
+        StandardOpenOption mode = disk_index_count > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)))) {
+            for (int i = 0; i < moved; i++) {
+                out.writeLong(index_sequences[i]);
+                out.writeLong(index_timestamps[i]);
+                out.writeLong(index_net_cents[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+        int kept = index_count - disk_index_count - moved;
+        System.arraycopy(index_sequences, moved, index_sequences, 0, kept);
+        System.arraycopy(index_timestamps, moved, index_timestamps, 0, kept);
+        System.arraycopy(index_net_cents, moved, index_net_cents, 0, kept);
+        disk_index_count += moved;
+    }
+
+    /**
+     * Compresses the oldest rows into a segment at the end of the archive file and moves the other rows to the front.
+     * A segment is "rows, compressed length, compressed bytes". The compressed bytes hold one column after the other,
+     * the ID, sequence and timestamp columns as differences to the previous row, so the increasing values compress well.
+     */
+    private void archiveOldest(int rows) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(rows * 8);
+        try {
+            try (DataOutputStream columns = new DataOutputStream(new DeflaterOutputStream(compressed))) {
+                writeDifferences(columns, id_high_bits, rows);
+                writeDifferences(columns, id_low_bits, rows);
+                for (int i = 0; i < rows; i++) {
+                    columns.writeInt(sender_indices[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    columns.writeInt(receiver_indices[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    columns.writeLong(amounts[i]);
+                }
+                writeDifferences(columns, sequences, rows);
+                writeDifferences(columns, timestamps, rows);
+            }
+            // the first segment in a run truncates the file that may be left from an older run
+            long offset = archived ? Files.size(archiveFile()) : 0;
+            StandardOpenOption mode = archived ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            try (DataOutputStream file = new DataOutputStream(Files.newOutputStream(archiveFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode))) {
+                file.writeInt(rows);
+                file.writeInt(compressed.size());
+                compressed.writeTo(file);
+            }
+            // the entries of the archived rows point to the segment
+            int moved = (int) ((transaction_count - pending_count + rows + INDEX_INTERVAL - 1) / INDEX_INTERVAL) - disk_index_count;
+            long[] entryOffsets = new long[moved];
+            Arrays.fill(entryOffsets, offset);
+            moveIndexEntries(moved, entryOffsets);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing archive file of account " + accountID, e);
+        }
+        archived = true;
+        int kept = pending_count - rows;
+        System.arraycopy(id_high_bits, rows, id_high_bits, 0, kept);
+        System.arraycopy(id_low_bits, rows, id_low_bits, 0, kept);
+        System.arraycopy(sender_indices, rows, sender_indices, 0, kept);
+        System.arraycopy(receiver_indices, rows, receiver_indices, 0, kept);
+        System.arraycopy(amounts, rows, amounts, 0, kept);
+        System.arraycopy(sequences, rows, sequences, 0, kept);
+        System.arraycopy(timestamps, rows, timestamps, 0, kept);
+        pending_count = kept;
+    }
+
+    private static void writeDifferences(DataOutputStream out, long[] column, int rows) throws IOException {
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            out.writeLong(column[i] - previous);
+            previous = column[i];
+        }
+    }
+
+    private static void readDifferences(DataInputStream in, long[] column, int rows) throws IOException {
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous += in.readLong();
+            column[i] = previous;
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, id_low_bits.length * 2);
+        id_high_bits = Arrays.copyOf(id_high_bits, capacity);
+        id_low_bits = Arrays.copyOf(id_low_bits, capacity);
+        sender_indices = Arrays.copyOf(sender_indices, capacity);
+        receiver_indices = Arrays.copyOf(receiver_indices, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+    }
+
+    private Path spillFile() {
+        return spill_directory.resolve(accountID + ".spill");
+    }
+
+    private Path archiveFile() {
+        return archive_directory.resolve(accountID + ".archive");
+    }
+
+    private Path indexFile() {
+        return (spill_directory != null ? spill_directory : archive_directory).resolve(accountID + ".index");
+    }
+
+    /**
+     * Reads the entries of the sparse index, from the index file for the spilled or archived rows and from memory for
+     * the others. The index file is opened by the first entry that is read from it.
+     */
+    private final class IndexReader implements Closeable {
+        private FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+
+        /**
+         * Returns one field of an entry.
+         * @param entry The entry, it describes row entry * INDEX_INTERVAL.
+         * @param field INDEX_SEQUENCE, INDEX_TIMESTAMP, INDEX_NET_CENTS or INDEX_OFFSET (only for the entries in the file).
+         */
+        long field(int entry, int field) {
+            if (entry >= disk_index_count) {
+                int i = entry - disk_index_count;
+                switch (field) {
+                    case INDEX_SEQUENCE:
+                        return index_sequences[i];
+                    case INDEX_TIMESTAMP:
+                        return index_timestamps[i];
+                    case INDEX_NET_CENTS:
+                        return index_net_cents[i];
+                    default:
+                        throw new IllegalArgumentException("The row of entry " + entry + " is in memory and has no file offset.");
+                }
+            }
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(indexFile(), StandardOpenOption.READ);
+                }
+                long position = (long) entry * INDEX_RECORD_SIZE + (long) field * Long.BYTES;
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Index file of account " + accountID + " ends before entry " + entry);
+                    }
+                }
+                return buffer.getLong(0);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Error reading index file of account " + accountID, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of this history in order from a given row: first from the spill file or the archive file
+     * (starting at the block of the row, found from the index file), then from memory.
+     * After next() returns true the fields hold the columns of the row.
+     * The history must not change while a cursor is open.
+     */
+    private final class RowCursor implements Closeable {
+        private long row; // Next row to read.
+        private BufferedReader spill_reader; // Open while the rows come from the spill file.
+        private DataInputStream archive_reader; // Open while the rows come from the archive file.
+        private long[] segment_id_highs = NO_LONGS; // Columns of the current archive segment.
+        private long[] segment_id_lows = NO_LONGS;
+        private int[] segment_senders = NO_INTS;
+        private int[] segment_receivers = NO_INTS;
+        private long[] segment_amounts = NO_LONGS;
+        private long[] segment_sequences = NO_LONGS;
+        private long[] segment_timestamps = NO_LONGS;
+        private int segment_rows; // Rows in the current segment.
+        private int segment_row; // Next row in the segment.
+        long id_high;
+        long id_low;
+        int sender;
+        int receiver;
+        long amount;
+        long sequence;
+        long timestamp;
+
+        RowCursor(long firstRow) {
+            this.row = firstRow;
+            if (firstRow >= memoryStart()) {
+                return;
+            }
+            // the entry of the block of the row is in the index file, with the position of the block
+            long blockRow = firstRow - firstRow % INDEX_INTERVAL;
+            long offset;
+            try (IndexReader index = new IndexReader()) {
+                offset = index.field((int) (blockRow / INDEX_INTERVAL), INDEX_OFFSET);
+            }
+            try {
+                if (spilled) {
+                    spill_reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(open(spillFile(), offset)), StandardCharsets.UTF_8));
+                    for (long skip = blockRow; skip < firstRow; skip++) {
+                        spill_reader.readLine();
+                    }
+                } else {
+                    // the offset is the segment of the block, the row can be in a later segment
+                    archive_reader = new DataInputStream(new BufferedInputStream(Channels.newInputStream(open(archiveFile(), offset))));
+                    readSegment();
+                    long skip = firstRow - blockRow / archive_segment * archive_segment;
+                    while (skip >= segment_rows) {
+                        skip -= segment_rows;
+                        readSegment();
+                    }
+                    segment_row = (int) skip;
+                }
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Error reading history files of account " + accountID, e);
+            }
+        }
+
+        /**
+         * Moves to the next row.
+         * @return false at the end of the history, or at the first held row.
+         */
+        boolean next() {
+            if (row >= visibleRows()) {
+                close();
+                return false;
+            }
+            long start = memoryStart();
+            if (row >= start) {
+                close();
+                int i = (int) (row - start);
+                id_high = id_high_bits[i];
+                id_low = id_low_bits[i];
+                sender = sender_indices[i];
+                receiver = receiver_indices[i];
+                amount = amounts[i];
+                sequence = sequences[i];
+                timestamp = timestamps[i];
+            } else {
+                try {
+                    if (spill_reader != null) {
+                        String[] parts = spill_reader.readLine().split(",");
+                        id_high = Long.parseLong(parts[0]);
+                        id_low = Long.parseLong(parts[1]);
+                        sender = AccountIndex.indexOf(parts[2]);
+                        receiver = AccountIndex.indexOf(parts[3]);
+                        amount = Long.parseLong(parts[4]);
+                        sequence = Long.parseLong(parts[5]);
+                        timestamp = Long.parseLong(parts[6]);
+                    } else {
+                        if (segment_row >= segment_rows) {
+                            readSegment();
+                        }
+                        int i = segment_row++;
+                        id_high = segment_id_highs[i];
+                        id_low = segment_id_lows[i];
+                        sender = segment_senders[i];
+                        receiver = segment_receivers[i];
+                        amount = segment_amounts[i];
+                        sequence = segment_sequences[i];
+                        timestamp = segment_timestamps[i];
+                    }
+                } catch (IOException e) {
+                    close();
+                    throw new UncheckedIOException("Error reading history files of account " + accountID, e);
+                }
+            }
+            row++;
+            return true;
+        }
+
+        /**
+         * Creates the printable Transaction of the current row.
+         */
+        Transaction toTransaction() {
+            return new Transaction(id_generator.format(id_high, id_low), AccountIndex.idOf(sender), AccountIndex.idOf(receiver),
+                    Money.toDouble(amount), sequence, timestamp);
+        }
+
+        private long memoryStart() {
+            return transaction_count - pending_count;
+        }
+
+        private FileChannel open(Path file, long offset) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(offset);
+            return channel;
+        }
+
+        private void readSegment() throws IOException {
+            int count;
+            try {
+                count = archive_reader.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Archive file of account " + accountID + " ends before row " + row, e);
+            }
+            byte[] compressed = new byte[archive_reader.readInt()];
+            archive_reader.readFully(compressed);
+            if (segment_id_highs.length < count) {
+                segment_id_highs = new long[count];
+                segment_id_lows = new long[count];
+                segment_senders = new int[count];
+                segment_receivers = new int[count];
+                segment_amounts = new long[count];
+                segment_sequences = new long[count];
+                segment_timestamps = new long[count];
+            }
+            try (DataInputStream columns = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed))))) {
+                readDifferences(columns, segment_id_highs, count);
+                readDifferences(columns, segment_id_lows, count);
+                for (int i = 0; i < count; i++) {
+                    segment_senders[i] = columns.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    segment_receivers[i] = columns.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    segment_amounts[i] = columns.readLong();
+                }
+                readDifferences(columns, segment_sequences, count);
+                readDifferences(columns, segment_timestamps, count);
+            }
+            segment_rows = count;
+            segment_row = 0;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (spill_reader != null) {
+                    spill_reader.close();
+                    spill_reader = null;
+                }
+                if (archive_reader != null) {
+                    archive_reader.close();
+                    archive_reader = null;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Iterator over the rows of a cursor, which closes the cursor at the end.
+     */
+    private static class CursorIterator implements Iterator<Transaction> {
+        private final RowCursor cursor;
+        private Transaction next_transaction; // null at the end.
+
+        CursorIterator(RowCursor cursor) {
+            this.cursor = cursor;
+            advance();
+        }
+
+        private void advance() {
+            next_transaction = cursor.next() ? cursor.toTransaction() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next_transaction != null;
+        }
+
+        @Override
+        public Transaction next() {
+            if (next_transaction == null) {
+                throw new NoSuchElementException();
+            }
+            Transaction t = next_transaction;
+            advance();
+            return t;
+        }
+    }
+}
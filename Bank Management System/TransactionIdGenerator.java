@@ -0,0 +1,71 @@
+/**
+ * Generates the IDs of the transactions.
+ * An ID has 128 bits that are stored as two longs (high bits and low bits), so the UUID format still fits.
+ * Schemes that need only 64 bits always leave the high bits as 0.
+ * The generator is chosen once, before the transactions are processed, with TransactionHistory.setIdGenerator().
+ */
+public interface TransactionIdGenerator {
+
+    /**
+     * Generates the next ID and writes it into a row of two long columns, so no object is created for the ID.
+     * @param highBits Column for the high 64 bits of the ID.
+     * @param lowBits  Column for the low 64 bits of the ID.
+     * @param row      The row that will hold the ID.
+     */
+    void nextId(long[] highBits, long[] lowBits, int row);
+
+    /**
+     * Converts an ID to the text that is printed in the transaction details.
+     * @param highBits High 64 bits of the ID.
+     * @param lowBits  Low 64 bits of the ID.
+     * @return The printable ID.
+     */
+    String format(long highBits, long lowBits);
+
+    /**
+     * Returns the name of the generator, the one that of() takes.
+     * @return The mode, like "sequence".
+     */
+    String mode();
+
+    /**
+     * Tells the generator about an ID that is restored from a snapshot or a journal,
+     * so it can continue after it and never generate the same ID again.
+     * Generators whose IDs can not repeat (time or random based) ignore it.
+     * @param highBits High 64 bits of the restored ID.
+     * @param lowBits  Low 64 bits of the restored ID.
+     */
+    default void observe(long highBits, long lowBits) {
+    }
+
+    /**
+     * Generates the next ID and returns it as text. Used when a single Transaction object is created.
+     * @return The printable ID.
+     */
+    default String nextFormattedId() {
+        long[] high = new long[1];
+        long[] low = new long[1];
+        nextId(high, low, 0);
+        return format(high[0], low[0]);
+    }
+
+    /**
+     * Creates a generator from its name.
+     * @param mode One of "sequence", "thread", "snowflake" or "uuid".
+     * @return The generator.
+     */
+    static TransactionIdGenerator of(String mode) {
+        switch (mode) {
+            case "sequence":
+                return new SequenceIdGenerator();
+            case "thread":
+                return new ThreadCounterIdGenerator();
+            case "snowflake":
+                return new SnowflakeIdGenerator(0);
+            case "uuid":
+                return new UuidIdGenerator();
+            default:
+                throw new IllegalArgumentException("Unknown transaction ID mode: " + mode);
+        }
+    }
+}
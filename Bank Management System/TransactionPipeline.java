@@ -0,0 +1,319 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes a transactions file as a pipeline of stages that run on their own threads:
+ * read (the calling thread) -> parse (several threads) -> validate (one thread) -> apply (one thread).
+ * <p>
+ * The lines move between the stages in chunks. A chunk holds the lines, the parsed fields, the accounts and the
+ * result of the validation in reused arrays. There is a fixed number of chunks: the reader takes a free chunk, the apply
+ * stage gives it back after the transfers are done. When all chunks are in use the reader waits, so a huge file is
+ * processed with the memory of the chunks only (backpressure).
+ * <p>
+ * The parse stage finishes the chunks in any order. The apply stage puts them back in file order and applies the
+ * transfers with a TransferService, so the results and the printed messages are the same as the sequential run.
+ * Lines with an unknown account or a negative amount are rejected by the validate stage and never take the locks.
+ * A line that can not be parsed stops the pipeline with an error, the chunks before it are applied.
+ */
+public class TransactionPipeline {
+    public static final int DEFAULT_CHUNK_SIZE = 1024; // Lines in one chunk.
+    public static final int DEFAULT_CHUNK_COUNT = 64; // Chunks in the pipeline, which bounds its memory.
+    private static final byte VALID = 0; // Validation results of the lines.
+    private static final byte UNKNOWN_ACCOUNT = 1;
+    private static final byte NEGATIVE_AMOUNT = 2;
+
+    private final Map<String, BankAccountTypeInterface> accounts; // All accounts of the system, only read.
+    private final TransferService transfer_service; // Applies the transfers.
+    private final int parse_threads; // Number of parse threads.
+    private final int chunk_size;
+    private final int chunk_count;
+
+    /**
+     * One piece of the file that moves through the stages.
+     */
+    private static final class Chunk {
+        long sequence; // Position of the chunk in the file, -1 marks the end of the input.
+        long first_line; // Line number of the first line, for the error messages.
+        int count; // Number of lines.
+        final String[] lines;
+        final String[] sender_ids;
+        final String[] receiver_ids;
+        final long[] amounts; // Amounts in cents.
+        final BankAccountTypeInterface[] senders;
+        final BankAccountTypeInterface[] receivers;
+        final byte[] status; // Validation result of every line.
+
+        Chunk(int size) {
+            lines = new String[size];
+            sender_ids = new String[size];
+            receiver_ids = new String[size];
+            amounts = new long[size];
+            senders = new BankAccountTypeInterface[size];
+            receivers = new BankAccountTypeInterface[size];
+            status = new byte[size];
+        }
+    }
+
+    /**
+     * Constructs a pipeline with the default chunk size and number of chunks.
+     * @param accounts        All accounts, keyed by account ID. The map itself is only read.
+     * @param transferService Applies the transfers (and tells its change listener).
+     * @param parseThreads    Number of parse threads.
+     */
+    public TransactionPipeline(Map<String, BankAccountTypeInterface> accounts, TransferService transferService, int parseThreads) {
+        this(accounts, transferService, parseThreads, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    /**
+     * Constructs a pipeline.
+     * @param accounts        All accounts, keyed by account ID. The map itself is only read.
+     * @param transferService Applies the transfers (and tells its change listener).
+     * @param parseThreads    Number of parse threads.
+     * @param chunkSize       Lines in one chunk.
+     * @param chunkCount      Chunks in the pipeline. At most chunkCount * chunkSize lines are in memory.
+     */
+    public TransactionPipeline(Map<String, BankAccountTypeInterface> accounts, TransferService transferService, int parseThreads,
+                               int chunkSize, int chunkCount) {
+        if (parseThreads <= 0 || chunkSize <= 0 || chunkCount <= 0) {
+            throw new IllegalArgumentException("Parse threads, chunk size and chunk count must be positive");
+        }
+        this.accounts = accounts;
+        this.transfer_service = transferService;
+        this.parse_threads = parseThreads;
+        this.chunk_size = chunkSize;
+        this.chunk_count = chunkCount;
+    }
+
+    /**
+     * Processes a transactions file (senderID,amount,receiverID per line) and returns when every transfer is applied.
+     * @param transactionsFile The transactions file.
+     * @return Number of lines processed.
+     * @throws IOException If the file can not be read, a line can not be parsed or a stage fails.
+     */
+    public long process(Path transactionsFile) throws IOException {
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(chunk_count);
+        for (int i = 0; i < chunk_count; i++) {
+            free.add(new Chunk(chunk_size));
+        }
+        // every queue can hold all chunks, so only the reader waits for space (on the free chunks)
+        BlockingQueue<Chunk> toParse = new ArrayBlockingQueue<>(chunk_count + parse_threads);
+        BlockingQueue<Chunk> toValidate = new ArrayBlockingQueue<>(chunk_count + parse_threads);
+        BlockingQueue<Chunk> toApply = new ArrayBlockingQueue<>(chunk_count + 1);
+
+        ExecutorService stages = Executors.newFixedThreadPool(parse_threads + 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = Thread.currentThread();
+        List<Future<?>> others = new ArrayList<>();
+        for (int i = 0; i < parse_threads; i++) {
+            others.add(stages.submit(failFast(() -> parseStage(toParse, toValidate), failure, stages, reader)));
+        }
+        others.add(stages.submit(failFast(() -> validateStage(toValidate, toApply), failure, stages, reader)));
+        Future<Long> applier = stages.submit(failFast(() -> applyStage(toApply, free), failure, stages, reader));
+        try {
+            try (BufferedReader lines = Files.newBufferedReader(transactionsFile, Charset.defaultCharset())) {
+                long sequence = 0;
+                long lineNumber = 1;
+                Chunk chunk = null;
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (chunk == null) {
+                        chunk = free.take(); // waits while all chunks are in the pipeline
+                        chunk.sequence = sequence++;
+                        chunk.first_line = lineNumber;
+                        chunk.count = 0;
+                    }
+                    chunk.lines[chunk.count++] = line;
+                    lineNumber++;
+                    if (chunk.count == chunk_size) {
+                        toParse.put(chunk);
+                        chunk = null;
+                    }
+                }
+                if (chunk != null) {
+                    toParse.put(chunk);
+                }
+            }
+            for (int i = 0; i < parse_threads; i++) {
+                toParse.put(endMarker()); // one end marker for every parse thread
+            }
+            for (Future<?> stage : others) {
+                stage.get();
+            }
+            return applier.get();
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Throwable cause = failure.get();
+            if (cause == null) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while processing transactions.", e);
+                }
+                throw e instanceof IOException ? (IOException) e : new IOException("Error while processing transactions: " + e.getCause(), e.getCause());
+            }
+            Thread.interrupted(); // the failed stage interrupted this thread to stop the reading
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error while processing transactions: " + cause, cause);
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    /**
+     * Wraps a stage so that its failure stops the whole pipeline: the other stages and the reader are interrupted.
+     */
+    private static <T> Callable<T> failFast(Callable<T> stage, AtomicReference<Throwable> failure, ExecutorService stages, Thread reader) {
+        return () -> {
+            try {
+                return stage.call();
+            } catch (Throwable e) {
+                if (failure.compareAndSet(null, e)) {
+                    stages.shutdownNow();
+                    reader.interrupt();
+                }
+                throw e;
+            }
+        };
+    }
+
+    private static Chunk endMarker() {
+        Chunk end = new Chunk(0);
+        end.sequence = -1;
+        return end;
+    }
+
+    /**
+     * Splits the lines of the chunks into sender, amount and receiver. The chunks are passed on in the order they are finished.
+     */
+    private Void parseStage(BlockingQueue<Chunk> input, BlockingQueue<Chunk> output) throws InterruptedException, IOException {
+        while (true) {
+            Chunk chunk = input.take();
+            if (chunk.sequence >= 0) {
+                for (int i = 0; i < chunk.count; i++) {
+                    long start = BankMetrics.startTimer();
+                    parseLine(chunk, i);
+                    BankMetrics.recordLatency(BankMetrics.Stage.PARSE, start);
+                }
+            }
+            output.put(chunk);
+            if (chunk.sequence < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Parses line i of a chunk in the format of the transactions file: senderID,amount,receiverID.
+     */
+    private static void parseLine(Chunk chunk, int i) throws IOException {
+        String line = chunk.lines[i];
+        int first = line.indexOf(',');
+        int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+        if (second < 0) {
+            throw new IOException("Line " + (chunk.first_line + i) + " is not a transaction: " + line);
+        }
+        int third = line.indexOf(',', second + 1);
+        try {
+            chunk.amounts[i] = Money.parseMinorUnits(line.substring(first + 1, second));
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IOException("Line " + (chunk.first_line + i) + " has a wrong amount: " + line, e);
+        }
+        chunk.sender_ids[i] = line.substring(0, first);
+        chunk.receiver_ids[i] = line.substring(second + 1, third < 0 ? line.length() : third);
+        chunk.lines[i] = null;
+    }
+
+    /**
+     * Finds the accounts of every line and marks the lines that can not be applied.
+     * The end is passed on after the end markers of all parse threads have arrived, so it comes after the last chunk.
+     */
+    private Void validateStage(BlockingQueue<Chunk> input, BlockingQueue<Chunk> output) throws InterruptedException {
+        int finishedParsers = 0;
+        while (true) {
+            Chunk chunk = input.take();
+            if (chunk.sequence < 0) {
+                if (++finishedParsers == parse_threads) {
+                    output.put(chunk);
+                    return null;
+                }
+                continue;
+            }
+            for (int i = 0; i < chunk.count; i++) {
+                long start = BankMetrics.startTimer();
+                BankAccountTypeInterface sender = accounts.get(chunk.sender_ids[i]);
+                BankAccountTypeInterface receiver = accounts.get(chunk.receiver_ids[i]);
+                chunk.senders[i] = sender;
+                chunk.receivers[i] = receiver;
+                if (sender == null || receiver == null) {
+                    chunk.status[i] = UNKNOWN_ACCOUNT;
+                } else if (chunk.amounts[i] < 0) {
+                    chunk.status[i] = NEGATIVE_AMOUNT;
+                } else {
+                    chunk.status[i] = VALID;
+                }
+                BankMetrics.recordLatency(BankMetrics.Stage.VALIDATE, start);
+            }
+            output.put(chunk);
+        }
+    }
+
+    /**
+     * Applies the chunks in file order. A chunk that comes early waits in a slot of its sequence until the chunks before it are applied.
+     * @return Number of lines applied or rejected.
+     */
+    private Long applyStage(BlockingQueue<Chunk> input, BlockingQueue<Chunk> free) throws InterruptedException {
+        Chunk[] waiting = new Chunk[chunk_count]; // at most chunk_count chunks exist, so their sequences do not share a slot
+        long next = 0;
+        long lines = 0;
+        WithdrawResult result = WithdrawResult.forCurrentThread();
+        while (true) {
+            Chunk chunk = input.take();
+            if (chunk.sequence < 0) {
+                return lines;
+            }
+            waiting[(int) (chunk.sequence % chunk_count)] = chunk;
+            Chunk ready;
+            while ((ready = waiting[(int) (next % chunk_count)]) != null && ready.sequence == next) {
+                waiting[(int) (next % chunk_count)] = null;
+                applyChunk(ready, result);
+                lines += ready.count;
+                next++;
+                free.put(ready);
+            }
+        }
+    }
+
+    /**
+     * Applies the lines of a chunk and prints the rejections like the sequential run does.
+     */
+    private void applyChunk(Chunk chunk, WithdrawResult result) {
+        for (int i = 0; i < chunk.count; i++) {
+            BankAccountTypeInterface sender = chunk.senders[i];
+            BankAccountTypeInterface receiver = chunk.receivers[i];
+            Money amount = Money.ofMinorUnits(chunk.amounts[i]);
+            if (chunk.status[i] == UNKNOWN_ACCOUNT) {
+                BankMetrics.recordUnknownAccount();
+                System.out.println("Invalid transaction: Sender or Receiver not found.");
+            } else if (chunk.status[i] == NEGATIVE_AMOUNT) {
+                // rejected without any change, it only fills in the message
+                BankMetrics.recordOutcome(sender.tryWithdraw(receiver, amount, result));
+                System.out.println(result.getErrorDetails());
+            } else if (!transfer_service.transfer(sender, receiver, amount, result).isAccepted()) {
+                System.out.println(result.getErrorDetails());
+            }
+            chunk.senders[i] = null; // the chunk is reused, do not keep the accounts alive
+            chunk.receivers[i] = null;
+        }
+    }
+}
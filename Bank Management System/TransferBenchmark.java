@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the throughput of transfers.
+ * Compares the old two-call path (sender.withdraw then receiver.deposit, only safe on one thread)
+ * with TransferService on 1 to n threads. The accounts are Current accounts with a big overdraft limit, so nothing is rejected.
+ * Usage: java TransferBenchmark [accounts] [transfers] [max_threads]
+ */
+public class TransferBenchmark {
+
+    /**
+     * Entry point of the benchmark.
+     * @param args Optional number of accounts, number of transfers and maximum number of threads.
+     * @throws Exception If a worker thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int transferCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(42);
+        int[] senders = new int[transferCount];
+        int[] receivers = new int[transferCount];
+        for (int i = 0; i < transferCount; i++) {
+            senders[i] = random.nextInt(accountCount);
+            receivers[i] = random.nextInt(accountCount);
+        }
+
+        // warm up once so the JIT compiles both paths before the measured runs
+        runTwoCall(createAccounts(accountCount), senders, receivers);
+        runTransferService(createAccounts(accountCount), senders, receivers, 1);
+
+        double seconds = runTwoCall(createAccounts(accountCount), senders, receivers);
+        System.out.printf("two-call        threads=1  %,.0f transfers/s%n", transferCount / seconds);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            seconds = runTransferService(createAccounts(accountCount), senders, receivers, threads);
+            System.out.printf("TransferService threads=%-2d %,.0f transfers/s%n", threads, transferCount / seconds);
+        }
+    }
+
+    /**
+     * Creates Current accounts with a big overdraft limit, so no transfer is rejected.
+     */
+    static BankAccountTypeInterface[] createAccounts(int count) {
+        BankAccountTypeInterface[] accounts = new BankAccountTypeInterface[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new CurrentAccount("BNC" + i, Money.parse("1000000"), Money.parse("1000000000"));
+        }
+        return accounts;
+    }
+
+    /**
+     * Runs the transfers with the old withdraw-then-deposit pair on the current thread.
+     * @return Elapsed time in seconds.
+     */
+    private static double runTwoCall(BankAccountTypeInterface[] accounts, int[] senders, int[] receivers) {
+        Money amount = Money.ofMinorUnits(100);
+        long start = System.nanoTime();
+        for (int i = 0; i < senders.length; i++) {
+            BankAccountTypeInterface sender = accounts[senders[i]];
+            BankAccountTypeInterface receiver = accounts[receivers[i]];
+            if (sender.withdraw(receiver, amount)) {
+                receiver.deposit(sender, amount);
+            }
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Runs the transfers through a TransferService, every thread takes an equal slice of the transfers.
+     * @return Elapsed time in seconds.
+     */
+    static double runTransferService(BankAccountTypeInterface[] accounts, int[] senders, int[] receivers, int threads) throws Exception {
+        TransferService service = new TransferService(threads * 16);
+        Money amount = Money.ofMinorUnits(100);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            int slice = (senders.length + threads - 1) / threads;
+            for (int t = 0; t < threads; t++) {
+                int from = t * slice;
+                int to = Math.min(senders.length, from + slice);
+                futures.add(pool.submit(() -> {
+                    for (int i = from; i < to; i++) {
+                        service.transfer(accounts[senders[i]], accounts[receivers[i]], amount);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of the transfers.
+ * Every transfer is appended to the journal before it is applied. The records are collected in a buffer and written
+ * with one FileChannel.force for a whole group (group commit), so the cost of the fsync is shared by the group.
+ * <p>
+ * A record is [payload length][type][payload][CRC32 of type and payload]. Opening a journal reads the records until the
+ * first broken one (a record that was being written when the process died) and cuts the file there.
+ * Record types:
+ * FILE (sequence, file name) starts the transfers of a transactions file,
+ * TRANSFER (sequence, line number, sender, receiver, cents) is one transfer line,
+ * FILE_MARK (sequence, file name, last line) remembers how far a file was applied after the journal is reset by a checkpoint.
+ */
+public class TransferJournal implements Closeable {
+    private static final byte FILE = 1;
+    private static final byte TRANSFER = 2;
+    private static final byte FILE_MARK = 3;
+    private static final int HEADER_SIZE = 5; // payload length (int) + type (byte)
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+
+    private final FileChannel channel; // The journal file, opened for reading and writing.
+    private final int group_commit_size; // Number of records written with one force.
+    private final ByteBuffer buffer; // Records that are not written yet.
+    private final CRC32 crc = new CRC32();
+    private final Map<String, Long> last_applied_lines = new HashMap<>(); // Last journaled line of every transactions file.
+    private int buffered_records;
+    private long last_sequence; // Sequence number of the last record.
+    private String current_file; // File of the transfers that are appended now.
+
+    /**
+     * A consumer of the transfers that are replayed from the journal.
+     */
+    public interface Replayer {
+        /**
+         * Applies one journaled transfer.
+         * @param senderID   ID of the sender.
+         * @param receiverID ID of the receiver.
+         * @param amount     Amount in cents.
+         */
+        void apply(String senderID, String receiverID, long amount);
+    }
+
+    /**
+     * Opens (or creates) a journal and recovers it: the valid records are scanned and a broken tail is cut.
+     * @param file            The journal file.
+     * @param groupCommitSize Number of records that are written and forced together.
+     * @throws IOException If the file can not be opened.
+     */
+    public TransferJournal(Path file, int groupCommitSize) throws IOException {
+        if (groupCommitSize <= 0) {
+            throw new IllegalArgumentException("Group commit size must be positive: " + groupCommitSize);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.group_commit_size = groupCommitSize;
+        this.buffer = ByteBuffer.allocate(Math.max(MAX_RECORD_SIZE, groupCommitSize * 64));
+        long validEnd = scan(null, Long.MAX_VALUE);
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+    }
+
+    /**
+     * Returns the sequence number of the last record in the journal.
+     * @return The last sequence number, 0 if the journal is empty.
+     */
+    public long lastSequence() {
+        return last_sequence;
+    }
+
+    /**
+     * Returns the last line of a transactions file that is in the journal, so a restarted run can skip the applied lines.
+     * @param fileName Name of the transactions file.
+     * @return The last journaled line number, 0 if the file is not in the journal.
+     */
+    public long lastAppliedLine(String fileName) {
+        return last_applied_lines.getOrDefault(fileName, 0L);
+    }
+
+    /**
+     * Replays the transfers whose sequence is after the given one (the transfers that are not in the last checkpoint).
+     * @param afterSequence The sequence number stored in the checkpoint.
+     * @param replayer      Applies the transfers.
+     * @throws IOException If the journal can not be read.
+     */
+    public void replay(long afterSequence, Replayer replayer) throws IOException {
+        scan(replayer, afterSequence);
+    }
+
+    /**
+     * Starts journaling the transfers of a transactions file.
+     * @param fileName Name of the transactions file.
+     * @throws IOException If the journal can not be written.
+     */
+    public void beginFile(String fileName) throws IOException {
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        ensureSpace(HEADER_SIZE + 8 + 2 + name.length + 4);
+        int start = startRecord(FILE);
+        buffer.putLong(++last_sequence);
+        putBytes(name);
+        finishRecord(start);
+        current_file = fileName;
+    }
+
+    /**
+     * Appends a transfer line. It is written to the disk when the group is full or commit() is called.
+     * @param lineNumber Line number in the current transactions file.
+     * @param senderID   ID of the sender.
+     * @param receiverID ID of the receiver.
+     * @param amount     Amount in cents.
+     * @throws IOException If the journal can not be written.
+     */
+    public void append(long lineNumber, String senderID, String receiverID, long amount) throws IOException {
+        byte[] sender = senderID.getBytes(StandardCharsets.UTF_8);
+        byte[] receiver = receiverID.getBytes(StandardCharsets.UTF_8);
+        ensureSpace(HEADER_SIZE + 8 + 8 + 2 + sender.length + 2 + receiver.length + 8 + 4);
+        int start = startRecord(TRANSFER);
+        buffer.putLong(++last_sequence);
+        buffer.putLong(lineNumber);
+        putBytes(sender);
+        putBytes(receiver);
+        buffer.putLong(amount);
+        finishRecord(start);
+        last_applied_lines.put(current_file, lineNumber);
+        if (++buffered_records >= group_commit_size) {
+            commit();
+        }
+    }
+
+    /**
+     * Writes the buffered records and forces them to the disk.
+     * @throws IOException If the journal can not be written.
+     */
+    public void commit() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.force(false);
+        buffered_records = 0;
+    }
+
+    /**
+     * Empties the journal after a checkpoint has saved everything in it.
+     * The last applied line of every file is written again, so restarted runs can still skip applied lines.
+     * @throws IOException If the journal can not be written.
+     */
+    public void reset() throws IOException {
+        commit();
+        channel.truncate(0);
+        channel.position(0);
+        for (Map.Entry<String, Long> entry : last_applied_lines.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            ensureSpace(HEADER_SIZE + 8 + 2 + name.length + 8 + 4);
+            int start = startRecord(FILE_MARK);
+            buffer.putLong(last_sequence);
+            putBytes(name);
+            buffer.putLong(entry.getValue());
+            finishRecord(start);
+        }
+        commit();
+    }
+
+    /**
+     * Commits the buffered records and closes the journal.
+     * @throws IOException If the journal can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the records from the start of the file, updates the sequence and the line marks,
+     * and gives the transfers after afterSequence to the replayer (if there is one).
+     * @return The position after the last valid record.
+     */
+    private long scan(Replayer replayer, long afterSequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_SIZE);
+        long position = 0;
+        String file = null;
+        while (true) {
+            header.clear();
+            if (channel.read(header, position) < HEADER_SIZE) {
+                return position;
+            }
+            header.flip();
+            int length = header.getInt();
+            byte type = header.get();
+            if (length < 0 || length + 4 > MAX_RECORD_SIZE) {
+                return position; // broken length, the rest of the file is not trusted
+            }
+            record.clear().limit(length + 4);
+            if (channel.read(record, position + HEADER_SIZE) < length + 4) {
+                return position;
+            }
+            record.flip();
+            crc.reset();
+            crc.update(type);
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != record.getInt(length)) {
+                return position;
+            }
+
+            long sequence = record.getLong();
+            last_sequence = Math.max(last_sequence, sequence);
+            if (type == FILE) {
+                file = getString(record);
+            } else if (type == TRANSFER) {
+                long line = record.getLong();
+                String sender = getString(record);
+                String receiver = getString(record);
+                long amount = record.getLong();
+                last_applied_lines.put(file, line);
+                if (replayer != null && sequence > afterSequence) {
+                    replayer.apply(sender, receiver, amount);
+                }
+            } else if (type == FILE_MARK) {
+                String name = getString(record);
+                last_applied_lines.put(name, record.getLong());
+            }
+            position += HEADER_SIZE + length + 4;
+        }
+    }
+
+    private void ensureSpace(int recordSize) throws IOException {
+        if (recordSize > MAX_RECORD_SIZE) {
+            throw new IOException("Journal record is too big: " + recordSize + " bytes");
+        }
+        if (buffer.remaining() < recordSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Leaves space for the length and writes the type. Returns the start of the record.
+     */
+    private int startRecord(byte type) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(type);
+        return start;
+    }
+
+    /**
+     * Fills in the length of the record and appends its CRC.
+     */
+    private void finishRecord(int start) {
+        int length = buffer.position() - start - HEADER_SIZE;
+        buffer.putInt(start, length);
+        crc.reset();
+        crc.update(buffer.array(), start + 4, length + 1); // type and payload
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void putBytes(byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getShort() & 0xffff;
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.Collection;
+
+/**
+ * Makes transfers between two accounts atomic when several threads use the accounts at the same time.
+ * A transfer has two phases:
+ * reserve() takes the locks of the sender and the receiver, so nobody else can see or change these accounts,
+ * then commit() withdraws from the sender and deposits to the receiver and releases the locks, or abort() only releases them.
+ * Readers use balanceOf() and totalBalance(), which take the same locks, so they never see money that left one account
+ * but did not reach the other one yet.
+ * <p>
+ * With setHotAccounts(), transfer() to a hot account only locks the sender and leaves the deposit in a HotAccountCombiner,
+ * which is folded into the account before it is withdrawn from or read (see HotAccountCombiner). Code that reads
+ * the accounts directly must call foldAll() first.
+ */
+public class TransferService {
+    private final AccountLockStripes locks; // Locks that protect the accounts.
+    private volatile AccountChangeListener change_listener; // Told about the accounts of every accepted transfer, null if none.
+    private volatile HotAccountCombiner combiner; // Pending deposits into the hot accounts, null if no account is hot.
+
+    /**
+     * Constructs a transfer service with its own lock stripes.
+     * @param stripeCount Number of lock stripes.
+     */
+    public TransferService(int stripeCount) {
+        this(new AccountLockStripes(stripeCount));
+    }
+
+    /**
+     * Constructs a transfer service that uses the given lock stripes.
+     * @param locks Lock stripes shared with other users of the accounts.
+     */
+    public TransferService(AccountLockStripes locks) {
+        this.locks = locks;
+    }
+
+    /**
+     * Returns the lock stripes used by the service.
+     * @return The lock stripes.
+     */
+    public AccountLockStripes getLocks() {
+        return locks;
+    }
+
+    /**
+     * Sets the listener that is told about the sender and the receiver of every accepted transfer.
+     * It is called while the locks of both accounts are held.
+     * @param listener The listener, or null to remove it.
+     */
+    public void setChangeListener(AccountChangeListener listener) {
+        this.change_listener = listener;
+    }
+
+    /**
+     * Combines the deposits into the given accounts, see HotAccountCombiner. It should be called before the transfers start.
+     * @param hotAccounts The hot accounts, or an empty collection to turn the combining off.
+     */
+    public void setHotAccounts(Collection<BankAccountTypeInterface> hotAccounts) {
+        foldAll();
+        this.combiner = hotAccounts.isEmpty() ? null
+                : new HotAccountCombiner(hotAccounts, HotAccountCombiner.DEFAULT_CELL_COUNT, HotAccountCombiner.DEFAULT_FOLD_THRESHOLD);
+    }
+
+    /**
+     * Returns the combiner of the hot accounts.
+     * @return The combiner, or null if no account is hot.
+     */
+    public HotAccountCombiner getHotAccountCombiner() {
+        return combiner;
+    }
+
+    /**
+     * Folds the pending deposits of every hot account, so the balances and histories can be read directly.
+     */
+    public void foldAll() {
+        HotAccountCombiner hot = combiner;
+        if (hot == null) {
+            return;
+        }
+        for (BankAccountTypeInterface account : hot.hotAccounts()) {
+            locks.lock(account.getAccountID());
+            try {
+                fold(hot, account);
+            } finally {
+                locks.unlock(account.getAccountID());
+            }
+        }
+    }
+
+    /**
+     * First phase of a transfer: locks both accounts (in stripe order, so it can not deadlock).
+     * The returned reservation must be committed or aborted by the same thread.
+     *
+     * @param sender   The account that sends the money.
+     * @param receiver The account that receives the money.
+     * @param amount   The amount of the transfer.
+     * @return The reservation that holds the locks of both accounts.
+     */
+    public Reservation reserve(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount) {
+        long start = BankMetrics.startTimer(); // the transfer latency includes the wait for the locks
+        locks.lockBoth(sender.getAccountID(), receiver.getAccountID());
+        return new Reservation(sender, receiver, amount, start);
+    }
+
+    /**
+     * Second phase of a transfer: withdraws from the sender and deposits to the receiver (if the withdrawal is accepted),
+     * then releases the locks. A rejection is printed to the console.
+     *
+     * @param reservation The reservation returned by reserve().
+     * @return true if the transfer is done, false if the sender rejected the withdrawal.
+     */
+    public boolean commit(Reservation reservation) {
+        WithdrawResult result = WithdrawResult.forCurrentThread();
+        if (commit(reservation, result).isAccepted()) {
+            return true;
+        }
+        System.out.println(result.getErrorDetails());
+        return false;
+    }
+
+    /**
+     * Second phase of a transfer without printing: a rejection is only returned as a code, with its details in result.
+     *
+     * @param reservation The reservation returned by reserve().
+     * @param result      Filled with the outcome of the withdrawal.
+     * @return ACCEPTED if the transfer is done, otherwise the reason why the sender rejected the withdrawal.
+     */
+    public WithdrawOutcome commit(Reservation reservation, WithdrawResult result) {
+        reservation.close();
+        try {
+            HotAccountCombiner hot = combiner;
+            if (hot != null) {
+                // both accounts are locked, the pending deposits come before this transfer
+                fold(hot, reservation.sender);
+                fold(hot, reservation.receiver);
+            }
+            WithdrawOutcome outcome = withdraw(reservation.sender, reservation.receiver, reservation.amount, result);  // Sender withdraws the amount
+            if (outcome.isAccepted()) {
+                BankMetrics.DepositEvent depositEvent = BankMetrics.beginDeposit();
+                reservation.receiver.deposit(reservation.sender, reservation.amount);  // Receiver deposits the amount
+                BankMetrics.endDeposit(depositEvent, reservation.receiver, reservation.amount);
+                AccountChangeListener listener = change_listener;
+                if (listener != null) {
+                    listener.accountChanged(reservation.sender);
+                    listener.accountChanged(reservation.receiver);
+                }
+            }
+            return outcome;
+        } finally {
+            release(reservation);
+            BankMetrics.recordLatency(BankMetrics.Stage.TRANSFER, reservation.start_nanos);
+        }
+    }
+
+    /**
+     * Cancels a reservation without changing any of the accounts.
+     * @param reservation The reservation returned by reserve().
+     */
+    public void abort(Reservation reservation) {
+        reservation.close();
+        release(reservation);
+    }
+
+    /**
+     * Reserves and commits a transfer in one call.
+     *
+     * @param sender   The account that sends the money.
+     * @param receiver The account that receives the money.
+     * @param amount   The amount of the transfer.
+     * @return true if the transfer is done, false if the sender rejected the withdrawal.
+     */
+    public boolean transfer(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount) {
+        HotAccountCombiner hot = combiner;
+        if (hot == null || !hot.isHot(receiver)) {
+            return commit(reserve(sender, receiver, amount));
+        }
+        WithdrawResult result = WithdrawResult.forCurrentThread();
+        if (combinedTransfer(hot, sender, receiver, amount, result).isAccepted()) {
+            return true;
+        }
+        System.out.println(result.getErrorDetails());
+        return false;
+    }
+
+    /**
+     * Reserves and commits a transfer in one call without printing, see commit(Reservation, WithdrawResult).
+     *
+     * @param sender   The account that sends the money.
+     * @param receiver The account that receives the money.
+     * @param amount   The amount of the transfer.
+     * @param result   Filled with the outcome of the withdrawal.
+     * @return ACCEPTED if the transfer is done, otherwise the reason of the rejection.
+     */
+    public WithdrawOutcome transfer(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount, WithdrawResult result) {
+        HotAccountCombiner hot = combiner;
+        if (hot == null || !hot.isHot(receiver)) {
+            return commit(reserve(sender, receiver, amount), result);
+        }
+        return combinedTransfer(hot, sender, receiver, amount, result);
+    }
+
+    /**
+     * Reads the balance of an account while no transfer is in progress on it.
+     * @param account The account.
+     * @return The current balance.
+     */
+    public Money balanceOf(BankAccountTypeInterface account) {
+        locks.lock(account.getAccountID());
+        try {
+            HotAccountCombiner hot = combiner;
+            if (hot != null) {
+                fold(hot, account);
+            }
+            return account.getBalance();
+        } finally {
+            locks.unlock(account.getAccountID());
+        }
+    }
+
+    /**
+     * Sums the balances of the accounts while all transfers are paused, so the total is consistent.
+     * The sum is exact because the balances are whole cents.
+     * @param accounts The accounts.
+     * @return Sum of the balances.
+     */
+    public Money totalBalance(Collection<BankAccountTypeInterface> accounts) {
+        locks.lockAll();
+        try {
+            HotAccountCombiner hot = combiner;
+            if (hot != null) {
+                for (BankAccountTypeInterface account : hot.hotAccounts()) {
+                    fold(hot, account);
+                }
+            }
+            long total = 0;
+            for (BankAccountTypeInterface account : accounts) {
+                total = Math.addExact(total, account.getBalance().getMinorUnits());
+            }
+            return Money.ofMinorUnits(total);
+        } finally {
+            locks.unlockAll();
+        }
+    }
+
+    /**
+     * A transfer to a hot account: only the sender is locked, and the deposit waits in the combiner.
+     * The receiver is folded here when its cell is full and its lock is free.
+     */
+    private WithdrawOutcome combinedTransfer(HotAccountCombiner hot, BankAccountTypeInterface sender, BankAccountTypeInterface receiver,
+                                             Money amount, WithdrawResult result) {
+        long start = BankMetrics.startTimer();
+        boolean full = false;
+        locks.lock(sender.getAccountID());
+        try {
+            fold(hot, sender); // a hot sender needs all of its deposits for the limit check
+            WithdrawOutcome outcome = withdraw(sender, receiver, amount, result);
+            if (outcome.isAccepted()) {
+                full = hot.add(receiver, sender, amount.getMinorUnits());
+                AccountChangeListener listener = change_listener;
+                if (listener != null) {
+                    listener.accountChanged(sender); // the receiver is told when it is folded
+                }
+            }
+            if (full && locks.tryLock(receiver.getAccountID())) {
+                try {
+                    fold(hot, receiver);
+                } finally {
+                    locks.unlock(receiver.getAccountID());
+                }
+            }
+            return outcome;
+        } finally {
+            locks.unlock(sender.getAccountID());
+            BankMetrics.recordLatency(BankMetrics.Stage.TRANSFER, start);
+        }
+    }
+
+    /**
+     * Withdraws from the sender as part of a transfer, with its metrics and JFR event.
+     */
+    private static WithdrawOutcome withdraw(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount, WithdrawResult result) {
+        BankMetrics.WithdrawEvent withdrawEvent = BankMetrics.beginWithdraw();
+        WithdrawOutcome outcome = sender.tryWithdraw(receiver, amount, result);
+        BankMetrics.endWithdraw(withdrawEvent, sender, amount, outcome);
+        return outcome;
+    }
+
+    /**
+     * Folds the pending deposits of a hot account, whose lock must be held, and tells the listener about it.
+     */
+    private void fold(HotAccountCombiner hot, BankAccountTypeInterface account) {
+        if (hot.fold(account) > 0) {
+            AccountChangeListener listener = change_listener;
+            if (listener != null) {
+                listener.accountChanged(account);
+            }
+        }
+    }
+
+    private void release(Reservation reservation) {
+        locks.unlockBoth(reservation.sender.getAccountID(), reservation.receiver.getAccountID());
+    }
+
+    /**
+     * A transfer whose accounts are locked but which is not committed or aborted yet.
+     */
+    public static class Reservation {
+        private final BankAccountTypeInterface sender;
+        private final BankAccountTypeInterface receiver;
+        private final Money amount;
+        private final Thread owner; // The thread that holds the locks.
+        private final long start_nanos; // BankMetrics timer started before the locks were taken.
+        private boolean open = true;
+
+        private Reservation(BankAccountTypeInterface sender, BankAccountTypeInterface receiver, Money amount, long startNanos) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.amount = amount;
+            this.start_nanos = startNanos;
+            this.owner = Thread.currentThread();
+        }
+
+        /**
+         * Marks the reservation as finished. A reservation can only be finished once and only by its owner thread.
+         */
+        private void close() {
+            if (!open) {
+                throw new IllegalStateException("Reservation is already committed or aborted.");
+            }
+            if (owner != Thread.currentThread()) {
+                throw new IllegalStateException("Reservation must be finished by the thread that reserved it.");
+            }
+            open = false;
+        }
+    }
+}
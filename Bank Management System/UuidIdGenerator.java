@@ -0,0 +1,29 @@
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs like the old Transaction constructor did with UUID.randomUUID().
+ * It is the default, so the printed IDs keep their old format. Every ID goes through one shared SecureRandom, which is
+ * slow when several threads use it, so the faster modes are chosen with --ids.
+ */
+public class UuidIdGenerator implements TransactionIdGenerator {
+    private final SecureRandom random = new SecureRandom();
+
+    @Override
+    public void nextId(long[] highBits, long[] lowBits, int row) {
+        long high = random.nextLong();
+        long low = random.nextLong();
+        highBits[row] = (high & 0xffffffffffff0fffL) | 0x0000000000004000L; // version 4
+        lowBits[row] = (low & 0x3fffffffffffffffL) | 0x8000000000000000L; // IETF variant
+    }
+
+    @Override
+    public String mode() {
+        return "uuid";
+    }
+
+    @Override
+    public String format(long highBits, long lowBits) {
+        return new UUID(highBits, lowBits).toString();
+    }
+}
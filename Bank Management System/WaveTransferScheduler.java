@@ -0,0 +1,276 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes a transactions file on several threads with exactly the result of the sequential run: the same balances,
+ * the same rejections (a SavingAccount penalty depends on the order of the withdrawals), the same messages in the same
+ * order, and the same transaction IDs and sequence numbers in the histories.
+ * <p>
+ * The file is read in windows of lines. In a window every transfer gets a wave: one more than the last wave of its
+ * sender and of its receiver, so two transfers that share an account are in different waves, in file order. The
+ * transfers of one wave share no account and run in parallel, and the waves run one after the other. A transfer only
+ * sees the accounts it touches, and they have the same state as in the sequential run when it starts.
+ * <p>
+ * The messages of the rejections are collected and printed in file order after the window. While a window runs the
+ * histories hold their new rows (see TransactionHistory.holdRows), and after it the rows get their transaction IDs,
+ * account indices and sequence numbers in file order, so the report and a snapshot are the same as the sequential run too.
+ * The queries of LedgerQueries do not see the held rows, and the rows are filled and released under the account locks.
+ * Hot accounts are not combined here: a hot account is in most transfers, which then simply go to different waves.
+ */
+public class WaveTransferScheduler {
+    public static final int DEFAULT_WINDOW_SIZE = 4096;
+    private static final int MIN_PARALLEL_WAVE = 64; // Smaller waves run on the reading thread, a task would cost more than the transfers.
+
+    private final Map<String, BankAccountTypeInterface> accounts; // All accounts of the system.
+    private final TransferService transfer_service; // Applies the transfers.
+    private final int thread_count;
+    private final int window_size; // Lines read into one window.
+
+    // One entry per line of the window, in file order.
+    private final BankAccountTypeInterface[] senders; // null if the sender or the receiver is not found.
+    private final BankAccountTypeInterface[] receivers;
+    private final Money[] amounts;
+    private final int[] waves;
+    private final long[] sender_first_rows; // Size of the history of the sender before the transfer.
+    private final long[] receiver_first_rows;
+    private final int[] sender_rows; // Rows the transfer added to the history of the sender.
+    private final int[] receiver_rows;
+    private final String[] messages; // Details of the rejection, null if the transfer is done.
+
+    /**
+     * Constructs a scheduler with the default window size.
+     * @param accounts    All accounts, keyed by account ID. The map itself is only read.
+     * @param threadCount Number of threads to use.
+     */
+    public WaveTransferScheduler(Map<String, BankAccountTypeInterface> accounts, int threadCount) {
+        this(accounts, threadCount, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs a scheduler.
+     * @param accounts    All accounts, keyed by account ID. The map itself is only read.
+     * @param threadCount Number of threads to use.
+     * @param windowSize  Lines that are scheduled together, a larger window finds more transfers for every wave.
+     */
+    public WaveTransferScheduler(Map<String, BankAccountTypeInterface> accounts, int threadCount, int windowSize) {
+        if (threadCount <= 0 || windowSize <= 0) {
+            throw new IllegalArgumentException("Thread count and window size must be positive: " + threadCount + ", " + windowSize);
+        }
+        this.accounts = accounts;
+        this.thread_count = threadCount;
+        this.window_size = windowSize;
+        this.transfer_service = new TransferService(threadCount * 16);
+        this.senders = new BankAccountTypeInterface[windowSize];
+        this.receivers = new BankAccountTypeInterface[windowSize];
+        this.amounts = new Money[windowSize];
+        this.waves = new int[windowSize];
+        this.sender_first_rows = new long[windowSize];
+        this.receiver_first_rows = new long[windowSize];
+        this.sender_rows = new int[windowSize];
+        this.receiver_rows = new int[windowSize];
+        this.messages = new String[windowSize];
+    }
+
+    /**
+     * Returns the service that applies the transfers, for example to set its change listener.
+     * @return The transfer service.
+     */
+    public TransferService getTransferService() {
+        return transfer_service;
+    }
+
+    /**
+     * Reads the transactions file window by window and processes every window in waves.
+     * @param transactionsFile Path of the transactions file (senderID,amount,receiverID per line).
+     * @throws IOException If the file can not be read.
+     */
+    public void processFile(String transactionsFile) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(thread_count);
+        try (BufferedReader br = new BufferedReader(new FileReader(transactionsFile))) {
+            int count = 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                long start = BankMetrics.startTimer();
+                String[] parts = line.split(",");
+                String senderID = parts[0];
+                Money amount = Money.parse(parts[1]);
+                String receiverID = parts[2];
+                BankMetrics.recordLatency(BankMetrics.Stage.PARSE, start);
+
+                BankAccountTypeInterface sender = accounts.get(senderID);
+                BankAccountTypeInterface receiver = accounts.get(receiverID);
+                if (sender != null && receiver != null) {
+                    senders[count] = sender;
+                    receivers[count] = receiver;
+                    amounts[count] = amount;
+                }
+                if (++count == window_size) {
+                    runWindow(pool, count);
+                    count = 0;
+                }
+            }
+            runWindow(pool, count);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the first count lines of the window in waves, then fills the held rows and prints the messages in file order.
+     */
+    private void runWindow(ExecutorService pool, int count) throws IOException {
+        List<int[]> waveLines = scheduleWaves(count);
+        TransactionHistory.holdRows(true);
+        try {
+            for (int[] wave : waveLines) {
+                runWave(pool, wave);
+            }
+        } finally {
+            TransactionHistory.holdRows(false);
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (senders[i] == null) {
+                continue;
+            }
+            String senderID = senders[i].getAccountID();
+            String receiverID = receivers[i].getAccountID();
+            if (sender_rows[i] > 0) {
+                completeHeldRows(senders[i], sender_first_rows[i], sender_rows[i], senderID, receiverID);
+            }
+            if (receiver_rows[i] > 0) {
+                completeHeldRows(receivers[i], receiver_first_rows[i], receiver_rows[i], senderID, receiverID);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (senders[i] == null) {
+                BankMetrics.recordUnknownAccount();
+                System.out.println("Invalid transaction: Sender or Receiver not found.");
+                continue;
+            }
+            releaseRows(senders[i]);
+            releaseRows(receivers[i]);
+            if (messages[i] != null) {
+                System.out.println(messages[i]);
+            }
+        }
+        Arrays.fill(senders, 0, count, null);
+        Arrays.fill(receivers, 0, count, null);
+        Arrays.fill(amounts, 0, count, null);
+        Arrays.fill(messages, 0, count, null);
+    }
+
+    /**
+     * Fills held rows of an account while its lock is held, so a query (LedgerQueries) never reads a half filled row.
+     */
+    private void completeHeldRows(BankAccountTypeInterface account, long firstRow, int count, String senderID, String receiverID) {
+        AccountLockStripes locks = transfer_service.getLocks();
+        locks.lock(account.getAccountID());
+        try {
+            account.getTransactionHistory().completeHeldRows(firstRow, count, senderID, receiverID);
+        } finally {
+            locks.unlock(account.getAccountID());
+        }
+    }
+
+    /**
+     * Makes the filled rows of an account visible to the queries while its lock is held.
+     */
+    private void releaseRows(BankAccountTypeInterface account) {
+        AccountLockStripes locks = transfer_service.getLocks();
+        locks.lock(account.getAccountID());
+        try {
+            account.getTransactionHistory().releaseRows();
+        } finally {
+            locks.unlock(account.getAccountID());
+        }
+    }
+
+    /**
+     * Gives every transfer of the window its wave and returns the lines of every wave, in file order within a wave.
+     */
+    private List<int[]> scheduleWaves(int count) {
+        Map<BankAccountTypeInterface, Integer> lastWaves = new HashMap<>();
+        int[] waveSizes = new int[count];
+        int waveCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (senders[i] == null) {
+                continue;
+            }
+            int wave = Math.max(lastWaves.getOrDefault(senders[i], -1), lastWaves.getOrDefault(receivers[i], -1)) + 1;
+            lastWaves.put(senders[i], wave);
+            lastWaves.put(receivers[i], wave);
+            waves[i] = wave;
+            waveSizes[wave]++;
+            waveCount = Math.max(waveCount, wave + 1);
+        }
+        List<int[]> waveLines = new ArrayList<>(waveCount);
+        for (int wave = 0; wave < waveCount; wave++) {
+            waveLines.add(new int[waveSizes[wave]]);
+        }
+        int[] filled = new int[waveCount];
+        for (int i = 0; i < count; i++) {
+            if (senders[i] != null) {
+                waveLines.get(waves[i])[filled[waves[i]]++] = i;
+            }
+        }
+        return waveLines;
+    }
+
+    /**
+     * Runs the transfers of one wave, split into one slice per thread, and waits for all of them.
+     */
+    private void runWave(ExecutorService pool, int[] wave) throws IOException {
+        if (wave.length < MIN_PARALLEL_WAVE || thread_count == 1) {
+            applyTransfers(wave, 0, wave.length);
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        int slice = (wave.length + thread_count - 1) / thread_count;
+        for (int from = 0; from < wave.length; from += slice) {
+            int sliceFrom = from;
+            int sliceTo = Math.min(wave.length, from + slice);
+            futures.add(pool.submit(() -> applyTransfers(wave, sliceFrom, sliceTo)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing transactions.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while processing transactions: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Applies the transfers of a slice of a wave without printing, and records the rows they added and their messages.
+     */
+    private void applyTransfers(int[] wave, int from, int to) {
+        WithdrawResult result = WithdrawResult.forCurrentThread();
+        for (int w = from; w < to; w++) {
+            int i = wave[w];
+            TransactionHistory senderHistory = senders[i].getTransactionHistory();
+            TransactionHistory receiverHistory = receivers[i].getTransactionHistory();
+            sender_first_rows[i] = senderHistory.size();
+            receiver_first_rows[i] = receiverHistory.size();
+            if (!transfer_service.transfer(senders[i], receivers[i], amounts[i], result).isAccepted()) {
+                messages[i] = result.getErrorDetails();
+            }
+            // a transfer to the same account adds all of its rows in the order of the sequential run, so they are counted once
+            sender_rows[i] = (int) (senderHistory.size() - sender_first_rows[i]);
+            receiver_rows[i] = senderHistory == receiverHistory ? 0 : (int) (receiverHistory.size() - receiver_first_rows[i]);
+        }
+    }
+}
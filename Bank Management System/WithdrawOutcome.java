@@ -0,0 +1,18 @@
+/**
+ * Result code of a withdrawal. A rejected withdrawal returns one of the rejection codes instead of throwing an exception,
+ * the details of the rejection are in the WithdrawResult that is filled by tryWithdraw.
+ */
+public enum WithdrawOutcome {
+    ACCEPTED,           // The money is withdrawn.
+    INVALID_AMOUNT,     // The amount is negative, the same case as InvalidAmountException.
+    INSUFFICIENT_FUNDS, // The amount is over the balance or the limit, the same case as InsufficientFundsException.
+    PENALTY;            // The amount and the penalty are over the balance, the same case as PenaltyException.
+
+    /**
+     * Checks if the withdrawal is done.
+     * @return true for ACCEPTED.
+     */
+    public boolean isAccepted() {
+        return this == ACCEPTED;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Details of the last withdrawal of a tryWithdraw call, filled in place so a rejection does not create an exception
+ * (no object and no stack trace). A caller keeps one WithdrawResult and passes it to every call.
+ * The messages are the same as the ones of the matching exceptions, and toException() creates that exception
+ * for the code that still wants to throw (see BankAccountTypeInterface.withdrawOrThrow).
+ * A WithdrawResult is not thread safe, every thread needs its own one (forCurrentThread() returns it).
+ */
+public final class WithdrawResult implements BankExceptionInterface {
+    private static final ThreadLocal<WithdrawResult> THREAD_RESULTS = ThreadLocal.withInitial(WithdrawResult::new);
+
+    private WithdrawOutcome outcome = WithdrawOutcome.ACCEPTED;
+    private String account_type; // Type of the account that rejected the withdrawal, like "Saving Account".
+    private String message; // Reason of the rejection.
+    private long amount; // All amounts are in cents.
+    private long balance;
+    private long limit;
+    private long penalty;
+
+    /**
+     * Returns the WithdrawResult that is reused by the current thread.
+     * @return The result of this thread.
+     */
+    public static WithdrawResult forCurrentThread() {
+        return THREAD_RESULTS.get();
+    }
+
+    /**
+     * Marks the withdrawal as accepted.
+     * @return ACCEPTED.
+     */
+    public WithdrawOutcome accept() {
+        outcome = WithdrawOutcome.ACCEPTED;
+        return outcome;
+    }
+
+    /**
+     * Records a negative amount.
+     * @param accountType The type of the account.
+     * @param message     The reason.
+     * @param amount      The invalid amount in cents.
+     * @return INVALID_AMOUNT.
+     */
+    public WithdrawOutcome rejectInvalidAmount(String accountType, String message, long amount) {
+        return reject(WithdrawOutcome.INVALID_AMOUNT, accountType, message, amount, 0, 0, 0);
+    }
+
+    /**
+     * Records an amount that is over the balance or the limit.
+     * @param accountType The type of the account.
+     * @param message     The reason.
+     * @param balance     The balance in cents.
+     * @param amount      The attempted amount in cents.
+     * @param limit       The overdraft or minimum balance limit in cents.
+     * @return INSUFFICIENT_FUNDS.
+     */
+    public WithdrawOutcome rejectInsufficientFunds(String accountType, String message, long balance, long amount, long limit) {
+        return reject(WithdrawOutcome.INSUFFICIENT_FUNDS, accountType, message, amount, balance, limit, 0);
+    }
+
+    /**
+     * Records an amount that can not be paid together with its penalty.
+     * @param accountType The type of the account.
+     * @param message     The reason.
+     * @param penalty     The penalty in cents.
+     * @param balance     The balance in cents.
+     * @param amount      The attempted amount in cents.
+     * @return PENALTY.
+     */
+    public WithdrawOutcome rejectPenalty(String accountType, String message, long penalty, long balance, long amount) {
+        return reject(WithdrawOutcome.PENALTY, accountType, message, amount, balance, 0, penalty);
+    }
+
+    private WithdrawOutcome reject(WithdrawOutcome outcome, String accountType, String message, long amount, long balance, long limit, long penalty) {
+        this.outcome = outcome;
+        this.account_type = accountType;
+        this.message = message;
+        this.amount = amount;
+        this.balance = balance;
+        this.limit = limit;
+        this.penalty = penalty;
+        return outcome;
+    }
+
+    public WithdrawOutcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isAccepted() {
+        return outcome.isAccepted();
+    }
+
+    public Money getAmount() {
+        return Money.ofMinorUnits(amount);
+    }
+
+    public Money getBalance() {
+        return Money.ofMinorUnits(balance);
+    }
+
+    public Money getLimit() {
+        return Money.ofMinorUnits(limit);
+    }
+
+    public Money getPenalty() {
+        return Money.ofMinorUnits(penalty);
+    }
+
+    /**
+     * Provides a user-friendly summary of the rejection, the same text as getErrorMessage() of the matching exception.
+     * @return A concise error message, or an empty text if the withdrawal is accepted.
+     */
+    @Override
+    public String getErrorMessage() {
+        return outcome.isAccepted() ? "" : ((BankExceptionInterface) toException()).getErrorMessage();
+    }
+
+    /**
+     * Provides detailed information about the rejection, the same text as getErrorDetails() of the matching exception.
+     * It is appended without a Formatter, because it is printed for every rejected transfer.
+     * @return A comprehensive error message, or an empty text if the withdrawal is accepted.
+     */
+    @Override
+    public String getErrorDetails() {
+        return appendErrorDetails(new StringBuilder(96)).toString();
+    }
+
+    /**
+     * Appends the text of getErrorDetails().
+     * @param out The text that the details are appended to.
+     * @return out.
+     */
+    public StringBuilder appendErrorDetails(StringBuilder out) {
+        switch (outcome) {
+            case INVALID_AMOUNT:
+                // "%s: %s Amount: %.1f"
+                Money.appendOneDecimal(out.append(account_type).append(": ").append(message).append(" Amount: "), amount);
+                break;
+            case INSUFFICIENT_FUNDS:
+                // "%s: %s Amount: %.1f Balance: %.1f Limit: %.1f"
+                Money.appendOneDecimal(out.append(account_type).append(": ").append(message).append(" Amount: "), amount);
+                Money.appendOneDecimal(out.append(" Balance: "), balance);
+                Money.appendOneDecimal(out.append(" Limit: "), limit);
+                break;
+            case PENALTY:
+                // "%s: %s Amount: %.1f Penalty: %.1f Balance: %.1f"
+                Money.appendOneDecimal(out.append(account_type).append(": ").append(message).append(" Amount: "), amount);
+                Money.appendOneDecimal(out.append(" Penalty: "), penalty);
+                Money.appendOneDecimal(out.append(" Balance: "), balance);
+                break;
+            default:
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * Creates the exception that the old withdraw code threw for this rejection.
+     * @return The matching exception, or null if the withdrawal is accepted.
+     */
+    public Exception toException() {
+        switch (outcome) {
+            case INVALID_AMOUNT:
+                return new InvalidAmountException(account_type, message, Money.toDouble(amount));
+            case INSUFFICIENT_FUNDS:
+                return new InsufficientFundsException(account_type, message, Money.toDouble(balance), Money.toDouble(amount), Money.toDouble(limit));
+            case PENALTY:
+                return new PenaltyException(account_type, message, Money.toDouble(penalty), Money.toDouble(balance), Money.toDouble(amount));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Throws the matching exception if the withdrawal is rejected.
+     * @throws InvalidAmountException      If the amount is negative.
+     * @throws InsufficientFundsException If the amount is over the balance or the limit.
+     * @throws PenaltyException           If the amount and the penalty are over the balance.
+     */
+    public void throwIfRejected() throws InvalidAmountException, InsufficientFundsException, PenaltyException {
+        Exception exception = toException();
+        if (exception instanceof InvalidAmountException) {
+            throw (InvalidAmountException) exception;
+        } else if (exception instanceof InsufficientFundsException) {
+            throw (InsufficientFundsException) exception;
+        } else if (exception instanceof PenaltyException) {
+            throw (PenaltyException) exception;
+        }
+    }
+}
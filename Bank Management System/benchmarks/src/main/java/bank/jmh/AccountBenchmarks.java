@@ -0,0 +1,95 @@
+package bank.jmh;
+
+import bank.CurrentAccount;
+import bank.FixedDepositAccount;
+import bank.Money;
+import bank.SavingAccount;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Withdrawals and deposits of single accounts, without TransferService and its locks.
+ * Every call starts from the same balance (setBalance is part of the measured time), so every withdrawal is accepted
+ * and takes the same branch. The accounts are created again for every iteration, because every call adds a row to
+ * their transaction history.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AccountBenchmarks {
+    private static final Money START_BALANCE = Money.ofMinorUnits(100_000_000_00L);
+    private static final Money AMOUNT = Money.ofMinorUnits(123_45);
+
+    private CurrentAccount current;
+    private CurrentAccount receiver; // The other side of every withdrawal and deposit.
+    private SavingAccount saving; // Minimum balance 0, no penalty.
+    private SavingAccount savingPenalty; // Minimum balance over the balance, every withdrawal pays the penalty.
+    private FixedDepositAccount activeDeposit; // Term not ended, withdrawals pay the penalty rate.
+    private FixedDepositAccount maturedDeposit;
+
+    @Setup(Level.Iteration)
+    public void createAccounts() {
+        current = new CurrentAccount("CUR1", START_BALANCE, Money.ofMinorUnits(500_00));
+        receiver = new CurrentAccount("CUR2", START_BALANCE, Money.ofMinorUnits(500_00));
+        saving = new SavingAccount("SAV1", START_BALANCE, 0.05, Money.ZERO);
+        savingPenalty = new SavingAccount("SAV2", START_BALANCE, 0.05, Money.ofMinorUnits(200_000_000_00L));
+        activeDeposit = new FixedDepositAccount("DEP1", START_BALANCE, 0.04, 120, 0.1, LocalDate.now().toString());
+        maturedDeposit = new FixedDepositAccount("DEP2", START_BALANCE, 0.04, 12, 0.1, "2000-01-01");
+        if (maturedDeposit.isMatured() == activeDeposit.isMatured()) {
+            throw new IllegalStateException("The deposits must be one active and one matured.");
+        }
+    }
+
+    @Benchmark
+    public boolean currentWithdraw() {
+        current.setBalance(START_BALANCE);
+        return current.withdraw(receiver, AMOUNT);
+    }
+
+    @Benchmark
+    public Money currentDeposit() {
+        current.setBalance(START_BALANCE);
+        current.deposit(receiver, AMOUNT);
+        return current.getBalance();
+    }
+
+    @Benchmark
+    public boolean savingWithdraw() {
+        saving.setBalance(START_BALANCE);
+        return saving.withdraw(receiver, AMOUNT);
+    }
+
+    @Benchmark
+    public boolean savingWithdrawWithPenalty() {
+        savingPenalty.setBalance(START_BALANCE);
+        return savingPenalty.withdraw(receiver, AMOUNT);
+    }
+
+    @Benchmark
+    public boolean depositWithdrawActive() {
+        activeDeposit.setBalance(START_BALANCE);
+        return activeDeposit.withdraw(receiver, AMOUNT);
+    }
+
+    @Benchmark
+    public boolean depositWithdrawMatured() {
+        maturedDeposit.setBalance(START_BALANCE);
+        return maturedDeposit.withdraw(receiver, AMOUNT);
+    }
+}
@@ -0,0 +1,82 @@
+package bank.jmh;
+
+import bank.BankingSystem;
+import bank.LedgerGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole BankingSystem run (load the accounts, apply the transfers, write the report) on inputs from LedgerGenerator.
+ * The inputs are generated once per row count with a fixed seed, so every version replays the same files.
+ * The console and the report are dropped. Use -p rows=10000,100000 to run only the small sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ReplayBenchmarks {
+    private static final int ACCOUNTS = 10_000;
+    private static final LocalDate TODAY = LocalDate.of(2025, 1, 1);
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public long rows;
+
+    private Path directory; // Generated inputs, deleted after the trial.
+    private String[] args;
+    private PrintStream console; // The real System.out, put back after the trial.
+
+    @Setup
+    public void generateInputs() throws IOException {
+        directory = Files.createTempDirectory("bank-replay");
+        LedgerGenerator generator = new LedgerGenerator(42, ACCOUNTS, rows);
+        generator.setHotAccounts(10, 0.2);
+        generator.setRejectRatio(0.05);
+        generator.setToday(TODAY);
+        Path transactions = generator.generate(directory)[0];
+        // the report of 10^7 rows is several GB, so it goes to the null device when there is one
+        Path nullDevice = Paths.get("/dev/null");
+        String report = Files.exists(nullDevice) ? nullDevice.toString() : directory.resolve("report.txt").toString();
+        args = new String[]{directory.resolve("accounts.txt").toString(), transactions.toString(), "--today", TODAY.toString(), "--report", report};
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void deleteInputs() throws IOException {
+        System.setOut(console);
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void replay() {
+        BankingSystem.main(args);
+    }
+}
@@ -0,0 +1,92 @@
+package bank.jmh;
+
+import bank.BankAccountTypeInterface;
+import bank.CurrentAccount;
+import bank.FixedDepositAccount;
+import bank.Money;
+import bank.SavingAccount;
+import bank.Transaction;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creating Transaction objects and rendering the account details of every account type.
+ * displayAccountDetails prints to System.out, which is replaced by a stream that drops the bytes, so the rendering
+ * and the encoding are measured but not the console.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TransactionBenchmarks {
+
+    /**
+     * One account of every type with historySize transactions, only used by the display benchmarks.
+     */
+    @State(Scope.Thread)
+    public static class Accounts {
+        @Param({"10", "100", "1000"})
+        public int historySize; // Transactions in the history of every rendered account.
+
+        private BankAccountTypeInterface current;
+        private BankAccountTypeInterface saving;
+        private BankAccountTypeInterface deposit;
+        private PrintStream console; // The real System.out, put back after the trial.
+
+        @Setup
+        public void createAccounts() {
+            current = new CurrentAccount("CUR1", Money.ofMinorUnits(1_000_000_00L), Money.ofMinorUnits(500_00));
+            saving = new SavingAccount("SAV1", Money.ofMinorUnits(1_000_000_00L), 0.05, Money.ofMinorUnits(100_00));
+            deposit = new FixedDepositAccount("DEP1", Money.ofMinorUnits(1_000_000_00L), 0.04, 12, 0.1, "2024-01-01");
+            for (int i = 0; i < historySize; i++) {
+                Money amount = Money.ofMinorUnits(100 + i);
+                current.deposit(saving, amount);
+                saving.deposit(deposit, amount);
+                deposit.deposit(current, amount);
+            }
+            console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @TearDown
+        public void restoreConsole() {
+            System.setOut(console);
+        }
+    }
+
+    @Benchmark
+    public Transaction createTransaction() {
+        return new Transaction("CUR1", "SAV1", 123.45);
+    }
+
+    @Benchmark
+    public void displayCurrent(Accounts accounts) {
+        accounts.current.displayAccountDetails();
+    }
+
+    @Benchmark
+    public void displaySaving(Accounts accounts) {
+        accounts.saving.displayAccountDetails();
+    }
+
+    @Benchmark
+    public void displayDeposit(Accounts accounts) {
+        accounts.deposit.displayAccountDetails();
+    }
+}